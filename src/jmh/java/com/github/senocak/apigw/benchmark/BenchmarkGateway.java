@@ -0,0 +1,123 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.cache.ResponseCaches;
+import com.github.senocak.apigw.client.UpstreamClients;
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import com.github.senocak.apigw.offload.RouteOffload;
+import com.github.senocak.apigw.ratelimit.HybridRateLimiter;
+import com.github.senocak.apigw.ratelimit.KeyResolvers;
+import com.github.senocak.apigw.resilience.RouteResilience;
+import com.github.senocak.apigw.service.ApiRouteLocatorImpl;
+import com.github.senocak.apigw.service.RouteCache;
+import com.github.senocak.apigw.service.RouteService;
+import com.github.senocak.apigw.snapshot.RouteSnapshots;
+import com.github.senocak.apigw.support.InMemoryRouteRepository;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.factory.AddRequestHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.AddResponseHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.SetStatusGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.handler.predicate.HostRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The route building part of the gateway wired by hand: the predicate and filter factories the route locator uses,
+ * {@link ApiRouteLocatorImpl} itself, and in-memory stand-ins for MongoDB ({@link InMemoryRouteRepository}) and
+ * Redis (the rate limiter runs in {@link HybridRateLimiter.Mode#LOCAL} mode and never calls it).
+ */
+public final class BenchmarkGateway implements AutoCloseable {
+    private final GenericApplicationContext context = new GenericApplicationContext();
+    private final InMemoryRouteRepository routeRepository = new InMemoryRouteRepository();
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+    public BenchmarkGateway(List<ApiRoute> routes) {
+        routeRepository.saveAll(routes).blockLast();
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        context.registerBean(PathRoutePredicateFactory.class);
+        context.registerBean(MethodRoutePredicateFactory.class);
+        context.registerBean(HostRoutePredicateFactory.class);
+        context.registerBean(AddRequestHeaderGatewayFilterFactory.class);
+        context.registerBean(AddResponseHeaderGatewayFilterFactory.class);
+        context.registerBean(RewritePathGatewayFilterFactory.class);
+        context.registerBean(SetStatusGatewayFilterFactory.class);
+        context.registerBean(ConfigurationService.class,
+                () -> new ConfigurationService(context.getBeanFactory(), () -> null, () -> null));
+        context.registerBean(HybridRateLimiter.class, () -> {
+            final HybridRateLimiter.Config defaultConfig = new HybridRateLimiter.Config();
+            defaultConfig.setReplenishRate(1);
+            defaultConfig.setBurstCapacity(60);
+            return new HybridRateLimiter(new RedisRateLimiter(1, 60), defaultConfig, HybridRateLimiter.Mode.LOCAL,
+                    20, Duration.ofSeconds(1), 100_000, context.getBean(ConfigurationService.class));
+        });
+        context.registerBean(RequestRateLimiterGatewayFilterFactory.class,
+                () -> new RequestRateLimiterGatewayFilterFactory(context.getBean(HybridRateLimiter.class),
+                        KeyResolvers.of(null)));
+        context.registerBean(RouteService.class, () -> new RouteService(routeRepository));
+        // routes of the benchmarks do not use the Redis cache tier, the template is never called
+        context.registerBean(ResponseCaches.class, () -> new ResponseCaches(null, Duration.ofSeconds(60), 1 << 20, 1 << 26, 1 << 28));
+        context.registerBean(RouteResilience.class, () -> new RouteResilience(circuitBreakerRegistry,
+                TimeLimiterRegistry.ofDefaults(), context, 2, List.of("GET", "HEAD", "OPTIONS"),
+                List.of("502", "503", "504"), Duration.ofMillis(50), Duration.ofMillis(500), 2, 0.5, 20, 10));
+        // none of the benchmark routes declares a connection pool
+        context.registerBean(UpstreamClients.class, () -> new UpstreamClients(new HttpClientProperties(),
+                new HttpClientSslConfigurer(new HttpClientProperties().getSsl(), new ServerProperties(), null),
+                200, 1000, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofSeconds(10)));
+        // builds always start from the repository, never from a snapshot on disk
+        final MappingMongoConverter mongoConverter =
+                new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        mongoConverter.afterPropertiesSet();
+        context.registerBean(RouteSnapshots.class, () -> new RouteSnapshots(mongoConverter, false,
+                Path.of("route-snapshots"), 1));
+        context.registerBean(RouteMetrics.class);
+        context.registerBean(RouteOffload.class, () -> new RouteOffload(context.getBean(RouteMetrics.class), "none"));
+        context.refresh();
+    }
+
+    /**
+     * A route locator with an empty cache, so its first {@code getRoutes()} builds every route
+     */
+    public ApiRouteLocatorImpl newRouteLocator() {
+        return newRouteLocator(new RouteCache());
+    }
+
+    /**
+     * A route locator filling the given cache, for benchmarks that also need the cached snapshot
+     */
+    public ApiRouteLocatorImpl newRouteLocator(RouteCache routeCache) {
+        final ApiRouteLocatorImpl routeLocator = new ApiRouteLocatorImpl(new RouteLocatorBuilder(context),
+                context.getBean(RouteService.class), context.getBean(HybridRateLimiter.class),
+                context.getBean(RequestRateLimiterGatewayFilterFactory.class), routeCache,
+                circuitBreakerRegistry, context.getBean(ResponseCaches.class), context.getBean(RouteResilience.class),
+                context.getBean(UpstreamClients.class), context.getBean(RouteSnapshots.class),
+                context.getBean(RouteOffload.class), context.getBean(RouteMetrics.class));
+        context.getAutowireCapableBeanFactory().autowireBean(routeLocator);
+        return routeLocator;
+    }
+
+    public InMemoryRouteRepository getRouteRepository() {
+        return routeRepository;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.filters.AccessLog;
+import com.github.senocak.apigw.filters.RequestAndResponseLogGlobalFilter;
+import com.github.senocak.apigw.filters.RouteMetricsGlobalFilter;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Overhead the global filters add to every request, against a chain that completes immediately. The access log
+ * writer thread runs, but src/jmh/resources/logback.xml turns the {@code access-log} logger off so the results do not
+ * depend on the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GlobalFilterBenchmark {
+    @Param({"0", "0.01", "1"})
+    private double sampleRate;
+
+    private AccessLog accessLog;
+    private RequestAndResponseLogGlobalFilter accessLogFilter;
+    private RouteMetricsGlobalFilter metricsFilter;
+    private MockServerWebExchange exchange;
+    private final GatewayFilterChain chain = exchange -> Mono.empty();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accessLog = new AccessLog(8192, sampleRate, AccessLog.OverflowPolicy.DROP_NEWEST);
+        accessLog.start();
+        accessLogFilter = new RequestAndResponseLogGlobalFilter(accessLog);
+        metricsFilter = new RouteMetricsGlobalFilter(new RouteMetrics());
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/42").build());
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id("orders")
+                .uri("http://localhost:8081")
+                .predicate(ignored -> true)
+                .build());
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        accessLog.stop();
+    }
+
+    @Benchmark
+    public Void chainOnly() {
+        return chain.filter(exchange).block();
+    }
+
+    @Benchmark
+    public Void accessLogFilter() {
+        return accessLogFilter.filter(exchange, chain).block();
+    }
+
+    @Benchmark
+    public Void metricsFilter() {
+        return metricsFilter.filter(exchange, chain).block();
+    }
+}
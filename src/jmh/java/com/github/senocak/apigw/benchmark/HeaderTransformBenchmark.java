@@ -0,0 +1,88 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.filters.HeaderTransformGatewayFilter;
+import com.github.senocak.apigw.service.RouteExpressions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractNameValueGatewayFilterFactory.NameValueConfig;
+import org.springframework.cloud.gateway.filter.factory.AddRequestHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.AddResponseHeaderGatewayFilterFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A route's request and response header rules applied by one {@code addRequestHeader}/{@code addResponseHeader}
+ * filter per rule against the single fused filter. The mock exchange is not backed by Netty, so the fused filter
+ * takes its one-mutate fallback here; on a real server it does not copy the request at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderTransformBenchmark {
+    @Param({"5", "10"})
+    private int rules;
+
+    private List<GatewayFilter> perRuleFilters;
+    private List<GatewayFilter> fusedFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setPath("/orders/**");
+        apiRoute.setUri("http://localhost:8081");
+        final List<String> headers = new ArrayList<>();
+        for (int i = 0; i < rules; i++)
+            headers.add("X-Rule-" + i + ":value-" + i);
+        apiRoute.setRequestHeaders(headers);
+        apiRoute.setResponseHeader(headers);
+        final RouteExpressions expressions = RouteExpressions.compile(apiRoute);
+        perRuleFilters = new ArrayList<>();
+        for (RouteExpressions.HeaderRule rule: expressions.requestHeaders())
+            perRuleFilters.add(new AddRequestHeaderGatewayFilterFactory().apply(config(rule)));
+        for (RouteExpressions.HeaderRule rule: expressions.responseHeaders())
+            perRuleFilters.add(new AddResponseHeaderGatewayFilterFactory().apply(config(rule)));
+        fusedFilter = List.of(new HeaderTransformGatewayFilter(expressions.requestHeaders(),
+                expressions.responseHeaders()));
+    }
+
+    @Benchmark
+    public Void perRule() {
+        return run(perRuleFilters);
+    }
+
+    @Benchmark
+    public Void fused() {
+        return run(fusedFilter);
+    }
+
+    private static Void run(List<GatewayFilter> filters) {
+        final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/42")
+                .header("Accept", "application/json")
+                .build());
+        return filter(filters, 0, exchange).then(exchange.getResponse().setComplete()).block();
+    }
+
+    private static Mono<Void> filter(List<GatewayFilter> filters, int index, ServerWebExchange exchange) {
+        if (index == filters.size())
+            return Mono.empty();
+        return filters.get(index).filter(exchange, next -> filter(filters, index + 1, next));
+    }
+
+    private static NameValueConfig config(RouteExpressions.HeaderRule rule) {
+        return new NameValueConfig().setName(rule.name().toString()).setValue(rule.value().toString());
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.i18n.LocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of evaluating one route's predicates against a matching request. Every route also has a path
+ * predicate, so {@code path} is the baseline for the others; {@code exchangeOnly} is the cost of creating the
+ * exchange, included in every other result. The body predicate finds its value after 1 KiB of JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PredicateMatchingBenchmark {
+    private static final String PATH = "/orders/42/items/7";
+    private static final WebSessionManager SESSION_MANAGER = new DefaultWebSessionManager();
+    private static final ServerCodecConfigurer CODEC_CONFIGURER = ServerCodecConfigurer.create();
+    private static final LocaleContextResolver LOCALE_CONTEXT_RESOLVER = new AcceptHeaderLocaleContextResolver();
+
+    private BenchmarkGateway gateway;
+    private AsyncPredicate<ServerWebExchange> path;
+    private AsyncPredicate<ServerWebExchange> header;
+    private AsyncPredicate<ServerWebExchange> host;
+    private AsyncPredicate<ServerWebExchange> body;
+    private ServerHttpRequest get;
+    private ServerHttpRequest getWithHeader;
+    private ServerHttpRequest getWithHost;
+    private ServerHttpRequest post;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gateway = new BenchmarkGateway(List.of(
+                route("path", null, null, null),
+                route("header", "X-Tenant:acme", null, null),
+                route("host", null, "api.example.com", null),
+                route("body", null, null, "contains:\"kind\":\"order\"")));
+        final List<Route> routes = gateway.newRouteLocator().getRoutes().collectList().block();
+        path = predicate(routes, "path");
+        header = predicate(routes, "header");
+        host = predicate(routes, "host");
+        body = predicate(routes, "body");
+        get = MockServerHttpRequest.get(PATH).build();
+        getWithHeader = MockServerHttpRequest.get(PATH).header("X-Tenant", "acme").build();
+        getWithHost = MockServerHttpRequest.get(PATH).header(HttpHeaders.HOST, "api.example.com").build();
+        final byte[] requestBody = ("{\"padding\":\"" + "x".repeat(1024) + "\",\"kind\":\"order\",\"items\":[1,2,3]}")
+                .getBytes(StandardCharsets.UTF_8);
+        // a new buffer for every subscription, the predicate reads the body of each exchange
+        post = MockServerHttpRequest.post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(requestBody))));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Benchmark
+    public ServerWebExchange exchangeOnly() {
+        return exchange(get);
+    }
+
+    @Benchmark
+    public Boolean path() {
+        return Mono.from(path.apply(exchange(get))).block();
+    }
+
+    @Benchmark
+    public Boolean header() {
+        return Mono.from(header.apply(exchange(getWithHeader))).block();
+    }
+
+    @Benchmark
+    public Boolean host() {
+        return Mono.from(host.apply(exchange(getWithHost))).block();
+    }
+
+    @Benchmark
+    public Boolean body() {
+        return Mono.from(body.apply(exchange(post))).block();
+    }
+
+    /**
+     * A fresh exchange around a prepared request; the session manager and codecs are shared because creating them
+     * costs far more than the predicates being measured
+     */
+    private static ServerWebExchange exchange(ServerHttpRequest request) {
+        return new DefaultServerWebExchange(request, new MockServerHttpResponse(), SESSION_MANAGER, CODEC_CONFIGURER,
+                LOCALE_CONTEXT_RESOLVER);
+    }
+
+    private static ApiRoute route(String id, String header, String host, String body) {
+        final ApiRoute route = new ApiRoute();
+        route.setId(id);
+        route.setRouteIdentifier(id);
+        route.setUri("http://localhost:8081");
+        route.setPath("/orders/{orderId}/items/**");
+        if (header != null)
+            route.setHeaders(List.of(header));
+        route.setHost(host);
+        route.setBody(body);
+        return route;
+    }
+
+    private static AsyncPredicate<ServerWebExchange> predicate(List<Route> routes, String id) {
+        return routes.stream().filter(route -> route.getId().equals(id)).findFirst().orElseThrow().getPredicate();
+    }
+}
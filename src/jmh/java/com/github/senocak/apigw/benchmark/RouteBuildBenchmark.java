@@ -0,0 +1,65 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.service.ApiRouteLocatorImpl;
+import com.github.senocak.apigw.service.RouteCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.cloud.gateway.route.Route;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning the stored {@code ApiRoute}s into gateway routes: a cold build as on startup, a refresh where
+ * nothing changed, and serving the cached routes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RouteBuildBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int routes;
+
+    private BenchmarkGateway gateway;
+    private ApiRouteLocatorImpl warmLocator;
+    private ApiRouteLocatorImpl coldLocator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gateway = new BenchmarkGateway(SyntheticRoutes.generate(routes));
+        warmLocator = gateway.newRouteLocator();
+        warmLocator.refresh().block();
+    }
+
+    @Setup(Level.Invocation)
+    public void newColdLocator() {
+        coldLocator = gateway.newRouteLocator();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Benchmark
+    public List<Route> coldGetRoutes() {
+        return coldLocator.getRoutes().collectList().block();
+    }
+
+    @Benchmark
+    public RouteCache.Snapshot refreshUnchanged() {
+        return warmLocator.refresh().block();
+    }
+
+    @Benchmark
+    public List<Route> cachedGetRoutes() {
+        return warmLocator.getRoutes().collectList().block();
+    }
+}
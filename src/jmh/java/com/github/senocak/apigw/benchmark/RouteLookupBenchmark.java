@@ -0,0 +1,117 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.handler.IndexedRoutePredicateHandlerMapping;
+import com.github.senocak.apigw.service.ApiRouteLocatorImpl;
+import com.github.senocak.apigw.service.RouteCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.i18n.LocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Per-request cost of finding the matching route among {@code routes} synthetic ones, through the gateway's linear
+ * lookup and through the path/method/host index ({@code gateway.routes.index.enabled}). Requests cycle over targets
+ * spread evenly across the route set, so the linear lookup tests half the routes on average. Targets skip routes
+ * with a body predicate, whose cost {@link PredicateMatchingBenchmark} covers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteLookupBenchmark {
+    private static final int TARGETS = 16;
+    private static final WebSessionManager SESSION_MANAGER = new DefaultWebSessionManager();
+    private static final ServerCodecConfigurer CODEC_CONFIGURER = ServerCodecConfigurer.create();
+    private static final LocaleContextResolver LOCALE_CONTEXT_RESOLVER = new AcceptHeaderLocaleContextResolver();
+
+    @Param({"10", "100", "1000", "5000"})
+    private int routes;
+
+    private BenchmarkGateway gateway;
+    private RoutePredicateHandlerMapping linear;
+    private RoutePredicateHandlerMapping indexed;
+    private ServerHttpRequest[] requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gateway = new BenchmarkGateway(SyntheticRoutes.generate(routes));
+        final RouteCache routeCache = new RouteCache();
+        final ApiRouteLocatorImpl routeLocator = gateway.newRouteLocator(routeCache);
+        routeLocator.getRoutes().blockLast();
+        final FilteringWebHandler webHandler = new FilteringWebHandler(List.of(), false);
+        final StandardEnvironment environment = new StandardEnvironment();
+        linear = new RoutePredicateHandlerMapping(webHandler, routeLocator, new GlobalCorsProperties(), environment);
+        indexed = new IndexedRoutePredicateHandlerMapping(webHandler, routeLocator, new GlobalCorsProperties(),
+                environment, routeCache);
+        requests = new ServerHttpRequest[TARGETS];
+        for (int t = 0; t < TARGETS; t++) {
+            int i = (int) ((long) t * routes / TARGETS);
+            if (i % 10 == 0)
+                i++;
+            requests[t] = MockServerHttpRequest.get("/service-" + i + "/api/items/7")
+                    .header("X-Tenant", "tenant-" + i)
+                    .header(HttpHeaders.HOST, "service-" + i + ".example.com")
+                    .build();
+            final String expected = "route-" + i;
+            for (RoutePredicateHandlerMapping mapping: List.of(linear, indexed)) {
+                final ServerWebExchange exchange = exchange(requests[t]);
+                mapping.getHandler(exchange).block();
+                final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+                if (route == null || !route.getId().equals(expected))
+                    throw new IllegalStateException(requests[t].getPath() + " matched " + route + ", not " + expected);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Benchmark
+    public Object linear() {
+        return linear.getHandler(exchange(nextRequest())).block();
+    }
+
+    @Benchmark
+    public Object indexed() {
+        return indexed.getHandler(exchange(nextRequest())).block();
+    }
+
+    private ServerHttpRequest nextRequest() {
+        final ServerHttpRequest request = requests[next];
+        next = (next + 1) % TARGETS;
+        return request;
+    }
+
+    private static ServerWebExchange exchange(ServerHttpRequest request) {
+        return new DefaultServerWebExchange(request, new MockServerHttpResponse(), SESSION_MANAGER, CODEC_CONFIGURER,
+                LOCALE_CONTEXT_RESOLVER);
+    }
+}
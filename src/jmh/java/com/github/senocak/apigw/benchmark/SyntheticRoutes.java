@@ -0,0 +1,52 @@
+package com.github.senocak.apigw.benchmark;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.RateLimit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route definitions shaped like production ones: every route has a path, and a share of them also use a method,
+ * host, header or body predicate, header and rewrite filters, retries and rate limits.
+ */
+public final class SyntheticRoutes {
+    private SyntheticRoutes() {
+    }
+
+    public static List<ApiRoute> generate(int count) {
+        final List<ApiRoute> routes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            routes.add(route(i));
+        return routes;
+    }
+
+    public static ApiRoute route(int i) {
+        final ApiRoute route = new ApiRoute();
+        route.setId("route-" + i);
+        route.setRouteIdentifier("route-" + i);
+        route.setUri("http://localhost:" + (8000 + i % 100));
+        route.setPath("/service-" + i + "/api/**");
+        if (i % 2 == 0)
+            route.setMethod("GET");
+        if (i % 3 == 0)
+            route.setHeaders(List.of("X-Tenant:tenant-" + i));
+        if (i % 4 == 0)
+            route.setHost("service-" + i + ".example.com");
+        if (i % 10 == 0)
+            route.setBody("contains:\"kind\":\"order-" + i + "\"");
+        route.setRequestHeaders(List.of("X-Gateway:apigw"));
+        if (i % 2 == 1)
+            route.setResponseHeader(List.of("X-Route:route-" + i));
+        if (i % 2 == 0)
+            route.setRewritePath("/service-" + i + "/(?<segment>.*):/${segment}");
+        if (i % 5 == 0)
+            route.setRetry(2);
+        if (i % 7 == 0) {
+            final RateLimit rateLimit = new RateLimit();
+            rateLimit.setReplenishRate(100);
+            rateLimit.setBurstCapacity(200);
+            route.setRateLimit(rateLimit);
+        }
+        return route;
+    }
+}
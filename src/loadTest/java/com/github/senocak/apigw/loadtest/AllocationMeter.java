@@ -0,0 +1,54 @@
+package com.github.senocak.apigw.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bytes allocated by the gateway's threads between {@link #start()} and {@link #stop()}. The stub upstream, the load
+ * client and the thread driving the test share the JVM with the gateway and are told apart by thread name. Threads
+ * that end in between take their allocations with them, so the figure is a lower bound.
+ */
+final class AllocationMeter {
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long driverThreadId = Thread.currentThread().threadId();
+    private Map<Long, Long> startBytes;
+
+    AllocationMeter() {
+        if (!threads.isThreadAllocatedMemorySupported())
+            throw new IllegalStateException("The JVM does not measure thread allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    void start() {
+        startBytes = allocatedBytes();
+    }
+
+    /**
+     * @return bytes allocated by the gateway since {@link #start()}
+     */
+    long stop() {
+        long total = 0;
+        for (Map.Entry<Long, Long> thread: allocatedBytes().entrySet())
+            total += thread.getValue() - startBytes.getOrDefault(thread.getKey(), 0L);
+        return total;
+    }
+
+    private Map<Long, Long> allocatedBytes() {
+        final long[] ids = threads.getAllThreadIds();
+        final ThreadInfo[] infos = threads.getThreadInfo(ids);
+        final long[] bytes = threads.getThreadAllocatedBytes(ids);
+        final Map<Long, Long> gatewayBytes = new HashMap<>();
+        for (int i = 0; i < ids.length; i++)
+            if (infos[i] != null && bytes[i] >= 0 && isGateway(ids[i], infos[i].getThreadName()))
+                gatewayBytes.put(ids[i], bytes[i]);
+        return gatewayBytes;
+    }
+
+    private boolean isGateway(long id, String name) {
+        return id != driverThreadId && !name.startsWith(StubUpstream.THREAD_PREFIX)
+                && !name.startsWith(OpenLoopClient.THREAD_PREFIX);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.senocak.apigw.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.convert.DurationStyle;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End-to-end load test of the gateway: starts a stub upstream and the gateway in this JVM, seeds the routes, sends
+ * traffic at a fixed rate for a warm-up and then a measured period, and exits with status 1 when throughput, tail
+ * latency, errors or allocation cross their thresholds. Settings are {@code loadTest.*} system properties, listed in
+ * the readme; {@code ./gradlew loadTest -PloadTest.rate=5000} passes them through.
+ */
+public final class LoadTest {
+    private LoadTest() {
+    }
+
+    /**
+     * @param maxBytesPerRequest 0 to not check allocation
+     */
+    record Settings(int routes, double rate, Duration warmup, Duration duration, Duration upstreamLatency,
+                    int responseBytes, int connections, int maxInFlight, int ioThreads, double minRps,
+                    Duration maxP99, Duration maxP999, double maxErrorRate, long maxBytesPerRequest, Path resultFile) {
+        static Settings fromSystemProperties() {
+            final double rate = Double.parseDouble(property("rate", "2000"));
+            final int processors = Runtime.getRuntime().availableProcessors();
+            return new Settings(
+                    Integer.parseInt(property("routes", "1000")),
+                    rate,
+                    duration("warmup", "10s"),
+                    duration("duration", "30s"),
+                    duration("upstream-latency", "5ms"),
+                    Integer.parseInt(property("response-bytes", "1024")),
+                    Integer.parseInt(property("connections", "500")),
+                    Integer.parseInt(property("max-in-flight", "10000")),
+                    Integer.parseInt(property("io-threads", String.valueOf(Math.max(1, processors / 4)))),
+                    Double.parseDouble(property("min-rps", String.valueOf(rate * 0.98))),
+                    duration("max-p99", "50ms"),
+                    duration("max-p999", "200ms"),
+                    Double.parseDouble(property("max-error-rate", "0.001")),
+                    Long.parseLong(property("max-bytes-per-request", "131072")),
+                    Path.of(property("result-file", "build/results/loadTest/results.json")));
+        }
+
+        private static String property(String name, String defaultValue) {
+            return System.getProperty("loadTest." + name, defaultValue);
+        }
+
+        private static Duration duration(String name, String defaultValue) {
+            return DurationStyle.detectAndParse(property(name, defaultValue));
+        }
+    }
+
+    record Report(long sent, long succeeded, long failed, long dropped, double rps, double errorRate,
+                  double p50Millis, double p99Millis, double p999Millis, double maxMillis,
+                  double allocationMegabytesPerSecond, long bytesPerRequest, List<String> failures) {
+        static Report of(Settings settings, OpenLoopClient.Result result, long allocatedBytes) {
+            final long[] quantiles = result.latencies().quantilesMicros(0.5, 0.99, 0.999);
+            final long p99Micros = quantiles[1];
+            final long p999Micros = quantiles[2];
+            final double seconds = result.elapsedNanos() / 1e9;
+            final long bytesPerRequest = result.sent() == 0 ? 0 : allocatedBytes / result.sent();
+            final List<String> failures = new ArrayList<>();
+            if (result.rps() < settings.minRps())
+                failures.add(String.format("throughput %.0f rps is below %.0f", result.rps(), settings.minRps()));
+            if (p99Micros > settings.maxP99().toNanos() / 1_000)
+                failures.add(String.format("p99 %.2f ms is above %d ms", p99Micros / 1e3,
+                        settings.maxP99().toMillis()));
+            if (p999Micros > settings.maxP999().toNanos() / 1_000)
+                failures.add(String.format("p999 %.2f ms is above %d ms", p999Micros / 1e3,
+                        settings.maxP999().toMillis()));
+            if (result.errorRate() > settings.maxErrorRate())
+                failures.add(String.format("error rate %.4f is above %s", result.errorRate(), settings.maxErrorRate()));
+            if (settings.maxBytesPerRequest() > 0 && bytesPerRequest > settings.maxBytesPerRequest())
+                failures.add(String.format("allocation %d bytes per request is above %d", bytesPerRequest,
+                        settings.maxBytesPerRequest()));
+            return new Report(result.sent(), result.succeeded(), result.failed(), result.dropped(), result.rps(),
+                    result.errorRate(), quantiles[0] / 1e3, p99Micros / 1e3, p999Micros / 1e3,
+                    result.latencies().getMaxMicros() / 1e3, allocatedBytes / seconds / (1 << 20), bytesPerRequest,
+                    List.copyOf(failures));
+        }
+
+        String format() {
+            return String.format("""
+                    requests    %d sent, %d succeeded, %d failed, %d dropped (error rate %.4f)
+                    throughput  %.0f rps
+                    latency     p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms
+                    allocation  %.1f MB/s, %d bytes per request
+                    """, sent, succeeded, failed, dropped, errorRate, rps, p50Millis, p99Millis, p999Millis, maxMillis,
+                    allocationMegabytesPerSecond, bytesPerRequest);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Settings settings = Settings.fromSystemProperties();
+        final Report report;
+        try (StubUpstream upstream = new StubUpstream(settings.upstreamLatency(), settings.responseBytes(),
+                settings.ioThreads());
+             LoadTestGateway gateway = new LoadTestGateway(LoadTestRoutes.generate(settings.routes(), upstream.uri()));
+             OpenLoopClient client = new OpenLoopClient(gateway.port(), settings.routes(), settings.connections(),
+                     settings.maxInFlight(), settings.ioThreads())) {
+            System.out.printf("Gateway on port %d with %d routes, upstream %s answering after %d ms%n",
+                    gateway.port(), settings.routes(), upstream.uri(), settings.upstreamLatency().toMillis());
+            System.out.printf("Warming up at %.0f rps for %d s%n", settings.rate(), settings.warmup().toSeconds());
+            client.run(settings.rate(), settings.warmup());
+            System.out.printf("Measuring at %.0f rps for %d s%n", settings.rate(), settings.duration().toSeconds());
+            final AllocationMeter allocationMeter = new AllocationMeter();
+            allocationMeter.start();
+            final OpenLoopClient.Result result = client.run(settings.rate(), settings.duration());
+            report = Report.of(settings, result, allocationMeter.stop());
+        }
+        System.out.print(report.format());
+        Files.createDirectories(settings.resultFile().toAbsolutePath().getParent());
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(settings.resultFile().toFile(), report);
+        System.out.println("Result written to " + settings.resultFile());
+        if (!report.failures().isEmpty()) {
+            report.failures().forEach(failure -> System.out.println("FAILED: " + failure));
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+        System.exit(0);
+    }
+}
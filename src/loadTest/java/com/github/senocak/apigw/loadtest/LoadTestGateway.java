@@ -0,0 +1,53 @@
+package com.github.senocak.apigw.loadtest;
+
+import com.github.senocak.apigw.ApigwApplication;
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.service.RouteCache;
+import com.github.senocak.apigw.support.InMemoryRouteRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The whole gateway application started in this JVM with the {@code loadtest} profile. Routes are read from an
+ * {@link InMemoryRouteRepository} that takes precedence over the MongoDB one, and the profile runs the rate limiter
+ * in {@code LOCAL} mode so Redis is never called.
+ */
+final class LoadTestGateway implements AutoCloseable {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private final ConfigurableApplicationContext context;
+
+    LoadTestGateway(List<ApiRoute> routes) {
+        final InMemoryRouteRepository routeRepository = new InMemoryRouteRepository();
+        routeRepository.saveAll(routes).blockLast();
+        context = new SpringApplicationBuilder(ApigwApplication.class)
+                .profiles("loadtest")
+                .initializers((ApplicationContextInitializer<GenericApplicationContext>) applicationContext ->
+                        applicationContext.registerBean(InMemoryRouteRepository.class, () -> routeRepository,
+                                definition -> definition.setPrimary(true)))
+                .run();
+        final RouteCache routeCache = context.getBean(RouteCache.class);
+        final long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (!routeCache.isLoaded()) {
+            if (System.nanoTime() > deadline)
+                throw new IllegalStateException("Routes were not loaded within " + STARTUP_TIMEOUT);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    int port() {
+        return ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.senocak.apigw.loadtest;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes to the stub upstream that every request of {@link OpenLoopClient} can match: all of them rewrite headers, and
+ * shares of them also match the method or a header, rewrite the path and retry
+ */
+final class LoadTestRoutes {
+    static final String TENANT_HEADER = "X-Tenant";
+    static final String TENANT = "tenant";
+
+    private LoadTestRoutes() {
+    }
+
+    static List<ApiRoute> generate(int count, String upstreamUri) {
+        final List<ApiRoute> routes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            routes.add(route(i, upstreamUri));
+        return routes;
+    }
+
+    /**
+     * @return a path the route with the given index matches
+     */
+    static String path(int i) {
+        return "/service-" + i + "/api/items/" + i;
+    }
+
+    private static ApiRoute route(int i, String upstreamUri) {
+        final ApiRoute route = new ApiRoute();
+        route.setId("route-" + i);
+        route.setRouteIdentifier("route-" + i);
+        route.setUri(upstreamUri);
+        route.setPath("/service-" + i + "/api/**");
+        if (i % 2 == 0)
+            route.setMethod("GET");
+        if (i % 3 == 0)
+            route.setHeaders(List.of(TENANT_HEADER + ":" + TENANT));
+        route.setRequestHeaders(List.of("X-Gateway:apigw", "set X-Route:route-" + i, "remove X-Debug"));
+        if (i % 2 == 1)
+            route.setResponseHeader(List.of("X-Route:route-" + i, "remove Server"));
+        if (i % 2 == 0)
+            route.setRewritePath("/service-" + i + "/(?<segment>.*):/${segment}");
+        if (i % 5 == 0)
+            route.setRetry(2);
+        return route;
+    }
+}
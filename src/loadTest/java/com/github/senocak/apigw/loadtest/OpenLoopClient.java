@@ -0,0 +1,109 @@
+package com.github.senocak.apigw.loadtest;
+
+import com.github.senocak.apigw.metrics.LatencyHistogram;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop traffic: requests start on a fixed schedule however slowly the gateway answers, and each latency is taken
+ * from the time the request was due rather than the time it went out. A stalled gateway therefore shows up in the
+ * tail instead of slowing the client down. Requests over {@code maxInFlight} are not sent and count as dropped.
+ */
+final class OpenLoopClient implements AutoCloseable {
+    /** thread name prefix, so {@link AllocationMeter} does not count the client as gateway */
+    static final String THREAD_PREFIX = "load-client";
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final LoopResources loops;
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient httpClient;
+    private final String[] paths;
+    private final int maxInFlight;
+
+    record Result(long sent, long succeeded, long failed, long dropped, long elapsedNanos, LatencyHistogram latencies) {
+        double rps() {
+            return succeeded * 1e9 / elapsedNanos;
+        }
+
+        double errorRate() {
+            return sent == 0 ? 0 : (double) (failed + dropped) / sent;
+        }
+    }
+
+    OpenLoopClient(int port, int routes, int connections, int maxInFlight, int threads) {
+        loops = LoopResources.create(THREAD_PREFIX, threads, true);
+        connectionProvider = ConnectionProvider.builder(THREAD_PREFIX)
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        httpClient = HttpClient.create(connectionProvider)
+                .runOn(loops)
+                .baseUrl("http://127.0.0.1:" + port)
+                .responseTimeout(RESPONSE_TIMEOUT)
+                .headers(headers -> headers.set(LoadTestRoutes.TENANT_HEADER, LoadTestRoutes.TENANT));
+        paths = new String[routes];
+        for (int i = 0; i < routes; i++)
+            paths[i] = LoadTestRoutes.path(i);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Send {@code rate} requests per second for {@code duration}, spread over the routes in turn, and wait for the
+     * last responses
+     */
+    Result run(double rate, Duration duration) {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final long requests = (long) (rate * duration.toNanos() / 1e9);
+        final double intervalNanos = 1e9 / rate;
+        long dropped = 0;
+        final long start = System.nanoTime();
+        for (long i = 0; i < requests; i++) {
+            final long due = start + (long) (i * intervalNanos);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+            if (inFlight.get() >= maxInFlight) {
+                dropped++;
+                continue;
+            }
+            inFlight.incrementAndGet();
+            httpClient.get()
+                    .uri(paths[(int) (i % paths.length)])
+                    .response((response, body) -> body.then(Mono.just(response.status().code())))
+                    .next()
+                    .subscribe(status -> {
+                        latencies.recordNanos(System.nanoTime() - due);
+                        if (status >= 200 && status < 300)
+                            succeeded.increment();
+                        else
+                            failed.increment();
+                    }, error -> {
+                        latencies.recordNanos(System.nanoTime() - due);
+                        failed.increment();
+                        inFlight.decrementAndGet();
+                    }, inFlight::decrementAndGet);
+        }
+        final long deadline = System.nanoTime() + RESPONSE_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        final long elapsedNanos = System.nanoTime() - start;
+        // requests still unanswered after the timeout are failures
+        return new Result(requests, succeeded.sum(), failed.sum() + inFlight.get(), dropped, elapsedNanos, latencies);
+    }
+
+    @Override
+    public void close() {
+        connectionProvider.disposeLater().block(Duration.ofSeconds(5));
+        loops.dispose();
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.senocak.apigw.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Upstream for the gateway to call: a Reactor Netty server on its own event loops that reads each request and answers
+ * with the same body after a fixed delay
+ */
+final class StubUpstream implements AutoCloseable {
+    /** thread name prefix, so {@link AllocationMeter} does not count the stub as gateway */
+    static final String THREAD_PREFIX = "stub-upstream";
+
+    private final LoopResources loops;
+    private final Scheduler timer = Schedulers.newSingle(THREAD_PREFIX + "-timer", true);
+    private final DisposableServer server;
+
+    StubUpstream(Duration latency, int responseBytes, int threads) {
+        final byte[] body = new byte[responseBytes];
+        Arrays.fill(body, (byte) 'x');
+        final String contentLength = String.valueOf(responseBytes);
+        loops = LoopResources.create(THREAD_PREFIX, threads, true);
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .runOn(loops)
+                .handle((request, response) -> {
+                    final Mono<Void> reply = Mono.defer(() -> response
+                            .header(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream")
+                            .header(HttpHeaderNames.CONTENT_LENGTH, contentLength)
+                            .sendByteArray(Mono.just(body))
+                            .then());
+                    return request.receive().then(latency.isZero() ? reply : Mono.delay(latency, timer).then(reply));
+                })
+                .bindNow();
+    }
+
+    String uri() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        loops.dispose();
+        timer.dispose();
+    }
+}
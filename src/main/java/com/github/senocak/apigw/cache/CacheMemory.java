@@ -0,0 +1,34 @@
+package com.github.senocak.apigw.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct memory held by the response caches of all routes. A route's own budget only bounds that route, so an entry
+ * is moved off-heap only once it fits in this shared one too.
+ */
+final class CacheMemory {
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    CacheMemory(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    boolean tryReserve(long bytes) {
+        long used;
+        do {
+            used = usedBytes.get();
+            if (used + bytes > maxBytes)
+                return false;
+        } while (!usedBytes.compareAndSet(used, used + bytes));
+        return true;
+    }
+
+    void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    long usedBytes() {
+        return usedBytes.get();
+    }
+}
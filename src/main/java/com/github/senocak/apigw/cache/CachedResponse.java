@@ -0,0 +1,48 @@
+package com.github.senocak.apigw.cache;
+
+import org.springframework.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stored response. The body of a cached entry lives in a read-only direct buffer, outside the heap; every hit wraps
+ * a duplicate of it so serving does not copy it.
+ *
+ * @param expiresAt epoch milliseconds, shared with the Redis tier so a response never outlives its TTL
+ */
+public record CachedResponse(int status, HttpHeaders headers, ByteBuffer body, long expiresAt) {
+    /** rough per-entry overhead beside the body, for the memory budget */
+    private static final int OVERHEAD = 256;
+
+    /**
+     * @return a response whose body is still on the heap, until {@link #offHeap()} copies it out
+     */
+    public static CachedResponse of(int status, HttpHeaders headers, byte[] body, long expiresAt) {
+        return new CachedResponse(status, HttpHeaders.readOnlyHttpHeaders(headers),
+                ByteBuffer.wrap(body).asReadOnlyBuffer(), expiresAt);
+    }
+
+    public CachedResponse offHeap() {
+        if (body.isDirect())
+            return this;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(body.remaining()).put(body.duplicate()).flip();
+        return new CachedResponse(status, headers, buffer.asReadOnlyBuffer(), expiresAt);
+    }
+
+    public int weight() {
+        int weight = OVERHEAD + body.capacity();
+        for (Map.Entry<String, List<String>> header: headers.entrySet()) {
+            weight += header.getKey().length();
+            for (String value: header.getValue())
+                weight += value.length();
+        }
+        return weight;
+    }
+
+    public byte[] bodyBytes() {
+        final byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return bytes;
+    }
+}
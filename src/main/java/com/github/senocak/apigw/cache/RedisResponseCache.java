@@ -0,0 +1,69 @@
+package com.github.senocak.apigw.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Second cache tier shared by the gateway nodes, stored as JSON strings through the gateway's
+ * {@link ReactiveRedisTemplate}. Redis being unavailable only turns lookups into misses.
+ */
+public class RedisResponseCache {
+    private static final Logger logger = LogManager.getLogger(RedisResponseCache.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final String keyPrefix;
+
+    public RedisResponseCache(ReactiveRedisTemplate<String, String> redisTemplate, String routeId) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = "response_cache.{" + routeId + "}.";
+    }
+
+    public Mono<CachedResponse> get(String key) {
+        return redisTemplate.opsForValue().get(keyPrefix + key)
+                .map(RedisResponseCache::decode)
+                .filter(response -> response.expiresAt() > System.currentTimeMillis())
+                .onErrorResume(e -> {
+                    logger.debug("Response cache lookup in Redis failed for {}: {}", key, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public void put(String key, CachedResponse response) {
+        final long ttl = response.expiresAt() - System.currentTimeMillis();
+        if (ttl <= 0)
+            return;
+        Mono.fromCallable(() -> encode(response))
+                .flatMap(json -> redisTemplate.opsForValue().set(keyPrefix + key, json, Duration.ofMillis(ttl)))
+                .subscribe(null, e -> logger.debug("Response cache store in Redis failed for {}: {}", key, e.getMessage()));
+    }
+
+    private static String encode(CachedResponse response) throws Exception {
+        return OBJECT_MAPPER.writeValueAsString(new Stored(response.status(), response.headers(), response.bodyBytes(),
+                response.expiresAt()));
+    }
+
+    private static CachedResponse decode(String json) {
+        try {
+            final Stored stored = OBJECT_MAPPER.readValue(json, Stored.class);
+            final HttpHeaders headers = new HttpHeaders();
+            stored.headers().forEach(headers::addAll);
+            return CachedResponse.of(stored.status(), headers, stored.body(), stored.expiresAt());
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable cached response", e);
+        }
+    }
+
+    /**
+     * JSON form of a {@link CachedResponse}, the body is written as base64
+     */
+    private record Stored(int status, Map<String, List<String>> headers, byte[] body, long expiresAt) {
+    }
+}
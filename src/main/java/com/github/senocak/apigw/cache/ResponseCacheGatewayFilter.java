@@ -0,0 +1,332 @@
+package com.github.senocak.apigw.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches successful GET responses of one route. Entries expire after the route's TTL and are evicted by Caffeine's
+ * W-TinyLFU policy once the route's memory budget is used up, weighed by body and header size; an entry is only stored
+ * while the budget shared by all routes has room for it. While a key is being fetched, other requests for it wait for
+ * that response instead of going upstream too, and elect a new fetch among them when it brought nothing to share. A
+ * key whose response may not be stored is passed upstream without waiting until the TTL ends. An optional Redis tier
+ * is checked before going upstream and filled after.
+ * <p>
+ * The lookup runs with the route's other filters, after its rate limiter, retry and circuit breaker, so hits count
+ * against the rate limit and show in the access log like any other response. The body of a miss is copied by
+ * {@link #capture()}, a second filter of the route that runs before the gateway's {@link NettyWriteResponseFilter}, so
+ * the response that filter writes the upstream body to is the one being copied.
+ * <p>
+ * Not cached: requests with {@code Cache-Control: no-cache/no-store} or an {@code Authorization} header the key does
+ * not vary on, responses other than 200, with {@code Set-Cookie} or {@code Cache-Control: private/no-store/no-cache},
+ * and bodies larger than the route's maximum entry size.
+ */
+public class ResponseCacheGatewayFilter implements GatewayFilter, Ordered {
+    public static final String CACHE_HEADER = "X-Cache";
+    private static final String CAPTURE_ATTR = ResponseCacheGatewayFilter.class.getName() + ".capture";
+    /** hop-by-hop headers and those recomputed when serving */
+    private static final Set<String> UNSTORED_HEADERS = caseInsensitive(HttpHeaders.CONNECTION, "Keep-Alive",
+            HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE, HttpHeaders.PROXY_AUTHENTICATE, HttpHeaders.TE,
+            HttpHeaders.TRAILER, HttpHeaders.CONTENT_LENGTH, CACHE_HEADER);
+    private static final int MAX_PASSES = 10_000;
+
+    private final Duration ttl;
+    private final List<String> varyHeaders;
+    private final int maxEntrySize;
+    private final Cache<String, CachedResponse> cache;
+    /** keys whose last response could not be stored */
+    private final Cache<String, Boolean> passes;
+    private final CacheMemory memory;
+    private final RedisResponseCache secondTier;
+    private final Map<String, Sinks.One<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final GatewayFilter capture = new OrderedGatewayFilter(this::capture,
+            NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 3);
+    private volatile boolean closed;
+
+    /**
+     * @param secondTier {@code null} to keep the cache in this node only
+     */
+    ResponseCacheGatewayFilter(Duration ttl, List<String> varyHeaders, int maxEntrySize, long maxMemory,
+                               CacheMemory memory, RedisResponseCache secondTier) {
+        this.ttl = ttl;
+        this.varyHeaders = varyHeaders != null ? List.copyOf(varyHeaders) : List.of();
+        this.maxEntrySize = maxEntrySize;
+        this.memory = memory;
+        this.secondTier = secondTier;
+        this.passes = Caffeine.newBuilder()
+                .maximumSize(MAX_PASSES)
+                .expireAfterWrite(ttl)
+                .build();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMemory)
+                .weigher((String key, CachedResponse response) -> weight(key, response))
+                .removalListener((String key, CachedResponse response, RemovalCause cause) ->
+                        memory.release(weight(key, response)))
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse response, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(response.expiresAt() - System.currentTimeMillis(), 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse response, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, response, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse response, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @return the filter, added to the route next to this one, whose response copies what is written for a miss
+     */
+    public GatewayFilter capture() {
+        return capture;
+    }
+
+    private Mono<Void> capture(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!HttpMethod.GET.equals(exchange.getRequest().getMethod()))
+            return chain.filter(exchange);
+        final CapturingResponse capturing = new CapturingResponse(exchange.getResponse());
+        final ServerWebExchange capturingExchange = exchange.mutate().response(capturing).build();
+        capturingExchange.getAttributes().put(CAPTURE_ATTR, capturing);
+        return chain.filter(capturingExchange);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        final ServerHttpRequest request = exchange.getRequest();
+        if (!HttpMethod.GET.equals(request.getMethod()) || bypass(request.getHeaders()))
+            return chain.filter(exchange);
+        return lookup(exchange, chain, key(request));
+    }
+
+    private Mono<Void> lookup(ServerWebExchange exchange, GatewayFilterChain chain, String key) {
+        final CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null)
+            return write(exchange.getResponse(), cached);
+        if (passes.getIfPresent(key) != null)
+            return chain.filter(exchange);
+        final Sinks.One<CachedResponse> fetch = Sinks.one();
+        final Sinks.One<CachedResponse> pending = inFlight.putIfAbsent(key, fetch);
+        if (pending != null)
+            // another request is fetching the key: use its response, or look again if it failed or was not stored,
+            // so that one of the waiters fetches next instead of all of them at once
+            return pending.asMono().singleOptional().flatMap(response -> response.isPresent()
+                    ? write(exchange.getResponse(), response.get())
+                    : lookup(exchange, chain, key));
+        final Mono<CachedResponse> stored = secondTier != null ? secondTier.get(key) : Mono.empty();
+        return stored.singleOptional()
+                .flatMap(response -> {
+                    if (response.isPresent()) {
+                        complete(key, fetch, admit(key, response.get()));
+                        return write(exchange.getResponse(), response.get());
+                    }
+                    final CapturingResponse capturing = exchange.getAttribute(CAPTURE_ATTR);
+                    if (capturing != null)
+                        capturing.fetch(key, fetch);
+                    return chain.filter(exchange);
+                })
+                .doFinally(signal -> complete(key, fetch, null));
+    }
+
+    private boolean bypass(HttpHeaders headers) {
+        for (String cacheControl: headers.getOrEmpty(HttpHeaders.CACHE_CONTROL))
+            if (cacheControl.contains("no-cache") || cacheControl.contains("no-store"))
+                return true;
+        return headers.containsKey(HttpHeaders.AUTHORIZATION)
+                && varyHeaders.stream().noneMatch(HttpHeaders.AUTHORIZATION::equalsIgnoreCase);
+    }
+
+    private String key(ServerHttpRequest request) {
+        final String query = request.getURI().getRawQuery();
+        final StringBuilder key = new StringBuilder(request.getPath().value());
+        if (query != null)
+            key.append('?').append(query);
+        for (String header: varyHeaders) {
+            key.append('\n');
+            final List<String> values = request.getHeaders().get(header);
+            if (values != null)
+                key.append(String.join(",", values));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Hand the outcome of a fetch to the requests waiting on it. Only the first call for a fetch counts.
+     */
+    private void complete(String key, Sinks.One<CachedResponse> fetch, CachedResponse response) {
+        inFlight.remove(key, fetch);
+        if (response != null)
+            fetch.tryEmitValue(response);
+        else
+            fetch.tryEmitEmpty();
+    }
+
+    /**
+     * Store a response off-heap when the budget of all routes has room for it
+     *
+     * @return the response to serve, stored or not
+     */
+    private CachedResponse admit(String key, CachedResponse response) {
+        if (closed || !memory.tryReserve(weight(key, response)))
+            return response;
+        final CachedResponse stored = response.offHeap();
+        cache.put(key, stored);
+        if (closed)
+            // cleared meanwhile, its entries would never give their memory back
+            cache.invalidate(key);
+        return stored;
+    }
+
+    /**
+     * Drop every entry, once the route no longer uses this filter
+     */
+    void clear() {
+        closed = true;
+        cache.invalidateAll();
+    }
+
+    private static int weight(String key, CachedResponse response) {
+        return key.length() + response.weight();
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, CachedResponse cached) {
+        response.setStatusCode(HttpStatusCode.valueOf(cached.status()));
+        response.getHeaders().putAll(cached.headers());
+        response.getHeaders().setContentLength(cached.body().remaining());
+        response.getHeaders().set(CACHE_HEADER, "HIT");
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.body().duplicate())));
+    }
+
+    @Override
+    public int getOrder() {
+        // with the route's other filters, which run in the order they were added; the capture runs before all of them
+        return 0;
+    }
+
+    private static Set<String> caseInsensitive(String... names) {
+        final Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        set.addAll(List.of(names));
+        return set;
+    }
+
+    /**
+     * Copies the body of a fetch while it is written to the client and stores it once complete; writes for hits and
+     * other responses pass through
+     */
+    private final class CapturingResponse extends ServerHttpResponseDecorator {
+        private String key;
+        private Sinks.One<CachedResponse> fetch;
+
+        private CapturingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        /**
+         * Copy what is written next as the response of the key's fetch
+         */
+        private void fetch(String key, Sinks.One<CachedResponse> fetch) {
+            this.key = key;
+            this.fetch = fetch;
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            if (key != null && HttpStatus.OK.equals(getStatusCode()))
+                // a streamed response is never stored
+                passes.put(key, Boolean.TRUE);
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (key == null)
+                return super.writeWith(body);
+            if (!isStorable()) {
+                if (HttpStatus.OK.equals(getStatusCode()))
+                    // the headers forbid storing, later requests for the key need not wait for each other
+                    passes.put(key, Boolean.TRUE);
+                return super.writeWith(body);
+            }
+            getHeaders().set(CACHE_HEADER, "MISS");
+            final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+            final boolean[] tooLarge = {false};
+            return super.writeWith(Flux.from(body).doOnNext(buffer -> {
+                        final int length = buffer.readableByteCount();
+                        if (tooLarge[0] || captured.size() + length > maxEntrySize) {
+                            tooLarge[0] = true;
+                            return;
+                        }
+                        final byte[] chunk = new byte[length];
+                        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(chunk), 0, length);
+                        captured.writeBytes(chunk);
+                    }))
+                    .doOnSuccess(ignored -> {
+                        if (tooLarge[0])
+                            passes.put(key, Boolean.TRUE);
+                        else
+                            store(captured.toByteArray());
+                    });
+        }
+
+        private boolean isStorable() {
+            final HttpHeaders headers = getHeaders();
+            if (!HttpStatus.OK.equals(getStatusCode()) || headers.containsKey(HttpHeaders.SET_COOKIE)
+                    || headers.getContentLength() > maxEntrySize)
+                return false;
+            for (String cacheControl: headers.getOrEmpty(HttpHeaders.CACHE_CONTROL))
+                if (cacheControl.contains("private") || cacheControl.contains("no-store")
+                        || cacheControl.contains("no-cache"))
+                    return false;
+            return true;
+        }
+
+        private void store(byte[] body) {
+            final HttpHeaders headers = new HttpHeaders();
+            getHeaders().forEach((name, values) -> {
+                if (!UNSTORED_HEADERS.contains(name))
+                    headers.addAll(name, values);
+            });
+            final CachedResponse response = CachedResponse.of(HttpStatus.OK.value(), headers, body,
+                    System.currentTimeMillis() + ttl.toMillis());
+            if (secondTier != null)
+                secondTier.put(key, response);
+            complete(key, fetch, admit(key, response));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.senocak.apigw.cache;
+
+import com.github.senocak.apigw.entity.ResponseCache;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the response cache filter of a route from its {@link ResponseCache} settings, with defaults from
+ * {@code gateway.cache.*} for what the route does not set. All routes' caches share one off-heap budget,
+ * {@code gateway.cache.max-total-memory}.
+ */
+@Component
+public class ResponseCaches {
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final Duration defaultTtl;
+    private final int defaultMaxEntrySize;
+    private final long defaultMaxMemory;
+    private final CacheMemory memory;
+    private final Set<ResponseCacheGatewayFilter> filters = ConcurrentHashMap.newKeySet();
+
+    public ResponseCaches(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                          @Value("${gateway.cache.ttl:60s}") Duration defaultTtl,
+                          @Value("${gateway.cache.max-entry-size:1048576}") int defaultMaxEntrySize,
+                          @Value("${gateway.cache.max-memory:67108864}") long defaultMaxMemory,
+                          @Value("${gateway.cache.max-total-memory:268435456}") long maxTotalMemory) {
+        this.redisTemplate = redisTemplate;
+        this.defaultTtl = defaultTtl;
+        this.defaultMaxEntrySize = defaultMaxEntrySize;
+        this.defaultMaxMemory = defaultMaxMemory;
+        this.memory = new CacheMemory(maxTotalMemory);
+    }
+
+    public ResponseCacheGatewayFilter filter(String routeId, ResponseCache config) {
+        final ResponseCacheGatewayFilter filter = new ResponseCacheGatewayFilter(
+                config.getTtl() != null ? DurationStyle.detectAndParse(config.getTtl()) : defaultTtl,
+                config.getVaryHeaders(),
+                config.getMaxEntrySize() != null ? config.getMaxEntrySize() : defaultMaxEntrySize,
+                config.getMaxMemory() != null ? config.getMaxMemory() : defaultMaxMemory,
+                memory,
+                config.isRedis() ? new RedisResponseCache(redisTemplate, routeId) : null);
+        filters.add(filter);
+        return filter;
+    }
+
+    /**
+     * Clear the caches that none of the routes uses any more, giving their memory back to the shared budget
+     */
+    public void retain(Collection<Route> routes) {
+        final Set<GatewayFilter> used = new HashSet<>();
+        for (Route route: routes)
+            for (GatewayFilter filter: route.getFilters())
+                used.add(filter instanceof OrderedGatewayFilter ordered ? ordered.getDelegate() : filter);
+        filters.removeIf(filter -> {
+            if (used.contains(filter))
+                return false;
+            filter.clear();
+            return true;
+        });
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.senocak.apigw.client;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import java.util.List;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * The gateway's routing filter for routes with a connection pool profile, sending their requests through the
+ * profile's client. It runs right before the default routing filter, which then sees the exchange as routed and
+ * lets it pass; routes without a profile are left to the default filter. WebSocket upgrades are left to the
+ * gateway's WebSocket filter, which shares the default filter's order.
+ */
+@Component
+public class PooledRoutingFilter extends NettyRoutingFilter {
+    public static final int ORDER = NettyRoutingFilter.ORDER - 1;
+    private final UpstreamClients upstreamClients;
+
+    public PooledRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                               HttpClientProperties properties, UpstreamClients upstreamClients) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.upstreamClients = upstreamClients;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null || "websocket".equalsIgnoreCase(exchange.getRequest().getHeaders().getUpgrade())
+                || upstreamClients.client((String) route.getMetadata().get(UpstreamClients.POOL_METADATA)) == null)
+            return chain.filter(exchange);
+        final long start = System.nanoTime();
+        return super.filter(exchange, chain).contextWrite(context -> context.put(UpstreamPool.ACQUIRE_START, start));
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        final HttpClient client = upstreamClients.client((String) route.getMetadata().get(UpstreamClients.POOL_METADATA));
+        return client != null ? client : super.getHttpClient(route, exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
@@ -0,0 +1,262 @@
+package com.github.senocak.apigw.client;
+
+import com.github.senocak.apigw.entity.ConnectionPool;
+import com.github.senocak.apigw.metrics.LatencyHistogram;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * HTTP clients with their own connection pools, one per {@link ConnectionPool} profile. Routes declaring a profile
+ * are routed through its client by {@link PooledRoutingFilter}; the others keep using the gateway's shared client.
+ * A profile is named after its route unless it sets {@code name}, in which case the routes naming it share the pool;
+ * they must then give it the same settings. Pools survive route refreshes as long as their settings do not change, so a refresh does not reconnect.
+ */
+@Component
+public class UpstreamClients implements DisposableBean {
+    /** Route metadata holding the name of the route's connection pool */
+    public static final String POOL_METADATA = "connectionPool";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final double MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+
+    public enum Protocol {
+        HTTP1("http1"), H2("h2"), H2C("h2c");
+
+        private final String expression;
+
+        Protocol(String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * @throws IllegalArgumentException when the expression does not name a protocol
+         */
+        public static Protocol of(String expression) {
+            if (expression == null)
+                return HTTP1;
+            for (Protocol protocol: values())
+                if (protocol.expression.equals(expression))
+                    return protocol;
+            throw new IllegalArgumentException("Unknown protocol '" + expression + "', expected http1, h2 or h2c");
+        }
+    }
+
+    private final HttpClientProperties httpClientProperties;
+    private final HttpClientSslConfigurer sslConfigurer;
+    private final int defaultMaxConnections;
+    private final int defaultPendingAcquireMaxCount;
+    private final Duration defaultPendingAcquireTimeout;
+    private final Duration defaultMaxIdleTime;
+    private final Duration evictionInterval;
+    private final Map<String, UpstreamPool> pools = new ConcurrentHashMap<>();
+    /** ids of the routes using each pool, guarded by {@code this} */
+    private final Map<String, Set<String>> users = new HashMap<>();
+
+    public UpstreamClients(HttpClientProperties httpClientProperties, HttpClientSslConfigurer sslConfigurer,
+                           @Value("${gateway.connection-pool.max-connections:200}") int defaultMaxConnections,
+                           @Value("${gateway.connection-pool.pending-acquire-max-count:1000}") int defaultPendingAcquireMaxCount,
+                           @Value("${gateway.connection-pool.pending-acquire-timeout:5s}") Duration defaultPendingAcquireTimeout,
+                           @Value("${gateway.connection-pool.max-idle-time:30s}") Duration defaultMaxIdleTime,
+                           @Value("${gateway.connection-pool.eviction-interval:10s}") Duration evictionInterval) {
+        this.httpClientProperties = httpClientProperties;
+        this.sslConfigurer = sslConfigurer;
+        this.defaultMaxConnections = defaultMaxConnections;
+        this.defaultPendingAcquireMaxCount = defaultPendingAcquireMaxCount;
+        this.defaultPendingAcquireTimeout = defaultPendingAcquireTimeout;
+        this.defaultMaxIdleTime = defaultMaxIdleTime;
+        this.evictionInterval = evictionInterval;
+    }
+
+    /**
+     * Create the pool of a route's profile, or keep the existing one when its settings are unchanged. A new pool
+     * opens {@code warmup} connections to each of the given upstreams.
+     * @return the pool name to store in the route's metadata
+     * @throws IllegalArgumentException when another route uses the pool with other settings
+     */
+    public synchronized String register(String routeId, ConnectionPool config, Collection<URI> upstreams) {
+        final String name = config.getName() != null ? config.getName() : routeId;
+        final UpstreamPool current = pools.get(name);
+        final Set<String> routeIds = users.computeIfAbsent(name, ignored -> new HashSet<>());
+        if (current != null && current.config().equals(config)) {
+            routeIds.add(routeId);
+            return name;
+        }
+        if (current != null) {
+            final Set<String> others = new TreeSet<>(routeIds);
+            others.remove(routeId);
+            if (!others.isEmpty())
+                throw new IllegalArgumentException("pool '" + name + "' is used with other settings by routes "
+                        + others);
+        }
+        routeIds.clear();
+        routeIds.add(routeId);
+        final UpstreamPool pool = new UpstreamPool(name, config, provider(name, config),
+                client -> configure(client, config));
+        final UpstreamPool previous = pools.put(name, pool);
+        if (previous != null)
+            previous.dispose();
+        pool.warmup(upstreams.stream().filter(uri -> "http".equalsIgnoreCase(uri.getScheme())
+                || "https".equalsIgnoreCase(uri.getScheme())).toList(),
+                config.getWarmup() != null ? config.getWarmup() : 0);
+        return name;
+    }
+
+    /**
+     * @return the client of the named pool, or {@code null} when there is none
+     */
+    public HttpClient client(String name) {
+        final UpstreamPool pool = name != null ? pools.get(name) : null;
+        return pool != null ? pool.client() : null;
+    }
+
+    /**
+     * Close the pools that none of the given routes uses anymore
+     */
+    public synchronized void retain(Collection<Route> routes) {
+        final Map<Object, Set<String>> used = new HashMap<>();
+        for (Route route: routes)
+            used.computeIfAbsent(route.getMetadata().get(POOL_METADATA), name -> new HashSet<>()).add(route.getId());
+        pools.values().removeIf(pool -> {
+            if (used.containsKey(pool.name()))
+                return false;
+            pool.dispose();
+            return true;
+        });
+        users.entrySet().removeIf(entry -> {
+            entry.getValue().retainAll(used.getOrDefault(entry.getKey(), Set.of()));
+            return !pools.containsKey(entry.getKey());
+        });
+    }
+
+    private ConnectionProvider.Builder provider(String name, ConnectionPool config) {
+        final int maxConnections = config.getMaxConnections() != null ? config.getMaxConnections() : defaultMaxConnections;
+        final ConnectionProvider.Builder builder = ConnectionProvider.builder("gateway-" + name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(config.getPendingAcquireMaxCount() != null
+                        ? config.getPendingAcquireMaxCount() : defaultPendingAcquireMaxCount)
+                .pendingAcquireTimeout(durationOrDefault(config.getPendingAcquireTimeout(), defaultPendingAcquireTimeout))
+                .maxIdleTime(durationOrDefault(config.getMaxIdleTime(), defaultMaxIdleTime))
+                .evictInBackground(evictionInterval)
+                // the most recently released connection is the least likely to have been closed by the upstream
+                .lifo();
+        if (config.getMaxLifeTime() != null)
+            builder.maxLifeTime(DurationStyle.detectAndParse(config.getMaxLifeTime()));
+        if (Protocol.of(config.getProtocol()) != Protocol.HTTP1) {
+            final Http2AllocationStrategy.Builder strategy = Http2AllocationStrategy.builder()
+                    .maxConnections(maxConnections);
+            if (config.getMaxConcurrentStreams() != null)
+                strategy.maxConcurrentStreams(config.getMaxConcurrentStreams());
+            builder.allocationStrategy(strategy.build());
+        }
+        return builder;
+    }
+
+    /**
+     * Apply the gateway's client settings (TLS, compression, header limits) and the profile's protocol and timeout
+     */
+    private HttpClient configure(HttpClient client, ConnectionPool config) {
+        HttpClient configured = client.httpResponseDecoder(spec -> {
+            if (httpClientProperties.getMaxHeaderSize() != null)
+                spec.maxHeaderSize((int) httpClientProperties.getMaxHeaderSize().toBytes());
+            if (httpClientProperties.getMaxInitialLineLength() != null)
+                spec.maxInitialLineLength((int) httpClientProperties.getMaxInitialLineLength().toBytes());
+            return spec;
+        });
+        configured = switch (Protocol.of(config.getProtocol())) {
+            case HTTP1 -> configured.protocol(HttpProtocol.HTTP11);
+            // HTTP/2 where the upstream offers it through ALPN, HTTP/1.1 otherwise
+            case H2 -> configured.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+            // cleartext HTTP/2 with prior knowledge, the upstream must speak it
+            case H2C -> configured.protocol(HttpProtocol.H2C);
+        };
+        final Integer connectTimeout = config.getConnectTimeout() != null
+                ? Integer.valueOf((int) DurationStyle.detectAndParse(config.getConnectTimeout()).toMillis())
+                : httpClientProperties.getConnectTimeout();
+        if (connectTimeout != null)
+            configured = configured.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
+        configured = sslConfigurer.configureSsl(configured);
+        if (httpClientProperties.isCompression())
+            configured = configured.compress(true);
+        return configured;
+    }
+
+    private static Duration durationOrDefault(String value, Duration defaultValue) {
+        return value != null ? DurationStyle.detectAndParse(value) : defaultValue;
+    }
+
+    /**
+     * Prometheus text exposition format of the pools: connections and waiting acquires per upstream address, and
+     * the time requests waited for a connection, including connecting when the pool had to open one
+     */
+    public String scrape() {
+        final StringBuilder out = new StringBuilder(256 * (pools.size() + 1));
+        out.append("# TYPE gateway_pool_connections gauge\n");
+        pools.values().forEach(pool -> pool.addresses().forEach((address, metrics) -> {
+            sample(out, "gateway_pool_connections", pool.name(), address, "state=\"active\"", metrics.acquiredSize());
+            sample(out, "gateway_pool_connections", pool.name(), address, "state=\"idle\"", metrics.idleSize());
+        }));
+        gauge(out, "gateway_pool_max_connections", ConnectionPoolMetrics::maxAllocatedSize);
+        gauge(out, "gateway_pool_pending_acquires", ConnectionPoolMetrics::pendingAcquireSize);
+        gauge(out, "gateway_pool_max_pending_acquires", ConnectionPoolMetrics::maxPendingAcquireSize);
+        out.append("# TYPE gateway_pool_acquire_seconds summary\n");
+        pools.values().forEach(pool -> {
+            final LatencyHistogram acquire = pool.acquire();
+            final long[] values = acquire.quantilesMicros(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++)
+                sample(out, "gateway_pool_acquire_seconds", pool.name(), null, "quantile=\"" + QUANTILES[i] + "\"",
+                        values[i] / MICROS_PER_SECOND);
+            sample(out, "gateway_pool_acquire_seconds_sum", pool.name(), null, null,
+                    acquire.getSumMicros() / MICROS_PER_SECOND);
+            sample(out, "gateway_pool_acquire_seconds_count", pool.name(), null, null, acquire.getCount());
+        });
+        return out.toString();
+    }
+
+    private void gauge(StringBuilder out, String name, ToIntFunction<ConnectionPoolMetrics> value) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        pools.values().forEach(pool -> pool.addresses().forEach((address, metrics) ->
+                sample(out, name, pool.name(), address, null, value.applyAsInt(metrics))));
+    }
+
+    private static void sample(StringBuilder out, String name, String pool, String address, String label, Object value) {
+        out.append(name).append("{pool=\"");
+        RouteMetrics.escape(out, pool);
+        out.append('"');
+        if (address != null) {
+            out.append(",upstream=\"");
+            RouteMetrics.escape(out, address);
+            out.append('"');
+        }
+        if (label != null)
+            out.append(',').append(label);
+        out.append("} ").append(value).append('\n');
+    }
+
+    @Override
+    public void destroy() {
+        pools.values().forEach(UpstreamPool::dispose);
+        pools.clear();
+    }
+}
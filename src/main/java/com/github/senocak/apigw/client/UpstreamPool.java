@@ -0,0 +1,110 @@
+package com.github.senocak.apigw.client;
+
+import com.github.senocak.apigw.entity.ConnectionPool;
+import com.github.senocak.apigw.metrics.LatencyHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.context.ContextView;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * The connection pool of one profile and the client that uses it. Reactor Netty keeps a separate pool per upstream
+ * address inside the provider, so limits apply per upstream host and a slow host cannot take the connections of
+ * another. Pool sizes are reported per address and the time requests wait for a connection per profile.
+ */
+final class UpstreamPool implements ConnectionProvider.MeterRegistrar {
+    /** context key holding when the exchange asked for a connection */
+    static final String ACQUIRE_START = UpstreamPool.class.getName() + ".acquireStart";
+    private static final Logger log = LogManager.getLogger(UpstreamPool.class);
+
+    private final String name;
+    private final ConnectionPool config;
+    private final ConnectionProvider provider;
+    private final HttpClient client;
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final Map<String, ConnectionPoolMetrics> addresses = new ConcurrentHashMap<>();
+
+    UpstreamPool(String name, ConnectionPool config, ConnectionProvider.Builder provider,
+                 UnaryOperator<HttpClient> configurer) {
+        this.name = name;
+        this.config = config;
+        this.provider = provider.metrics(true, () -> this).build();
+        this.client = configurer.apply(HttpClient.create(this.provider))
+                .doOnRequest((request, connection) -> recordAcquire(request.currentContextView()));
+    }
+
+    String name() {
+        return name;
+    }
+
+    ConnectionPool config() {
+        return config;
+    }
+
+    HttpClient client() {
+        return client;
+    }
+
+    LatencyHistogram acquire() {
+        return acquire;
+    }
+
+    Map<String, ConnectionPoolMetrics> addresses() {
+        return addresses;
+    }
+
+    /**
+     * Open {@code connections} connections to every upstream with concurrent {@code HEAD /} requests, so the first
+     * requests after a route is compiled do not all pay for a connect and TLS handshake at once
+     */
+    void warmup(Collection<URI> upstreams, int connections) {
+        if (connections <= 0 || upstreams.isEmpty())
+            return;
+        Flux.fromIterable(upstreams)
+                .flatMap(upstream -> Flux.range(0, connections)
+                        .flatMap(i -> client.head().uri(upstream.resolve("/")).response(), connections)
+                        .then()
+                        .doOnSuccess(ignored -> log.info("Warmed up connection pool {} to {}", name, upstream))
+                        .onErrorResume(e -> {
+                            log.warn("Could not warm up connection pool {} to {}: {}", name, upstream, e.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    void dispose() {
+        provider.disposeLater().subscribe();
+    }
+
+    private void recordAcquire(ContextView context) {
+        final Long start = context.getOrDefault(ACQUIRE_START, null);
+        if (start != null)
+            acquire.recordNanos(System.nanoTime() - start);
+    }
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        addresses.put(address(remoteAddress), metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        addresses.remove(address(remoteAddress));
+    }
+
+    private static String address(SocketAddress remoteAddress) {
+        return remoteAddress instanceof InetSocketAddress inet ? inet.getHostString() + ":" + inet.getPort()
+                : remoteAddress.toString();
+    }
+}
@@ -1,24 +1,44 @@
 package com.github.senocak.apigw.configuration;
 
+import com.github.senocak.apigw.service.ApiRouteLocatorImpl;
 import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
 
 @Component
 public class GatewayRoutesRefresher implements ApplicationEventPublisherAware {
 
+    private final ApiRouteLocatorImpl apiRouteLocator;
     private ApplicationEventPublisher applicationEventPublisher;
 
+    public GatewayRoutesRefresher(final ApiRouteLocatorImpl apiRouteLocator) {
+        this.apiRouteLocator = apiRouteLocator;
+    }
+
     @Override
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
         this.applicationEventPublisher = applicationEventPublisher;
     }
 
     /**
-     * Refresh the routes to load from data store
+     * Refresh the routes to load from data store, then let the gateway pick up the new route set
+     */
+    public Mono<Void> refreshRoutes() {
+        return apiRouteLocator.refresh()
+                .doOnSuccess(snapshot -> applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this)))
+                .then();
+    }
+
+    /**
+     * Refresh only the given route documents, then let the gateway pick up the new route set
      */
-    public void refreshRoutes() {
-        applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
+    public Mono<Void> refreshRoutes(Collection<String> routeIds) {
+        return apiRouteLocator.refresh(routeIds)
+                .doOnSuccess(snapshot -> applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this)))
+                .then();
     }
 }
@@ -1,16 +1,31 @@
 package com.github.senocak.apigw.configuration;
 
+import com.github.senocak.apigw.ratelimit.HybridRateLimiter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
+import java.time.Duration;
+
 @Configuration
 class RedisConfig {
     private final RedisProperties redisProperties;
 
+    @Value("${gateway.rate-limiter.replenish-rate:1}")
+    private int replenishRate;
+
+    @Value("${gateway.rate-limiter.burst-capacity:60}")
+    private int burstCapacity;
+
+    @Value("${gateway.rate-limiter.requested-tokens:1}")
+    private int requestedTokens;
+
     RedisConfig(RedisProperties redisProperties) {
         this.redisProperties = redisProperties;
     }
@@ -27,7 +42,24 @@ class RedisConfig {
 
     @Bean
     RedisRateLimiter redisRateLimiter() {
-        return new RedisRateLimiter(1,60,1);
+        return new RedisRateLimiter(replenishRate, burstCapacity, requestedTokens);
     }
 
-}
\ No newline at end of file
+    /**
+     * Rate limiter used by routes, backed by in-memory buckets that lease their tokens from {@link #redisRateLimiter()}
+     */
+    @Bean
+    @Primary
+    HybridRateLimiter hybridRateLimiter(RedisRateLimiter redisRateLimiter, ConfigurationService configurationService,
+                                        @Value("${gateway.rate-limiter.mode:LEASE}") HybridRateLimiter.Mode mode,
+                                        @Value("${gateway.rate-limiter.lease-size:20}") int leaseSize,
+                                        @Value("${gateway.rate-limiter.lease-ttl:2s}") Duration leaseTtl,
+                                        @Value("${gateway.rate-limiter.max-keys-per-route:100000}") int maxKeysPerRoute) {
+        final HybridRateLimiter.Config defaultConfig = new HybridRateLimiter.Config();
+        defaultConfig.setReplenishRate(replenishRate);
+        defaultConfig.setBurstCapacity(burstCapacity);
+        defaultConfig.setRequestedTokens(requestedTokens);
+        return new HybridRateLimiter(redisRateLimiter, defaultConfig, mode, leaseSize, leaseTtl, maxKeysPerRoute,
+                configurationService);
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.senocak.apigw.configuration;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pushes route changes to the gateway by tailing a change stream on the {@code apiRoutes} collection.
+ * The stream starts at a cluster operation time taken before a full reload, so nothing written in between is missed,
+ * and bursts of inserts, updates and deletes are debounced into one incremental refresh. Nothing is persisted: after a
+ * restart, or when the oplog no longer holds the last applied change, the node reloads all routes and starts over.
+ * Change streams need a replica set; a single-node replica set is enough for local runs.
+ */
+@Component
+@ConditionalOnProperty(value = "gateway.routes.change-stream.enabled", havingValue = "true")
+public class RouteChangeStreamListener implements DisposableBean {
+    private static final Logger logger = LogManager.getLogger(RouteChangeStreamListener.class);
+    /** Server error code when the resume token is no longer in the oplog */
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final GatewayRoutesRefresher gatewayRoutesRefresher;
+    private final String collectionName;
+    private final int batchSize;
+    private final Duration debounce;
+    private final Duration maxDelay;
+    /** Resume token of the last applied change, null until the first batch or after the history was lost */
+    private volatile BsonValue resumeToken;
+    private Disposable subscription;
+
+    public RouteChangeStreamListener(final ReactiveMongoTemplate reactiveMongoTemplate,
+                                     final GatewayRoutesRefresher gatewayRoutesRefresher,
+                                     @Value("${gateway.routes.change-stream.batch-size:500}") final int batchSize,
+                                     @Value("${gateway.routes.change-stream.debounce:250ms}") final Duration debounce,
+                                     @Value("${gateway.routes.change-stream.max-delay:2s}") final Duration maxDelay) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.gatewayRoutesRefresher = gatewayRoutesRefresher;
+        this.collectionName = reactiveMongoTemplate.getCollectionName(ApiRoute.class);
+        this.batchSize = batchSize;
+        this.debounce = debounce;
+        this.maxDelay = maxDelay;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscription = Flux.defer(this::watch)
+                .transform(this::debounce)
+                .concatMap(this::applyBatch)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> logger.warn("Route change stream failed, resubscribing: {}",
+                                signal.failure().getMessage())))
+                // an invalidate event (drop, rename) ends the stream, open a new one after it
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .subscribe();
+        logger.info("Watching {} for route changes", collectionName);
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null)
+            subscription.dispose();
+    }
+
+    private Flux<ChangeStreamEvent<Document>> watch() {
+        final BsonValue token = resumeToken;
+        if (token != null)
+            return reactiveMongoTemplate.changeStream(collectionName, ChangeStreamOptions.builder().startAfter(token).build(),
+                            Document.class)
+                    .onErrorResume(this::isHistoryLost, e -> {
+                        logger.warn("Last applied route change is no longer in the oplog, reloading all routes");
+                        resumeToken = null;
+                        return Flux.error(e);
+                    });
+        // take the cluster time first, so changes written during the full load are replayed by the stream
+        return operationTime()
+                .flatMapMany(time -> gatewayRoutesRefresher.refreshRoutes()
+                        .thenMany(reactiveMongoTemplate.changeStream(collectionName,
+                                ChangeStreamOptions.builder().resumeAt(time).build(), Document.class)));
+    }
+
+    /**
+     * Emit the events collected so far once none arrived for {@code debounce}, {@code batchSize} are collected, or
+     * {@code maxDelay} passed since the last batch under a steady stream of changes
+     */
+    private Flux<List<ChangeStreamEvent<Document>>> debounce(Flux<ChangeStreamEvent<Document>> events) {
+        return events.publish(shared -> shared.buffer(Flux.merge(
+                        shared.sampleTimeout(event -> Mono.delay(debounce)),
+                        shared.index().filter(indexed -> (indexed.getT1() + 1) % batchSize == 0),
+                        shared.sample(maxDelay))))
+                .filter(batch -> !batch.isEmpty());
+    }
+
+    private Mono<BsonTimestamp> operationTime() {
+        return reactiveMongoTemplate.executeCommand(new Document("ping", 1))
+                .map(reply -> {
+                    if (reply.get("operationTime") instanceof BsonTimestamp operationTime)
+                        return operationTime;
+                    throw new IllegalStateException("MongoDB reported no operation time, change streams need a replica set");
+                });
+    }
+
+    private Mono<Void> applyBatch(List<ChangeStreamEvent<Document>> events) {
+        final Set<String> routeIds = new LinkedHashSet<>();
+        boolean invalidated = false;
+        for (ChangeStreamEvent<Document> event: events) {
+            final ChangeStreamDocument<Document> raw = event.getRaw();
+            final OperationType operationType = event.getOperationType();
+            if (operationType == OperationType.INVALIDATE || operationType == OperationType.DROP
+                    || operationType == OperationType.RENAME || operationType == OperationType.DROP_DATABASE) {
+                invalidated = true;
+            } else if (raw != null && raw.getDocumentKey() != null) {
+                routeIds.add(toId(raw.getDocumentKey().get("_id")));
+            }
+        }
+        final Mono<Void> refresh;
+        if (invalidated)
+            refresh = gatewayRoutesRefresher.refreshRoutes();
+        else if (!routeIds.isEmpty())
+            refresh = gatewayRoutesRefresher.refreshRoutes(routeIds);
+        else
+            refresh = Mono.empty();
+        final BsonValue lastToken = events.getLast().getResumeToken();
+        return refresh
+                .doOnSuccess(v -> {
+                    if (lastToken != null)
+                        resumeToken = lastToken;
+                    logger.info("Applied {} route change events ({} routes)", events.size(), routeIds.size());
+                });
+    }
+
+    private boolean isHistoryLost(Throwable e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof MongoCommandException mce && mce.getErrorCode() == CHANGE_STREAM_HISTORY_LOST)
+                return true;
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    private static String toId(BsonValue id) {
+        if (id.isObjectId())
+            return id.asObjectId().getValue().toHexString();
+        if (id.isString())
+            return id.asString().getValue();
+        return id.toString();
+    }
+}
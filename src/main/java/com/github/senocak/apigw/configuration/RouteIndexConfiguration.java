@@ -0,0 +1,29 @@
+package com.github.senocak.apigw.configuration;
+
+import com.github.senocak.apigw.handler.IndexedRoutePredicateHandlerMapping;
+import com.github.senocak.apigw.service.RouteCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+@ConditionalOnProperty(value = "gateway.routes.index.enabled", havingValue = "true")
+public class RouteIndexConfiguration {
+
+    /**
+     * Replaces the gateway's linear route lookup with {@link IndexedRoutePredicateHandlerMapping}
+     */
+    @Bean
+    public RoutePredicateHandlerMapping routePredicateHandlerMapping(FilteringWebHandler webHandler,
+                                                                     RouteLocator routeLocator,
+                                                                     GlobalCorsProperties globalCorsProperties,
+                                                                     Environment environment, RouteCache routeCache) {
+        return new IndexedRoutePredicateHandlerMapping(webHandler, routeLocator, globalCorsProperties, environment,
+                routeCache);
+    }
+}
@@ -2,6 +2,7 @@ package com.github.senocak.apigw.entity;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.List;
 
@@ -10,19 +11,31 @@ import java.util.List;
 public class ApiRoute {
     @Id
     private String id;
+    @Indexed(unique = true, sparse = true)
     private String routeIdentifier;
     private String uri;
+    private List<Upstream> upstreams;
+    private String loadBalancer;
+    private ConnectionPool connectionPool;
     private String method;
+    @Indexed
     private String path;
     private List<String> headers;
+    @Indexed
     private String host;
     private String body;
+    private Integer bodyLimit;
     private List<String> requestHeaders;
     private List<String> responseHeader;
     private Integer retry;
+    private RetryPolicy retryPolicy;
     private String rewritePath;
     private boolean requestRateLimiter;
+    private RateLimit rateLimit;
     private Integer setStatus;
     private CircuitBreaker circuitBreaker;
+    private ResponseCache cache;
+    private Double accessLogSampleRate;
+    private String offload;
 }
 
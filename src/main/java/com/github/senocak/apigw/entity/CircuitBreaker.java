@@ -11,4 +11,13 @@ public class CircuitBreaker {
     private Set<String> statusCodes;
     private String routeId;
     private boolean resumeWithoutError;
+    private String slidingWindowType;
+    private Integer slidingWindowSize;
+    private Integer minimumNumberOfCalls;
+    private Float failureRateThreshold;
+    private Float slowCallRateThreshold;
+    private String slowCallDurationThreshold;
+    private String waitDurationInOpenState;
+    private Integer permittedNumberOfCallsInHalfOpenState;
+    private String timeout;
 }
@@ -0,0 +1,18 @@
+package com.github.senocak.apigw.entity;
+
+import lombok.Data;
+
+@Data
+public class ConnectionPool {
+    private String name;
+    private Integer maxConnections;
+    private Integer pendingAcquireMaxCount;
+    private String pendingAcquireTimeout;
+    private String maxIdleTime;
+    private String maxLifeTime;
+    private String connectTimeout;
+    private String responseTimeout;
+    private String protocol;
+    private Integer maxConcurrentStreams;
+    private Integer warmup;
+}
@@ -0,0 +1,11 @@
+package com.github.senocak.apigw.entity;
+
+import lombok.Data;
+
+@Data
+public class RateLimit {
+    private Integer replenishRate;
+    private Integer burstCapacity;
+    private Integer requestedTokens;
+    private String keyResolver;
+}
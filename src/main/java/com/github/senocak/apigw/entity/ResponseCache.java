@@ -0,0 +1,13 @@
+package com.github.senocak.apigw.entity;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class ResponseCache {
+    private String ttl;
+    private List<String> varyHeaders;
+    private Integer maxEntrySize;
+    private Long maxMemory;
+    private boolean redis;
+}
@@ -0,0 +1,15 @@
+package com.github.senocak.apigw.entity;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class RetryPolicy {
+    private List<String> methods;
+    private List<String> statuses;
+    private String firstBackoff;
+    private String maxBackoff;
+    private Double factor;
+    private Double jitter;
+    private Double budgetPercent;
+}
@@ -0,0 +1,10 @@
+package com.github.senocak.apigw.entity;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class RouteBatch {
+    private List<ApiRoute> upserts;
+    private List<String> deletes;
+}
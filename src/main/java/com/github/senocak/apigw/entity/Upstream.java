@@ -0,0 +1,9 @@
+package com.github.senocak.apigw.entity;
+
+import lombok.Data;
+
+@Data
+public class Upstream {
+    private String uri;
+    private Integer weight;
+}
@@ -0,0 +1,192 @@
+package com.github.senocak.apigw.filters;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log pipeline: exchanges are written into a bounded ring of pre-allocated records on the event loop and
+ * formatted and logged by a single background thread, which parks while the ring is empty and is woken by the next
+ * record. When the ring is full records are dropped, never waited for. The writer starts before the web server and
+ * stops after it, writing out what is left in the ring.
+ */
+@Component
+public class AccessLog implements SmartLifecycle {
+    /** Route metadata holding the fraction of the route's exchanges to log, between 0 and 1 */
+    public static final String SAMPLE_RATE_METADATA = "accessLogSampleRate";
+    private static final Logger logger = LogManager.getLogger("access-log");
+    private static final Logger log = LogManager.getLogger(AccessLog.class);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+    private static final String CANCELLED = "cancelled";
+
+    public enum OverflowPolicy {
+        /** drop the record of the exchange that finds the ring full */
+        DROP_NEWEST,
+        /** drop the oldest unwritten record to make room */
+        DROP_OLDEST
+    }
+
+    private final AccessLogRingBuffer ringBuffer;
+    private final double defaultSampleRate;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder dropped = new LongAdder();
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile boolean running;
+    /** set by the writer before it parks, so producers only unpark it when it may be waiting */
+    private volatile boolean writerWaiting;
+    private volatile Thread writer;
+
+    public AccessLog(@Value("${gateway.access-log.buffer-size:8192}") int bufferSize,
+                     @Value("${gateway.access-log.sample-rate:1.0}") double defaultSampleRate,
+                     @Value("${gateway.access-log.overflow-policy:DROP_NEWEST}") OverflowPolicy overflowPolicy) {
+        this.ringBuffer = new AccessLogRingBuffer(bufferSize);
+        this.defaultSampleRate = defaultSampleRate;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return whether the exchange of the given route should be logged
+     */
+    public boolean sample(Route route) {
+        double sampleRate = defaultSampleRate;
+        if (route != null && route.getMetadata().get(SAMPLE_RATE_METADATA) instanceof Number rate)
+            sampleRate = rate.doubleValue();
+        return sampleRate >= 1 || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Copy the finished exchange into a free record, without formatting anything
+     */
+    public void record(ServerWebExchange exchange, Route route, long startNanos, Throwable error) {
+        record(exchange, route, startNanos, error != null ? error.getClass().getSimpleName() + ": " + error.getMessage()
+                : null);
+    }
+
+    /**
+     * Record an exchange the client went away from before it completed
+     */
+    public void recordCancelled(ServerWebExchange exchange, Route route, long startNanos) {
+        record(exchange, route, startNanos, CANCELLED);
+    }
+
+    private void record(ServerWebExchange exchange, Route route, long startNanos, String error) {
+        long position = ringBuffer.claim();
+        if (position < 0 && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            final long oldest = ringBuffer.poll();
+            if (oldest >= 0) {
+                ringBuffer.release(oldest);
+                dropped.increment();
+            }
+            position = ringBuffer.claim();
+        }
+        if (position < 0) {
+            dropped.increment();
+            return;
+        }
+        final ServerHttpRequest request = exchange.getRequest();
+        final ServerHttpResponse response = exchange.getResponse();
+        final HttpStatusCode status = response.getStatusCode();
+        final AccessLogRecord record = ringBuffer.record(position);
+        record.routeId = route != null ? route.getId() : null;
+        record.method = request.getMethod().name();
+        record.path = request.getPath().value();
+        record.status = status != null ? status.value() : 0;
+        record.latencyNanos = System.nanoTime() - startNanos;
+        record.bytesIn = request.getHeaders().getContentLength();
+        record.bytesOut = response.getHeaders().getContentLength();
+        record.error = error;
+        ringBuffer.publish(position);
+        if (writerWaiting)
+            LockSupport.unpark(writer);
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drain() {
+        long reportedDrops = 0;
+        for (;;) {
+            long position = ringBuffer.poll();
+            if (position < 0) {
+                final long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    log.warn("Access log buffer overflowed, {} records dropped so far", drops);
+                    reportedDrops = drops;
+                }
+                writerWaiting = true;
+                // a record published before the flag was visible did not unpark the writer, look once more
+                position = ringBuffer.poll();
+                if (position < 0) {
+                    if (!running)
+                        return;
+                    LockSupport.park(this);
+                    writerWaiting = false;
+                    continue;
+                }
+                writerWaiting = false;
+            }
+            if (logger.isInfoEnabled())
+                write(ringBuffer.record(position));
+            ringBuffer.release(position);
+        }
+    }
+
+    private void write(AccessLogRecord record) {
+        line.setLength(0);
+        line.append(record.method).append(' ').append(record.path)
+                .append(" route=").append(record.routeId)
+                .append(" status=").append(record.status)
+                .append(" latency=").append(record.latencyNanos / 1_000).append("us")
+                .append(" in=").append(record.bytesIn < 0 ? "-" : Long.toString(record.bytesIn))
+                .append(" out=").append(record.bytesOut < 0 ? "-" : Long.toString(record.bytesOut));
+        if (record.error != null)
+            line.append(" error=").append(record.error);
+        logger.info(line);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = Thread.ofPlatform().name("access-log-writer").daemon().start(this::drain);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        final Thread thread = writer;
+        if (thread == null)
+            return;
+        LockSupport.unpark(thread);
+        try {
+            if (!thread.join(STOP_TIMEOUT))
+                log.warn("Access log writer did not finish within {}", STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start before and stop after the web server, so exchanges finishing during a graceful shutdown are logged
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.senocak.apigw.filters;
+
+/**
+ * One access log line. Instances are allocated once as slots of {@link AccessLogRingBuffer} and overwritten for
+ * every exchange, so recording an exchange allocates nothing.
+ */
+public final class AccessLogRecord {
+    String routeId;
+    String method;
+    String path;
+    int status;
+    long latencyNanos;
+    long bytesIn;
+    long bytesOut;
+    String error;
+
+    void clear() {
+        routeId = null;
+        method = null;
+        path = null;
+        error = null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.senocak.apigw.filters;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer queue of pre-allocated {@link AccessLogRecord}s, after Dmitry Vyukov's bounded MPMC queue.
+ * Producers claim a slot, fill it in place and publish it; nothing ever blocks, a full buffer makes
+ * {@link #claim()} fail instead.
+ */
+final class AccessLogRingBuffer {
+    private final AccessLogRecord[] records;
+    /** per slot: equal to the position when free for producers, position + 1 when published for the consumer */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    AccessLogRingBuffer(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.records = new AccessLogRecord[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            records[i] = new AccessLogRecord();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return the claimed position, to be filled through {@link #record(long)} and then {@link #publish(long)}ed,
+     * or {@code -1} when the buffer is full
+     */
+    long claim() {
+        long position = producerPosition.get();
+        for (;;) {
+            final long sequence = sequences.get((int) position & mask);
+            final long difference = sequence - position;
+            if (difference == 0) {
+                if (producerPosition.compareAndSet(position, position + 1))
+                    return position;
+                position = producerPosition.get();
+            } else if (difference < 0) {
+                return -1;
+            } else {
+                position = producerPosition.get();
+            }
+        }
+    }
+
+    AccessLogRecord record(long position) {
+        return records[(int) position & mask];
+    }
+
+    void publish(long position) {
+        sequences.set((int) position & mask, position + 1);
+    }
+
+    /**
+     * Take the oldest published record, see {@link #release(long)}
+     * @return its position or {@code -1} when nothing is published
+     */
+    long poll() {
+        long position = consumerPosition.get();
+        for (;;) {
+            final long sequence = sequences.get((int) position & mask);
+            final long difference = sequence - (position + 1);
+            if (difference == 0) {
+                if (consumerPosition.compareAndSet(position, position + 1))
+                    return position;
+                position = consumerPosition.get();
+            } else if (difference < 0) {
+                return -1;
+            } else {
+                position = consumerPosition.get();
+            }
+        }
+    }
+
+    /**
+     * Hand a polled slot back to the producers
+     */
+    void release(long position) {
+        records[(int) position & mask].clear();
+        sequences.set((int) position & mask, position + mask + 1);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.senocak.apigw.filters;
+
+import com.github.senocak.apigw.service.RouteExpressions.HeaderOperation;
+import com.github.senocak.apigw.service.RouteExpressions.HeaderRule;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.AbstractServerHttpRequest;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import java.util.List;
+
+/**
+ * All request and response header rules of a route applied in one pass. While the exchange still holds Reactor Netty's
+ * own request, request rules write the pre-encoded names and values straight into the Netty headers and the request is
+ * neither copied nor wrapped; otherwise it is mutated once for all rules. Response rules run just before the response
+ * is committed, so they apply over the upstream's headers and to cached responses too.
+ */
+public class HeaderTransformGatewayFilter implements GatewayFilter {
+    private static final Class<?> REACTOR_REQUEST =
+            resolve("org.springframework.http.server.reactive.ReactorServerHttpRequest");
+    private static final Class<?> REACTOR_RESPONSE =
+            resolve("org.springframework.http.server.reactive.ReactorServerHttpResponse");
+
+    private final HeaderRule[] requestRules;
+    private final HeaderRule[] responseRules;
+    /** Spring caches the parsed Content-Type and Accept of a request, rules on them have to go through mutate() */
+    private final boolean requestInPlace;
+
+    public HeaderTransformGatewayFilter(List<HeaderRule> requestRules, List<HeaderRule> responseRules) {
+        this.requestRules = requestRules.toArray(HeaderRule[]::new);
+        this.responseRules = responseRules.toArray(HeaderRule[]::new);
+        this.requestInPlace = requestRules.stream().noneMatch(rule ->
+                rule.name().contentEqualsIgnoreCase(HttpHeaders.CONTENT_TYPE)
+                        || rule.name().contentEqualsIgnoreCase(HttpHeaders.ACCEPT));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (responseRules.length > 0)
+            exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> applyResponse(exchange)));
+        if (requestRules.length == 0)
+            return chain.filter(exchange);
+        final ServerHttpRequest request = exchange.getRequest();
+        final HttpServerRequest nettyRequest = requestInPlace ? nettyRequest(request) : null;
+        if (nettyRequest != null) {
+            apply(requestRules, nettyRequest.requestHeaders(), exchange);
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange.mutate()
+                .request(request.mutate().headers(headers -> apply(requestRules, headers, exchange)).build())
+                .build());
+    }
+
+    private void applyResponse(ServerWebExchange exchange) {
+        final HttpServerResponse nettyResponse = nettyResponse(exchange.getResponse());
+        if (nettyResponse != null)
+            apply(responseRules, nettyResponse.responseHeaders(), exchange);
+        else
+            apply(responseRules, exchange.getResponse().getHeaders(), exchange);
+    }
+
+    private static void apply(HeaderRule[] rules, io.netty.handler.codec.http.HttpHeaders headers,
+                              ServerWebExchange exchange) {
+        for (HeaderRule rule: rules) {
+            switch (rule.operation()) {
+                case ADD -> headers.add(rule.name(), value(rule, exchange));
+                case SET -> headers.set(rule.name(), value(rule, exchange));
+                case REMOVE -> headers.remove(rule.name());
+            }
+        }
+    }
+
+    private static void apply(HeaderRule[] rules, HttpHeaders headers, ServerWebExchange exchange) {
+        for (HeaderRule rule: rules) {
+            final String name = rule.name().toString();
+            if (rule.operation() == HeaderOperation.REMOVE)
+                headers.remove(name);
+            else if (rule.operation() == HeaderOperation.SET)
+                headers.set(name, value(rule, exchange).toString());
+            else
+                headers.add(name, value(rule, exchange).toString());
+        }
+    }
+
+    private static CharSequence value(HeaderRule rule, ServerWebExchange exchange) {
+        return rule.template() ? ServerWebExchangeUtils.expand(exchange, rule.value().toString()) : rule.value();
+    }
+
+    /**
+     * @return the Netty request when the headers of the exchange's request are still its live headers
+     */
+    private static HttpServerRequest nettyRequest(ServerHttpRequest request) {
+        ServerHttpRequest current = request;
+        while (current instanceof ServerHttpRequestDecorator decorator)
+            current = decorator.getDelegate();
+        return current.getClass() == REACTOR_REQUEST
+                && ((AbstractServerHttpRequest) current).getNativeRequest() instanceof HttpServerRequest nettyRequest
+                ? nettyRequest : null;
+    }
+
+    private static HttpServerResponse nettyResponse(ServerHttpResponse response) {
+        ServerHttpResponse current = response;
+        while (current instanceof ServerHttpResponseDecorator decorator)
+            current = decorator.getDelegate();
+        return current.getClass() == REACTOR_RESPONSE
+                && ((AbstractServerHttpResponse) current).getNativeResponse() instanceof HttpServerResponse nettyResponse
+                ? nettyResponse : null;
+    }
+
+    private static Class<?> resolve(String className) {
+        try {
+            return ClassUtils.forName(className, HeaderTransformGatewayFilter.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
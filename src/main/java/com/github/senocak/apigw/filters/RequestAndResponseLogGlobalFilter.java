@@ -1,7 +1,5 @@
 package com.github.senocak.apigw.filters;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.route.Route;
@@ -9,25 +7,72 @@ import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
 
 import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
 
+/**
+ * Records sampled exchanges into the {@link AccessLog}; nothing is formatted or written on the event loop.
+ */
 @Component
 public class RequestAndResponseLogGlobalFilter implements GlobalFilter, Ordered {
-    private static final Logger logger = LogManager.getLogger(RequestAndResponseLogGlobalFilter.class);
+    private final AccessLog accessLog;
+
+    public RequestAndResponseLogGlobalFilter(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        final String originalUri = exchange.getRequest().getPath().toString();
         final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
-        logger.info("Incoming request: {} is routed to id: {}, uri: {}", originalUri, route.getId(), route.getUri());
+        if (!accessLog.sample(route))
+            return chain.filter(exchange);
+        final Recording recording = new Recording(accessLog, exchange, route, System.nanoTime());
         return chain.filter(exchange)
-                .doOnError(error -> logger.info("Post Error Filter Logic: Request path: {}, due to {}", originalUri,error.getMessage()))
-                .then(Mono.fromRunnable(() -> logger.info("Post Filter Logic: HTTP Status Code: {}", exchange.getResponse().getStatusCode().toString())));
+                .doOnError(recording::fail)
+                .doFinally(recording);
     }
 
     @Override
     public int getOrder() {
         return -1;
     }
+
+    /**
+     * Records the exchange once, whether it completes, fails or is cancelled because the client went away
+     */
+    private static final class Recording implements Consumer<SignalType> {
+        private static final AtomicIntegerFieldUpdater<Recording> RECORDED =
+                AtomicIntegerFieldUpdater.newUpdater(Recording.class, "recorded");
+
+        private final AccessLog accessLog;
+        private final ServerWebExchange exchange;
+        private final Route route;
+        private final long start;
+        private volatile Throwable error;
+        private volatile int recorded;
+
+        private Recording(AccessLog accessLog, ServerWebExchange exchange, Route route, long start) {
+            this.accessLog = accessLog;
+            this.exchange = exchange;
+            this.route = route;
+            this.start = start;
+        }
+
+        private void fail(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void accept(SignalType signal) {
+            if (!RECORDED.compareAndSet(this, 0, 1))
+                return;
+            if (signal == SignalType.CANCEL)
+                accessLog.recordCancelled(exchange, route, start);
+            else
+                accessLog.record(exchange, route, start, error);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package com.github.senocak.apigw.filters;
+
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import com.github.senocak.apigw.metrics.RouteStats;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Records every routed exchange into the {@link RouteStats} of its route, keeping no per-exchange state beyond its
+ * start time; requests no route matched are counted by {@link UnmatchedRequestsExceptionHandler}. Sizes come from
+ * {@code Content-Length}, so chunked bodies are not counted. An exchange that fails before a status is set counts as
+ * a 5xx, one cancelled by the client before a status is set counts under no status class. The time the request
+ * filters hold the event loop they were called on is recorded as well.
+ */
+@Component
+public class RouteMetricsGlobalFilter implements GlobalFilter, Ordered {
+    private final RouteMetrics routeMetrics;
+
+    public RouteMetricsGlobalFilter(RouteMetrics routeMetrics) {
+        this.routeMetrics = routeMetrics;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        final RouteStats stats = routeMetrics.stats(route != null ? route.getId() : null);
+        final long startNanos = System.nanoTime();
+        final Mono<Void> filtered = chain.filter(exchange).doFinally(signal -> record(exchange, stats, startNanos, signal));
+        return Mono.defer(() -> {
+            if (!Schedulers.isInNonBlockingThread())
+                return filtered;
+            // the filters run synchronously up to their first asynchronous step, all of it on this event loop;
+            // when subscribes its sources in order, so the timer stops right after that step
+            final long start = System.nanoTime();
+            return Mono.when(filtered,
+                    Mono.fromRunnable(() -> stats.getEventLoop().recordNanos(System.nanoTime() - start)));
+        });
+    }
+
+    private static void record(ServerWebExchange exchange, RouteStats stats, long startNanos, SignalType signal) {
+        final HttpStatusCode status = exchange.getResponse().getStatusCode();
+        final int statusCode = status != null ? status.value()
+                : signal == SignalType.ON_ERROR ? HttpStatus.INTERNAL_SERVER_ERROR.value() : 0;
+        final Long upstreamNanos = exchange.getAttribute(UpstreamTimingGlobalFilter.UPSTREAM_NANOS_ATTR);
+        stats.record(statusCode, System.nanoTime() - startNanos, upstreamNanos != null ? upstreamNanos : -1,
+                exchange.getRequest().getHeaders().getContentLength(),
+                exchange.getResponse().getHeaders().getContentLength());
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
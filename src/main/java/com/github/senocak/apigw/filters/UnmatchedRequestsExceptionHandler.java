@@ -0,0 +1,41 @@
+package com.github.senocak.apigw.filters;
+
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebExceptionHandler;
+import reactor.core.publisher.Mono;
+
+/**
+ * Counts requests that neither a route nor an admin endpoint matched under {@link RouteMetrics#UNMATCHED}. Global
+ * filters never see them: the dispatcher answers them with a 404 error, which passes through here on its way to the
+ * error handler. Their latency is not measured.
+ */
+@Component
+public class UnmatchedRequestsExceptionHandler implements WebExceptionHandler, Ordered {
+    private final RouteMetrics routeMetrics;
+
+    public UnmatchedRequestsExceptionHandler(RouteMetrics routeMetrics) {
+        this.routeMetrics = routeMetrics;
+    }
+
+    @Override
+    public Mono<Void> handle(ServerWebExchange exchange, Throwable ex) {
+        if (ex instanceof ResponseStatusException rse && rse.getStatusCode().value() == HttpStatus.NOT_FOUND.value()
+                && exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) == null)
+            routeMetrics.stats(null).count(HttpStatus.NOT_FOUND.value(), exchange.getRequest().getHeaders().getContentLength());
+        return Mono.error(ex);
+    }
+
+    /**
+     * Ahead of Spring Boot's error handler, which renders the response
+     */
+    @Override
+    public int getOrder() {
+        return -2;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.senocak.apigw.filters;
+
+import com.github.senocak.apigw.client.PooledRoutingFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs right before the routing filters and measures the time until the upstream answered with its response headers
+ * (or failed), summed over retries into {@link #UPSTREAM_NANOS_ATTR}. Relaying the response body happens later, in
+ * {@code NettyWriteResponseFilter}, and counts as gateway time.
+ */
+@Component
+public class UpstreamTimingGlobalFilter implements GlobalFilter, Ordered {
+    /** Exchange attribute holding the upstream time in nanos, absent until the exchange reached the upstream */
+    public static final String UPSTREAM_NANOS_ATTR = UpstreamTimingGlobalFilter.class.getName() + ".upstreamNanos";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            return chain.filter(exchange).doFinally(signal ->
+                    exchange.getAttributes().merge(UPSTREAM_NANOS_ATTR, System.nanoTime() - start, UpstreamTimingGlobalFilter::sum));
+        });
+    }
+
+    private static Object sum(Object previous, Object nanos) {
+        return (Long) previous + (Long) nanos;
+    }
+
+    @Override
+    public int getOrder() {
+        return PooledRoutingFilter.ORDER - 1;
+    }
+}
@@ -1,40 +1,144 @@
 package com.github.senocak.apigw.handler;
 
 import com.github.senocak.apigw.configuration.GatewayRoutesRefresher;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.RouteBatch;
+import com.github.senocak.apigw.service.RouteAdminService;
+import com.github.senocak.apigw.service.RouteExpressions;
 import com.github.senocak.apigw.service.RouteService;
+import com.github.senocak.apigw.service.RouteValidationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @Component
 public class ApiRouteHandler {
     private final RouteService routeService;
+    private final RouteAdminService routeAdminService;
     private final GatewayRoutesRefresher gatewayRoutesRefresher;
+    private final ObjectMapper objectMapper;
 
-    public ApiRouteHandler(final RouteService routeService, final GatewayRoutesRefresher gatewayRoutesRefresher) {
+    public ApiRouteHandler(final RouteService routeService, final RouteAdminService routeAdminService,
+                           final GatewayRoutesRefresher gatewayRoutesRefresher, final ObjectMapper objectMapper) {
         this.routeService = routeService;
+        this.routeAdminService = routeAdminService;
         this.gatewayRoutesRefresher = gatewayRoutesRefresher;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * Store a new route; one whose route identifier another route already has answers {@code 409}, since bulk writes
+     * and rollbacks address routes by their identifier
+     */
     public Mono<ServerResponse> create(ServerRequest serverRequest) {
         Mono<ApiRoute> apiRoute = serverRequest.bodyToMono(ApiRoute.class);
-        return apiRoute.flatMap(route ->
-                ServerResponse.status(HttpStatus.OK)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(routeService.create(route), ApiRoute.class));
+        return apiRoute.doOnNext(RouteExpressions::compile)
+                .flatMap(route -> routeService.create(route)
+                        .flatMap(created -> ServerResponse.status(HttpStatus.OK)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .body(fromValue(created)))
+                        .onErrorResume(DuplicateKeyException.class, e -> error(HttpStatus.CONFLICT,
+                                route.getRouteIdentifier(), List.of("routeIdentifier is already used by another route"))))
+                .onErrorResume(RouteValidationException.class, e -> error(HttpStatus.BAD_REQUEST,
+                        e.getRouteIdentifier(), e.getErrors()));
+    }
+
+    private static Mono<ServerResponse> error(HttpStatus status, String routeIdentifier, List<String> errors) {
+        return ServerResponse.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue(Map.of("routeIdentifier", String.valueOf(routeIdentifier), "errors", errors)));
     }
 
+    /**
+     * One page of routes, filtered by {@code routeIdentifier}, {@code path} prefix and {@code host}, optionally
+     * projected to the comma separated {@code fields}. When the page is full a {@code Link} header points to the next.
+     */
     public Mono<ServerResponse> getAll(ServerRequest serverRequest) {
+        final List<String> fields = serverRequest.queryParam("fields")
+                .map(value -> Arrays.stream(value.split(",")).map(String::trim).filter(field -> !field.isEmpty()).toList())
+                .orElse(List.of());
+        return Mono.defer(() -> {
+                    final int limit = routeAdminService.pageSize(serverRequest.queryParam("limit").map(Integer::valueOf)
+                            .orElse(null));
+                    return routeAdminService.find(filter(serverRequest), limit, fields).collectList()
+                            .flatMap(routes -> {
+                                final ServerResponse.BodyBuilder response = ServerResponse.ok()
+                                        .contentType(MediaType.APPLICATION_JSON);
+                                if (routes.size() == limit)
+                                    response.header(HttpHeaders.LINK, "<" + UriComponentsBuilder.fromUri(serverRequest.uri())
+                                            .replaceQueryParam("after", routes.getLast().getId()).build().toUriString()
+                                            + ">; rel=\"next\"");
+                                return response.body(fromValue(fields.isEmpty() ? routes : project(routes, fields)));
+                            });
+                })
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(Map.of("error", String.valueOf(e.getMessage())))));
+    }
+
+    /**
+     * Stream every matching route as newline delimited JSON
+     */
+    public Mono<ServerResponse> export(ServerRequest serverRequest) {
         return ServerResponse.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(routeService.getAll(), ApiRoute.class);
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(routeAdminService.export(filter(serverRequest)), ApiRoute.class);
+    }
+
+    /**
+     * Upsert a newline delimited JSON stream of routes, skipping and reporting the invalid ones
+     */
+    public Mono<ServerResponse> importRoutes(ServerRequest serverRequest) {
+        return routeAdminService.importRoutes(serverRequest.bodyToFlux(ApiRoute.class))
+                .flatMap(result -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(result)));
+    }
+
+    /**
+     * Apply a {@link RouteBatch} with one bulk write and one refresh, or nothing of it when a route is invalid;
+     * writes the data store refused answer {@code 409} with what was written
+     */
+    public Mono<ServerResponse> bulk(ServerRequest serverRequest) {
+        return serverRequest.bodyToMono(RouteBatch.class)
+                .flatMap(routeAdminService::apply)
+                .flatMap(result -> (!result.rejected().isEmpty() ? ServerResponse.badRequest()
+                        : !result.failed().isEmpty() ? ServerResponse.status(HttpStatus.CONFLICT) : ServerResponse.ok())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(result)));
+    }
+
+    private static RouteAdminService.RouteFilter filter(ServerRequest serverRequest) {
+        return new RouteAdminService.RouteFilter(serverRequest.queryParam("routeIdentifier").orElse(null),
+                serverRequest.queryParam("path").orElse(null),
+                serverRequest.queryParam("host").orElse(null),
+                serverRequest.queryParam("after").orElse(null));
+    }
+
+    private List<Map<String, Object>> project(List<ApiRoute> routes, List<String> fields) {
+        return routes.stream().map(route -> {
+            final Map<String, Object> all = objectMapper.convertValue(route, new TypeReference<Map<String, Object>>() {});
+            final Map<String, Object> projected = new LinkedHashMap<>();
+            projected.put("id", route.getId());
+            fields.forEach(field -> projected.put(field, all.get(field)));
+            return projected;
+        }).toList();
     }
 
     public Mono<ServerResponse> getById(ServerRequest serverRequest) {
@@ -47,7 +151,7 @@ public class ApiRouteHandler {
     }
 
     public Mono<ServerResponse> refreshRoutes(ServerRequest serverRequest) {
-        gatewayRoutesRefresher.refreshRoutes();
-        return ServerResponse.ok().body(BodyInserters.fromObject("Routes reloaded successfully"));
+        return gatewayRoutesRefresher.refreshRoutes()
+                .then(ServerResponse.ok().body(BodyInserters.fromObject("Routes reloaded successfully")));
     }
 }
@@ -0,0 +1,92 @@
+package com.github.senocak.apigw.handler;
+
+import com.github.senocak.apigw.service.RouteCache;
+import com.github.senocak.apigw.service.RouteIndex;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR;
+
+/**
+ * Route lookup that only tests the candidates returned by a {@link RouteIndex}, instead of testing every route
+ * in turn. The index covers every route of the locator in its lookup order, so it picks the same route as the
+ * linear lookup; routes that do not come from the route cache are simply always candidates. It is rebuilt when
+ * the route cache changes and when the locator refreshes its routes.
+ */
+public class IndexedRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping
+        implements ApplicationListener<RefreshRoutesResultEvent> {
+    private static final Duration INDEX_TTL = Duration.ofMillis(Long.MAX_VALUE);
+
+    private final RouteLocator routeLocator;
+    private final RouteCache routeCache;
+    private final boolean hostIncludesPort;
+    private volatile IndexBuild indexBuild;
+
+    public IndexedRoutePredicateHandlerMapping(final FilteringWebHandler webHandler, final RouteLocator routeLocator,
+                                              final GlobalCorsProperties globalCorsProperties,
+                                              final Environment environment, final RouteCache routeCache) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeLocator = routeLocator;
+        this.routeCache = routeCache;
+        this.hostIncludesPort = environment.getProperty("spring.cloud.gateway.predicate.host.include-port",
+                Boolean.class, true);
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent event) {
+        indexBuild = null;
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        if (!routeCache.isLoaded())
+            return super.lookupRoute(exchange);
+        return currentIndex()
+                .flatMap(index -> Flux.fromIterable(index.candidates(exchange.getRequest()))
+                        .filterWhen(route -> {
+                            exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, route.getId());
+                            try {
+                                return route.getPredicate().apply(exchange);
+                            } catch (Exception e) {
+                                logger.error("Error applying predicate for route: " + route.getId(), e);
+                            }
+                            return Mono.just(false);
+                        })
+                        .next())
+                .map(route -> {
+                    validateRoute(route, exchange);
+                    return route;
+                });
+    }
+
+    private Mono<RouteIndex> currentIndex() {
+        final RouteCache.Snapshot snapshot = routeCache.current();
+        IndexBuild build = indexBuild;
+        if (build == null || build.snapshot() != snapshot) {
+            synchronized (this) {
+                build = indexBuild;
+                if (build == null || build.snapshot() != snapshot) {
+                    // a failed build is retried by the next request
+                    build = new IndexBuild(snapshot, routeLocator.getRoutes()
+                            .collectList()
+                            .map(routes -> new RouteIndex(snapshot, routes, hostIncludesPort))
+                            .cache(index -> INDEX_TTL, e -> Duration.ZERO, () -> Duration.ZERO));
+                    indexBuild = build;
+                }
+            }
+        }
+        return build.index();
+    }
+
+    private record IndexBuild(RouteCache.Snapshot snapshot, Mono<RouteIndex> index) {}
+}
@@ -0,0 +1,40 @@
+package com.github.senocak.apigw.handler;
+
+import com.github.senocak.apigw.client.UpstreamClients;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+import static org.springframework.web.reactive.function.BodyInserters.fromValue;
+
+@Component
+public class RouteMetricsHandler {
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain;version=0.0.4;charset=utf-8");
+    private final RouteMetrics routeMetrics;
+    private final UpstreamClients upstreamClients;
+
+    public RouteMetricsHandler(final RouteMetrics routeMetrics, final UpstreamClients upstreamClients) {
+        this.routeMetrics = routeMetrics;
+        this.upstreamClients = upstreamClients;
+    }
+
+    public Mono<ServerResponse> scrape(ServerRequest serverRequest) {
+        return ServerResponse.ok()
+                .contentType(PROMETHEUS_TEXT)
+                .body(fromValue(routeMetrics.scrape() + upstreamClients.scrape()));
+    }
+
+    public Mono<ServerResponse> getStats(ServerRequest serverRequest) {
+        final Map<String, Object> stats = routeMetrics.describe(serverRequest.pathVariable("routeId"));
+        if (stats == null)
+            return ServerResponse.notFound().build();
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue(stats));
+    }
+}
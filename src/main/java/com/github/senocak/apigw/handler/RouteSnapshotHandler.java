@@ -0,0 +1,55 @@
+package com.github.senocak.apigw.handler;
+
+import com.github.senocak.apigw.service.RouteAdminService;
+import com.github.senocak.apigw.snapshot.RouteSnapshots;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.NoSuchFileException;
+
+import static org.springframework.web.reactive.function.BodyInserters.fromValue;
+
+@Component
+public class RouteSnapshotHandler {
+    private final RouteSnapshots routeSnapshots;
+    private final RouteAdminService routeAdminService;
+
+    public RouteSnapshotHandler(final RouteSnapshots routeSnapshots, final RouteAdminService routeAdminService) {
+        this.routeSnapshots = routeSnapshots;
+        this.routeAdminService = routeAdminService;
+    }
+
+    public Mono<ServerResponse> list(ServerRequest serverRequest) {
+        return Mono.fromCallable(routeSnapshots::list)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(snapshots -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(snapshots)));
+    }
+
+    /**
+     * Store the routes of a snapshot version in MongoDB in place of the current ones, then refresh; writes the data
+     * store refused answer {@code 409} with what was written
+     */
+    public Mono<ServerResponse> rollback(ServerRequest serverRequest) {
+        final long version;
+        try {
+            version = Long.parseLong(serverRequest.pathVariable("version"));
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        return Mono.fromCallable(() -> routeSnapshots.load(version))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(routeAdminService::restore)
+                .flatMap(result -> (result.failed().isEmpty() ? ServerResponse.ok()
+                        : ServerResponse.status(HttpStatus.CONFLICT))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(result)))
+                .onErrorResume(NoSuchFileException.class, e -> ServerResponse.notFound().build());
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.senocak.apigw.loadbalancer;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.containsEncodedParts;
+
+/**
+ * Sends the request to the upstream chosen by an {@link UpstreamBalancer}: runs right after the request URL is
+ * built from the route URI and swaps its scheme, host and port for the target's. Outcomes go back to the target's
+ * statistics and circuit breaker; a response counts as failed when the request errors or its status is one the
+ * route's circuit breaker counts as a failure.
+ */
+public class LoadBalancerGatewayFilter implements GatewayFilter, Ordered {
+    public static final int ORDER = RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
+    private static final Exception FAILURE_STATUS = new FailureStatusException();
+
+    private final UpstreamBalancer balancer;
+    private final Predicate<HttpStatusCode> failureStatus;
+
+    public LoadBalancerGatewayFilter(UpstreamBalancer balancer, Predicate<HttpStatusCode> failureStatus) {
+        this.balancer = balancer;
+        this.failureStatus = failureStatus;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        final URI requestUrl = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (requestUrl == null)
+            return chain.filter(exchange);
+        final UpstreamBalancer.Choice choice = balancer.choose();
+        final UpstreamTarget target = choice.target();
+        final URI targetUri = target.getUri();
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, UriComponentsBuilder.fromUri(requestUrl)
+                .scheme(targetUri.getScheme())
+                .host(targetUri.getHost())
+                .port(targetUri.getPort())
+                .build(containsEncodedParts(requestUrl))
+                .toUri());
+        target.onStart();
+        final long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doOnSuccess(ignored -> {
+                    final long latency = System.nanoTime() - start;
+                    final HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    final boolean failed = status != null && failureStatus.test(status);
+                    target.onComplete(latency, failed);
+                    if (!choice.permitted())
+                        return;
+                    if (failed)
+                        target.getCircuitBreaker().onError(latency, TimeUnit.NANOSECONDS, FAILURE_STATUS);
+                    else
+                        target.getCircuitBreaker().onSuccess(latency, TimeUnit.NANOSECONDS);
+                })
+                .doOnError(error -> {
+                    final long latency = System.nanoTime() - start;
+                    target.onComplete(latency, true);
+                    if (choice.permitted())
+                        target.getCircuitBreaker().onError(latency, TimeUnit.NANOSECONDS, error);
+                })
+                .doOnCancel(() -> {
+                    // the client left or the route's circuit breaker timed out: not held against the target
+                    target.onComplete(System.nanoTime() - start, false);
+                    if (choice.permitted())
+                        target.getCircuitBreaker().releasePermission();
+                });
+    }
+
+    public UpstreamBalancer getBalancer() {
+        return balancer;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private static final class FailureStatusException extends Exception {
+        private FailureStatusException() {
+            super("Upstream answered with a failure status", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.senocak.apigw.loadbalancer;
+
+import com.github.senocak.apigw.entity.Upstream;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the upstream of a route for each request:
+ * <ul>
+ *     <li>{@code weighted} (default): smooth weighted round-robin, spreading each target's share evenly over the
+ *     cycle instead of sending its requests in a burst</li>
+ *     <li>{@code least-requests}: the target with the fewest requests in flight</li>
+ *     <li>{@code peak-ewma}: the target with the lowest peak-EWMA latency times requests in flight, which steers
+ *     traffic away from a slow instance as soon as it slows down</li>
+ * </ul>
+ * Every target has its own circuit breaker in the gateway's registry. A target whose breaker is open is ejected
+ * until the breaker lets a trial request through; when every target is ejected requests are spread over all of them
+ * rather than failed. Selection takes no locks. A breaker is kept across recompilations of its route while its
+ * settings stay the same, and removed with {@link #retain} once no route uses it.
+ */
+public final class UpstreamBalancer {
+    public static final int MAX_TARGETS = 64;
+    /** longest weighted round-robin cycle, larger weight sums are scaled down */
+    private static final int MAX_CYCLE = 4096;
+    /** tag of the target breakers in the registry, telling them apart from the routes' own breakers */
+    private static final String TARGET_TAG = "upstream";
+    private static final Map<String, String> TARGET_TAGS = Map.of(TARGET_TAG, "true");
+
+    public enum Mode {
+        WEIGHTED("weighted"), LEAST_REQUESTS("least-requests"), PEAK_EWMA("peak-ewma");
+
+        private final String expression;
+
+        Mode(String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * @throws IllegalArgumentException when the expression does not name a mode
+         */
+        public static Mode of(String expression) {
+            if (expression == null)
+                return WEIGHTED;
+            for (Mode mode: values())
+                if (mode.expression.equals(expression))
+                    return mode;
+            throw new IllegalArgumentException("Unknown load balancer '" + expression
+                    + "', expected weighted, least-requests or peak-ewma");
+        }
+    }
+
+    /**
+     * @param permitted whether the target's circuit breaker granted a permit, which the caller must give back by
+     * recording the outcome or releasing it
+     */
+    public record Choice(UpstreamTarget target, boolean permitted) {
+    }
+
+    private final Mode mode;
+    private final UpstreamTarget[] targets;
+    /** target indexes in smooth weighted round-robin order */
+    private final int[] cycle;
+    private final AtomicLong next = new AtomicLong();
+
+    private UpstreamBalancer(Mode mode, UpstreamTarget[] targets) {
+        this.mode = mode;
+        this.targets = targets;
+        this.cycle = mode == Mode.WEIGHTED ? cycle(targets) : null;
+    }
+
+    public static UpstreamBalancer of(String routeId, String mode, List<Upstream> upstreams,
+                                      CircuitBreakerRegistry circuitBreakerRegistry) {
+        // open breakers must move to half-open on their own, nothing asks an ejected target for a permit
+        final CircuitBreakerConfig config = CircuitBreakerConfig.from(circuitBreakerRegistry.getDefaultConfig())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .build();
+        final UpstreamTarget[] targets = new UpstreamTarget[upstreams.size()];
+        for (int i = 0; i < targets.length; i++) {
+            final Upstream upstream = upstreams.get(i);
+            targets[i] = new UpstreamTarget(URI.create(upstream.getUri()),
+                    upstream.getWeight() != null ? upstream.getWeight() : 1,
+                    circuitBreaker(circuitBreakerRegistry, routeId + "@" + upstream.getUri(), config));
+        }
+        return new UpstreamBalancer(Mode.of(mode), targets);
+    }
+
+    /**
+     * Remove the target breakers that none of the routes' balancers uses any more
+     */
+    public static void retain(CircuitBreakerRegistry circuitBreakerRegistry, Collection<Route> routes) {
+        final Set<String> names = new HashSet<>();
+        for (Route route: routes)
+            for (GatewayFilter filter: route.getFilters()) {
+                final GatewayFilter delegate = filter instanceof OrderedGatewayFilter ordered ? ordered.getDelegate() : filter;
+                if (delegate instanceof LoadBalancerGatewayFilter loadBalancer)
+                    for (UpstreamTarget target: loadBalancer.getBalancer().targets)
+                        names.add(target.getCircuitBreaker().getName());
+            }
+        for (CircuitBreaker circuitBreaker: circuitBreakerRegistry.getAllCircuitBreakers())
+            if (circuitBreaker.getTags().containsKey(TARGET_TAG) && !names.contains(circuitBreaker.getName()))
+                circuitBreakerRegistry.remove(circuitBreaker.getName());
+    }
+
+    /**
+     * @return the registered breaker of the name, replaced by a new one when it was created with other settings
+     */
+    private static CircuitBreaker circuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry, String name,
+                                                 CircuitBreakerConfig config) {
+        final CircuitBreaker existing = circuitBreakerRegistry.find(name).orElse(null);
+        if (existing == null)
+            return circuitBreakerRegistry.circuitBreaker(name, config, TARGET_TAGS);
+        // the config has no equals, its description lists every setting
+        if (existing.getCircuitBreakerConfig().toString().equals(config.toString()))
+            return existing;
+        final CircuitBreaker replacement = CircuitBreaker.of(name, config, TARGET_TAGS);
+        circuitBreakerRegistry.replace(name, replacement);
+        return replacement;
+    }
+
+    public List<UpstreamTarget> getTargets() {
+        return List.of(targets);
+    }
+
+    public Choice choose() {
+        long excluded = 0;
+        for (int attempt = 0; attempt < targets.length; attempt++) {
+            final int index = select(excluded, true);
+            if (index < 0)
+                break;
+            if (targets[index].getCircuitBreaker().tryAcquirePermission())
+                return new Choice(targets[index], true);
+            // half-open and out of trial permits
+            excluded |= 1L << index;
+        }
+        return new Choice(targets[select(0, false)], false);
+    }
+
+    /**
+     * @return the index of the best target that is not excluded and, if asked, available, or {@code -1}
+     */
+    private int select(long excluded, boolean availableOnly) {
+        if (mode == Mode.WEIGHTED) {
+            // skipped slots are consumed too, so the remaining targets keep the ratio of their weights
+            for (int i = 0; i < cycle.length; i++) {
+                final int index = cycle[(int) Math.floorMod(next.getAndIncrement(), (long) cycle.length)];
+                if ((excluded & 1L << index) == 0 && (!availableOnly || targets[index].isAvailable()))
+                    return index;
+            }
+            return -1;
+        }
+        // start at a random target so ties do not all go to the first one
+        final int offset = ThreadLocalRandom.current().nextInt(targets.length);
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < targets.length; i++) {
+            final int index = (offset + i) % targets.length;
+            final UpstreamTarget target = targets[index];
+            if ((excluded & 1L << index) != 0 || availableOnly && !target.isAvailable())
+                continue;
+            final double cost = mode == Mode.LEAST_REQUESTS ? target.outstanding() : target.cost();
+            if (cost < bestCost) {
+                best = index;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * One full cycle of nginx's smooth weighted round-robin, with weights reduced by their greatest common divisor
+     */
+    private static int[] cycle(UpstreamTarget[] targets) {
+        final int[] weights = new int[targets.length];
+        int divisor = 0;
+        long total = 0;
+        for (int i = 0; i < targets.length; i++) {
+            weights[i] = targets[i].getWeight();
+            divisor = gcd(divisor, weights[i]);
+            total += weights[i];
+        }
+        total /= divisor;
+        final double scale = total > MAX_CYCLE ? (double) MAX_CYCLE / total : 1;
+        int length = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.max(1, (int) Math.round(weights[i] / divisor * scale));
+            length += weights[i];
+        }
+        final int[] cycle = new int[length];
+        final int[] current = new int[weights.length];
+        for (int step = 0; step < length; step++) {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best])
+                    best = i;
+            }
+            current[best] -= length;
+            cycle[step] = best;
+        }
+        return cycle;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.senocak.apigw.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import lombok.Getter;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One upstream of a route with the statistics its balancer selects on. Counters are {@link LongAdder}s, striped
+ * per core so concurrent requests do not contend on them; the latency average is a single CAS-updated value.
+ */
+@Getter
+public final class UpstreamTarget {
+    /** time for the latency average to forget about 63% of its past */
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /** cost of a target that has requests in flight but no latency sample yet */
+    private static final double PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final URI uri;
+    private final int weight;
+    private final CircuitBreaker circuitBreaker;
+    private final LongAdder outstanding = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong latencyBits = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final AtomicLong lastObserved = new AtomicLong(System.nanoTime());
+
+    UpstreamTarget(URI uri, int weight, CircuitBreaker circuitBreaker) {
+        this.uri = uri;
+        this.weight = weight;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public long outstanding() {
+        return outstanding.sum();
+    }
+
+    /**
+     * @return the peak-EWMA latency in nanoseconds
+     */
+    public double latency() {
+        return Double.longBitsToDouble(latencyBits.get());
+    }
+
+    /**
+     * Expected wait of one more request: the latency average scaled by the requests already in flight
+     */
+    double cost() {
+        final double latency = latency();
+        final long inFlight = outstanding();
+        if (latency == 0 && inFlight != 0)
+            return PENALTY_NANOS + inFlight;
+        return latency * (inFlight + 1);
+    }
+
+    /**
+     * @return whether the target's circuit breaker lets requests through, without taking a permit
+     */
+    boolean isAvailable() {
+        return circuitBreaker.getState() != CircuitBreaker.State.OPEN
+                && circuitBreaker.getState() != CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    void onStart() {
+        requests.increment();
+        outstanding.increment();
+    }
+
+    void onComplete(long latencyNanos, boolean failed) {
+        outstanding.decrement();
+        if (failed)
+            failures.increment();
+        observe(latencyNanos);
+    }
+
+    /**
+     * Peak-sensitive moving average: a sample above the average replaces it at once, samples below pull it down
+     * with a weight depending on the time since the previous sample
+     */
+    private void observe(long latencyNanos) {
+        final long now = System.nanoTime();
+        final long elapsed = Math.max(now - lastObserved.getAndSet(now), 0);
+        final double weight = Math.exp(-elapsed / DECAY_NANOS);
+        for (;;) {
+            final long bits = latencyBits.get();
+            final double previous = Double.longBitsToDouble(bits);
+            final double next = latencyNanos > previous ? latencyNanos : previous * weight + latencyNanos * (1 - weight);
+            if (latencyBits.compareAndSet(bits, Double.doubleToRawLongBits(next)))
+                return;
+        }
+    }
+}
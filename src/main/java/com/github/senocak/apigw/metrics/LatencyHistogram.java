@@ -0,0 +1,83 @@
+package com.github.senocak.apigw.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size log-linear latency histogram in the style of HdrHistogram: every power of two of microseconds is split
+ * in {@value #HALF} linear sub-buckets, giving about 3% precision from 1µs up to {@link #MAX_MICROS}. Recording is
+ * one atomic increment and never allocates; reads walk the buckets without stopping writers, so a snapshot taken
+ * while requests complete may be off by the requests in flight.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS >> 1;
+    /** about 19 hours, larger values are recorded as this */
+    public static final long MAX_MICROS = (1L << 36) - 1;
+    private static final int BUCKETS = index(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        final long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0), MAX_MICROS);
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param quantiles ascending, between 0 and 1
+     * @return for each quantile the highest value, in microseconds, of the bucket holding it
+     */
+    public long[] quantilesMicros(double... quantiles) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += snapshot[i] = counts.get(i);
+        final long[] values = new long[quantiles.length];
+        if (total == 0)
+            return values;
+        long seen = 0;
+        int q = 0;
+        for (int i = 0; i < BUCKETS && q < quantiles.length; i++) {
+            seen += snapshot[i];
+            while (q < quantiles.length && seen >= Math.max(1, Math.ceil(quantiles[q] * total)))
+                values[q++] = Math.min(highestValue(i), getMaxMicros());
+        }
+        return values;
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (micros >>> shift) - HALF;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        final int shift = (index - SUB_BUCKETS) / HALF + 1;
+        final long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.senocak.apigw.metrics;
+
+import org.springframework.stereotype.Component;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-route statistics, keyed by route id, and their exports: Prometheus text for scraping and a map for the admin
+ * API. Requests that matched no route are counted under {@link #UNMATCHED}. Routes that leave the route set are
+ * dropped through {@link #retain(Collection)}.
+ */
+@Component
+public class RouteMetrics {
+    public static final String UNMATCHED = "_unmatched";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+    private static final double MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+
+    private final Map<String, RouteStats> routes = new ConcurrentHashMap<>();
+
+    public RouteStats stats(String routeId) {
+        final String id = routeId != null ? routeId : UNMATCHED;
+        final RouteStats stats = routes.get(id);
+        return stats != null ? stats : routes.computeIfAbsent(id, ignored -> new RouteStats());
+    }
+
+    /**
+     * Drop the statistics of every route not in {@code routeIds}
+     */
+    public void retain(Collection<String> routeIds) {
+        final Set<String> live = Set.copyOf(routeIds);
+        routes.keySet().removeIf(id -> !id.equals(UNMATCHED) && !live.contains(id));
+    }
+
+    /**
+     * @return the statistics of a route, or {@code null} when it has not served any request
+     */
+    public Map<String, Object> describe(String routeId) {
+        final RouteStats stats = routes.get(routeId);
+        if (stats == null)
+            return null;
+        final Map<String, Object> statusClasses = new TreeMap<>();
+        for (int i = 1; i < stats.getStatusClasses().length; i++)
+            statusClasses.put(i + "xx", stats.getStatusClasses()[i].sum());
+        final Map<String, Object> description = new TreeMap<>();
+        description.put("routeId", routeId);
+        description.put("requests", stats.getRequests().sum());
+        description.put("statusClasses", statusClasses);
+        description.put("bytesIn", stats.getBytesIn().sum());
+        description.put("bytesOut", stats.getBytesOut().sum());
+        description.put("latencyMicros", describe(stats.getTotal()));
+        description.put("upstreamMicros", describe(stats.getUpstream()));
+        description.put("gatewayMicros", describe(stats.getGateway()));
+        description.put("eventLoopMicros", describe(stats.getEventLoop()));
+        description.put("offloaded", stats.getOffloaded().sum());
+        return description;
+    }
+
+    private static Map<String, Object> describe(LatencyHistogram histogram) {
+        final long[] values = histogram.quantilesMicros(QUANTILES);
+        final long count = histogram.getCount();
+        final Map<String, Object> description = new TreeMap<>();
+        description.put("count", count);
+        description.put("mean", count == 0 ? 0 : histogram.getSumMicros() / count);
+        description.put("max", histogram.getMaxMicros());
+        for (int i = 0; i < QUANTILES.length; i++)
+            description.put(QUANTILE_NAMES[i], values[i]);
+        return description;
+    }
+
+    /**
+     * Prometheus text exposition format, version 0.0.4
+     */
+    public String scrape() {
+        final StringBuilder out = new StringBuilder(256 * (routes.size() + 1));
+        out.append("# TYPE gateway_route_requests_total counter\n");
+        routes.forEach((id, stats) -> sample(out, "gateway_route_requests_total", id, null, stats.getRequests().sum()));
+        out.append("# TYPE gateway_route_responses_total counter\n");
+        routes.forEach((id, stats) -> {
+            for (int i = 0; i < stats.getStatusClasses().length; i++)
+                sample(out, "gateway_route_responses_total", id, "status=\"" + (i == 0 ? "none" : i + "xx") + "\"",
+                        stats.getStatusClasses()[i].sum());
+        });
+        out.append("# TYPE gateway_route_received_bytes_total counter\n");
+        routes.forEach((id, stats) -> sample(out, "gateway_route_received_bytes_total", id, null, stats.getBytesIn().sum()));
+        out.append("# TYPE gateway_route_sent_bytes_total counter\n");
+        routes.forEach((id, stats) -> sample(out, "gateway_route_sent_bytes_total", id, null, stats.getBytesOut().sum()));
+        summary(out, "gateway_route_latency_seconds", RouteStats::getTotal);
+        summary(out, "gateway_route_upstream_latency_seconds", RouteStats::getUpstream);
+        summary(out, "gateway_route_gateway_latency_seconds", RouteStats::getGateway);
+        summary(out, "gateway_route_event_loop_seconds", RouteStats::getEventLoop);
+        out.append("# TYPE gateway_route_offloaded_total counter\n");
+        routes.forEach((id, stats) -> sample(out, "gateway_route_offloaded_total", id, null, stats.getOffloaded().sum()));
+        return out.toString();
+    }
+
+    private void summary(StringBuilder out, String name, Function<RouteStats, LatencyHistogram> histogram) {
+        out.append("# TYPE ").append(name).append(" summary\n");
+        routes.forEach((id, stats) -> {
+            final LatencyHistogram h = histogram.apply(stats);
+            final long[] values = h.quantilesMicros(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++)
+                sample(out, name, id, "quantile=\"" + QUANTILES[i] + "\"", values[i] / MICROS_PER_SECOND);
+            sample(out, name + "_sum", id, null, h.getSumMicros() / MICROS_PER_SECOND);
+            sample(out, name + "_count", id, null, h.getCount());
+        });
+    }
+
+    private static void sample(StringBuilder out, String name, String routeId, String label, Object value) {
+        out.append(name).append("{route=\"");
+        escape(out, routeId);
+        out.append('"');
+        if (label != null)
+            out.append(',').append(label);
+        out.append("} ").append(value).append('\n');
+    }
+
+    public static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+    }
+}
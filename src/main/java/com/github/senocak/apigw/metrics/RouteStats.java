@@ -0,0 +1,60 @@
+package com.github.senocak.apigw.metrics;
+
+import lombok.Getter;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one route. {@code total} is the time the gateway held the exchange, {@code upstream} the time until
+ * the upstream answered with its response headers, and {@code gateway} the difference: filters, body relaying and
+ * any time spent waiting on the event loop. {@code eventLoop} holds each stretch of the route's predicates and
+ * request filters running on an event-loop thread, {@code offloaded} counts the work moved to virtual threads instead.
+ */
+@Getter
+public final class RouteStats {
+    private final LongAdder requests = new LongAdder();
+    /** responses by status class, index 1 for 1xx up to 5 for 5xx, 0 when no status was set */
+    private final LongAdder[] statusClasses = new LongAdder[6];
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram upstream = new LatencyHistogram();
+    private final LatencyHistogram gateway = new LatencyHistogram();
+    private final LatencyHistogram eventLoop = new LatencyHistogram();
+    private final LongAdder offloaded = new LongAdder();
+
+    public RouteStats() {
+        for (int i = 0; i < statusClasses.length; i++)
+            statusClasses[i] = new LongAdder();
+    }
+
+    /**
+     * @param upstreamNanos negative when the exchange never reached the upstream
+     * @param bytesIn negative when unknown, likewise {@code bytesOut}
+     */
+    public void record(int status, long totalNanos, long upstreamNanos, long bytesIn, long bytesOut) {
+        requests.increment();
+        statusClasses[status >= 100 && status < 600 ? status / 100 : 0].increment();
+        total.recordNanos(totalNanos);
+        if (upstreamNanos >= 0) {
+            upstream.recordNanos(upstreamNanos);
+            gateway.recordNanos(totalNanos - upstreamNanos);
+        } else {
+            gateway.recordNanos(totalNanos);
+        }
+        if (bytesIn > 0)
+            this.bytesIn.add(bytesIn);
+        if (bytesOut > 0)
+            this.bytesOut.add(bytesOut);
+    }
+
+    /**
+     * Count a response without timing it
+     * @param bytesIn negative when unknown
+     */
+    public void count(int status, long bytesIn) {
+        requests.increment();
+        statusClasses[status >= 100 && status < 600 ? status / 100 : 0].increment();
+        if (bytesIn > 0)
+            this.bytesIn.add(bytesIn);
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.senocak.apigw.offload;
+
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import io.netty.channel.EventLoop;
+import org.springframework.http.server.reactive.AbstractServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.Connection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Where one route's predicate work runs: on the offload scheduler, or inline with the time it holds an event-loop
+ * thread recorded in the route's {@code eventLoop} histogram.
+ */
+public final class OffloadLane {
+    /** runs everything inline, measuring nothing */
+    public static final OffloadLane INLINE = new OffloadLane(null, null, null);
+    private static final Class<?> REACTOR_REQUEST =
+            resolve("org.springframework.http.server.reactive.ReactorServerHttpRequest");
+    /** schedulers by event loop; the server has a fixed set of loops, so exchanges share these instead of allocating */
+    private static final Map<EventLoop, Scheduler> EVENT_LOOPS = new ConcurrentHashMap<>();
+
+    private final Scheduler scheduler;
+    private final RouteMetrics routeMetrics;
+    private final String routeId;
+
+    OffloadLane(Scheduler scheduler, RouteMetrics routeMetrics, String routeId) {
+        this.scheduler = scheduler;
+        this.routeMetrics = routeMetrics;
+        this.routeId = routeId;
+    }
+
+    /**
+     * @return the result of the work, empty when it returns {@code null}; offloaded work hands its result back to the
+     * event loop of the exchange
+     */
+    public <T> Mono<T> run(ServerWebExchange exchange, Supplier<T> work) {
+        if (scheduler != null)
+            return onEventLoop(exchange, Mono.fromSupplier(() -> {
+                routeMetrics.stats(routeId).getOffloaded().increment();
+                return work.get();
+            }).subscribeOn(scheduler));
+        if (routeMetrics == null || !Schedulers.isInNonBlockingThread())
+            return Mono.justOrEmpty(work.get());
+        final long start = System.nanoTime();
+        final T result = work.get();
+        routeMetrics.stats(routeId).getEventLoop().recordNanos(System.nanoTime() - start);
+        return Mono.justOrEmpty(result);
+    }
+
+    /**
+     * Signal what the offloaded mono emits on the event loop of the connection the request came in on, so the
+     * virtual thread is free once its work is done and the rest of the exchange stays on its loop
+     */
+    static <T> Mono<T> onEventLoop(ServerWebExchange exchange, Mono<T> offloaded) {
+        ServerHttpRequest request = exchange.getRequest();
+        while (request instanceof ServerHttpRequestDecorator decorator)
+            request = decorator.getDelegate();
+        // mock exchanges of tests and benchmarks have no connection, they stay on the virtual thread
+        if (request.getClass() == REACTOR_REQUEST
+                && ((AbstractServerHttpRequest) request).getNativeRequest() instanceof Connection connection)
+            return offloaded.publishOn(scheduler(connection.channel().eventLoop()));
+        return offloaded;
+    }
+
+    /**
+     * @return the one scheduler kept for the event loop
+     */
+    static Scheduler scheduler(EventLoop eventLoop) {
+        final Scheduler scheduler = EVENT_LOOPS.get(eventLoop);
+        return scheduler != null ? scheduler : EVENT_LOOPS.computeIfAbsent(eventLoop, Schedulers::fromExecutor);
+    }
+
+    private static Class<?> resolve(String className) {
+        try {
+            return ClassUtils.forName(className, OffloadLane.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
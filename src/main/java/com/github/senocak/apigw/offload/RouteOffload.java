@@ -0,0 +1,97 @@
+package com.github.senocak.apigw.offload;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual-thread lane for route logic that is too heavy for an event loop, such as regex header matching, body
+ * scanning or path rewriting. A route's {@code offload} mode picks what leaves the event loop:
+ * <ul>
+ *     <li>{@code none} (default): everything runs inline, and its event-loop time is measured</li>
+ *     <li>{@code predicates}: header and body predicates run on a virtual thread</li>
+ *     <li>{@code filters}: the route's filter chain is subscribed from a virtual thread, so every filter up to the
+ *     upstream call runs there</li>
+ *     <li>{@code all}: both</li>
+ * </ul>
+ */
+@Component
+public class RouteOffload implements DisposableBean {
+    public enum Mode {
+        NONE("none"), PREDICATES("predicates"), FILTERS("filters"), ALL("all");
+
+        private final String expression;
+
+        Mode(String expression) {
+            this.expression = expression;
+        }
+
+        public boolean predicates() {
+            return this == PREDICATES || this == ALL;
+        }
+
+        public boolean filters() {
+            return this == FILTERS || this == ALL;
+        }
+
+        /**
+         * @return {@code null} when the expression is {@code null}
+         * @throws IllegalArgumentException when the expression does not name a mode
+         */
+        public static Mode of(String expression) {
+            if (expression == null)
+                return null;
+            for (Mode mode: values())
+                if (mode.expression.equals(expression))
+                    return mode;
+            throw new IllegalArgumentException("Unknown offload mode '" + expression
+                    + "', expected none, predicates, filters or all");
+        }
+    }
+
+    private final RouteMetrics routeMetrics;
+    private final Mode defaultMode;
+    private final Scheduler scheduler = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("route-offload-", 0).factory()), "route-offload");
+
+    public RouteOffload(final RouteMetrics routeMetrics,
+                        @Value("${gateway.offload.default-mode:none}") String defaultMode) {
+        this.routeMetrics = routeMetrics;
+        this.defaultMode = Mode.of(defaultMode);
+    }
+
+    public Mode mode(ApiRoute apiRoute) {
+        final Mode mode = Mode.of(apiRoute.getOffload());
+        return mode != null ? mode : defaultMode;
+    }
+
+    /**
+     * @param offloaded whether work of the lane runs on a virtual thread, rather than inline and measured
+     */
+    public OffloadLane lane(String routeId, boolean offloaded) {
+        return new OffloadLane(offloaded ? scheduler : null, routeMetrics, routeId);
+    }
+
+    /**
+     * Route filter, placed first, that continues the filter chain on a virtual thread and completes back on the event
+     * loop of the exchange
+     */
+    public GatewayFilter filter(String routeId) {
+        return (exchange, chain) -> {
+            routeMetrics.stats(routeId).getOffloaded().increment();
+            return OffloadLane.onEventLoop(exchange, Mono.defer(() -> chain.filter(exchange)).subscribeOn(scheduler));
+        };
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.senocak.apigw.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.senocak.apigw.entity.RateLimit;
+import lombok.Data;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter that answers from per-key in-memory token buckets instead of calling Redis for every request.
+ * <ul>
+ *     <li>{@link Mode#LEASE}: buckets lease chunks of tokens from Redis through {@link RedisRateLimiter}, so the
+ *     limit stays global across gateway nodes while only one request per chunk pays a Redis round trip.</li>
+ *     <li>{@link Mode#LOCAL}: buckets refill locally and Redis is not used; the limit applies per node.</li>
+ * </ul>
+ * Buckets live in a bounded table per route document, evicted by Caffeine off the request thread.
+ */
+public class HybridRateLimiter extends AbstractRateLimiter<HybridRateLimiter.Config> {
+    public static final String CONFIGURATION_PROPERTY_NAME = "hybrid-rate-limiter";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    private static final Logger logger = LogManager.getLogger(HybridRateLimiter.class);
+
+    public enum Mode { LEASE, LOCAL }
+
+    private final RedisRateLimiter redisRateLimiter;
+    private final Config defaultConfig;
+    private final Mode mode;
+    private final int leaseSize;
+    private final long leaseTtlNanos;
+    private final int maxKeysPerRoute;
+    private final Map<String, BucketTable> tables = new ConcurrentHashMap<>();
+
+    public HybridRateLimiter(RedisRateLimiter redisRateLimiter, Config defaultConfig, Mode mode, int leaseSize,
+                             Duration leaseTtl, int maxKeysPerRoute, ConfigurationService configurationService) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.redisRateLimiter = redisRateLimiter;
+        this.defaultConfig = defaultConfig;
+        this.mode = mode;
+        this.leaseSize = leaseSize;
+        this.leaseTtlNanos = leaseTtl.toNanos();
+        this.maxKeysPerRoute = maxKeysPerRoute;
+    }
+
+    /**
+     * Register the limits of a route, falling back to the defaults for every value it does not set.
+     * Buckets of the route are reset when its limits change.
+     *
+     * @param routeId id of the route document; route identifiers are optional and may be reused
+     */
+    public void configure(String routeId, RateLimit rateLimit) {
+        final Config config = new Config();
+        config.setReplenishRate(valueOrDefault(rateLimit == null ? null : rateLimit.getReplenishRate(),
+                defaultConfig.getReplenishRate()));
+        config.setBurstCapacity(valueOrDefault(rateLimit == null ? null : rateLimit.getBurstCapacity(),
+                defaultConfig.getBurstCapacity()));
+        config.setRequestedTokens(valueOrDefault(rateLimit == null ? null : rateLimit.getRequestedTokens(),
+                defaultConfig.getRequestedTokens()));
+        if (config.equals(getConfig().put(routeId, config)))
+            return;
+        tables.put(routeId, new BucketTable(config));
+        if (mode == Mode.LEASE) {
+            final int lease = leaseSize(config);
+            if (rateLimit != null && lease < Math.min(leaseSize, config.getBurstCapacity()))
+                logger.warn("Route {} refills {} tokens per lease TTL, so its leases hold {} tokens instead of {}",
+                        routeId, config.getReplenishRate(), lease, leaseSize);
+            redisRateLimiter.getConfig().put(routeId, new RedisRateLimiter.Config()
+                    .setReplenishRate(config.getReplenishRate())
+                    .setBurstCapacity(config.getBurstCapacity())
+                    .setRequestedTokens(lease));
+        }
+    }
+
+    /**
+     * Forget the limits and buckets of every route not in {@code routeIds}
+     */
+    public void retain(Collection<String> routeIds) {
+        final Set<String> live = Set.copyOf(routeIds);
+        tables.keySet().retainAll(live);
+        getConfig().keySet().retainAll(live);
+        redisRateLimiter.getConfig().keySet().retainAll(live);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        BucketTable table = tables.get(routeId);
+        if (table == null) {
+            configure(routeId, null);
+            table = tables.get(routeId);
+        }
+        final Config config = table.config;
+        final TokenBucket bucket = table.bucket(id);
+        final long now = System.nanoTime();
+        if (mode == Mode.LOCAL)
+            return Mono.just(response(bucket.tryAcquireLocal(config.getRequestedTokens(), table.intervalNanos,
+                    table.burstNanos, now)));
+        final long remaining = bucket.tryAcquireLeased(config.getRequestedTokens(), now);
+        if (remaining >= 0)
+            return Mono.just(response(remaining));
+        final int lease = leaseSize(config);
+        // RedisRateLimiter keys its buckets by id alone, routes with other limits must not share them
+        return bucket.lease(() -> redisRateLimiter.isAllowed(routeId, routeId + ':' + id)
+                                .map(response -> response.isAllowed() ? (long) lease : 0L), leaseTtlNanos)
+                .map(granted -> response(bucket.tryAcquireLeased(config.getRequestedTokens(), System.nanoTime())));
+    }
+
+    /**
+     * Tokens per lease: never more than the burst, and no more than the route refills while a lease lives, so tokens
+     * held by one node are not missed by the others for longer than that. Routes refilling fewer tokens than
+     * {@code leaseSize} per TTL get smaller leases and call Redis more often.
+     */
+    private int leaseSize(Config config) {
+        final long perTtl = (long) config.getReplenishRate() * leaseTtlNanos / TimeUnit.SECONDS.toNanos(1);
+        final long size = Math.min(Math.min(leaseSize, config.getBurstCapacity()), Math.max(perTtl, 1));
+        return (int) Math.max(size, config.getRequestedTokens());
+    }
+
+    private static Response response(long remaining) {
+        return new Response(remaining >= 0, Map.of(REMAINING_HEADER, Long.toString(Math.max(remaining, 0))));
+    }
+
+    private static int valueOrDefault(Integer value, int defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    @Data
+    public static class Config {
+        private int replenishRate;
+        private int burstCapacity;
+        private int requestedTokens = 1;
+    }
+
+    private final class BucketTable {
+        private final Config config;
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final Cache<String, TokenBucket> buckets;
+
+        private BucketTable(Config config) {
+            this.config = config;
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(config.getReplenishRate(), 1);
+            this.burstNanos = intervalNanos * config.getBurstCapacity();
+            this.buckets = Caffeine.newBuilder().maximumSize(maxKeysPerRoute).build();
+        }
+
+        private TokenBucket bucket(String key) {
+            final TokenBucket bucket = buckets.getIfPresent(key);
+            return bucket != null ? bucket : buckets.get(key, k -> new TokenBucket());
+        }
+    }
+}
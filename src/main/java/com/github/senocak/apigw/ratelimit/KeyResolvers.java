@@ -0,0 +1,177 @@
+package com.github.senocak.apigw.ratelimit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Named rate limiting keys a route can select through {@code rateLimit.keyResolver}:
+ * <ul>
+ *     <li>{@code ip} (default): the client address of the connection</li>
+ *     <li>{@code xff:N}: the N-th address of {@code X-Forwarded-For} counted from the right, 0 being the address
+ *     added by the closest proxy</li>
+ *     <li>{@code header:Name}: the first value of a request header</li>
+ *     <li>{@code query:name}: the first value of a query parameter</li>
+ *     <li>{@code jwt:claim}: a claim of the bearer token; the token is only decoded, not verified, so use it for
+ *     bucketing behind a gateway or filter that authenticates</li>
+ *     <li>{@code route}: the route id, one bucket shared by all clients of the route</li>
+ * </ul>
+ * When the selected value is missing from a request the client address is used instead. Keys start with their kind
+ * ({@code ip:}, {@code h:}, {@code q:}, {@code jwt:} or {@code route:}), so a header or claim value that looks like an
+ * address never shares a bucket with the client at that address.
+ */
+public final class KeyResolvers {
+    public static final String UNKNOWN = "unknown";
+    private static final String IP = "ip:";
+    private static final String UNKNOWN_ADDRESS = IP + UNKNOWN;
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    private static final String BEARER = "Bearer ";
+    private static final int MAX_CACHED = 10_000;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /** keys by address, so a returning client does not allocate a new key */
+    private static final Map<InetAddress, String> ADDRESSES = new ConcurrentHashMap<>();
+
+    private KeyResolvers() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the expression does not name a known resolver
+     */
+    public static KeyResolver of(String expression) {
+        if (expression == null || expression.equals("ip"))
+            return exchange -> Mono.just(clientAddress(exchange.getRequest()));
+        if (expression.equals("route"))
+            return exchange -> {
+                final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+                return Mono.just(route != null ? "route:" + route.getId() : clientAddress(exchange.getRequest()));
+            };
+        final int separator = expression.indexOf(':');
+        final String name = separator < 0 ? expression : expression.substring(0, separator);
+        final String argument = separator < 0 ? null : expression.substring(separator + 1);
+        return switch (name) {
+            case "xff" -> {
+                final int hop = argument == null ? 0 : parseHop(argument);
+                yield exchange -> Mono.just(forwardedFor(exchange.getRequest(), hop));
+            }
+            case "header" -> {
+                requireArgument(expression, argument);
+                yield exchange -> Mono.just(orClientAddress("h:", exchange.getRequest().getHeaders().getFirst(argument),
+                        exchange));
+            }
+            case "query" -> {
+                requireArgument(expression, argument);
+                yield exchange -> Mono.just(orClientAddress("q:",
+                        exchange.getRequest().getQueryParams().getFirst(argument), exchange));
+            }
+            case "jwt" -> {
+                requireArgument(expression, argument);
+                // claim keys by authorization header, tokens are sent again and again until they expire
+                final Map<String, String> claims = new ConcurrentHashMap<>();
+                yield exchange -> {
+                    final String key = claim(exchange.getRequest(), argument, claims);
+                    return Mono.just(key != null ? key : clientAddress(exchange.getRequest()));
+                };
+            }
+            default -> throw new IllegalArgumentException("Unknown key resolver '" + expression
+                    + "', expected ip, xff:N, header:Name, query:name, jwt:claim or route");
+        };
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        final InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null)
+            return UNKNOWN_ADDRESS;
+        final InetAddress address = remoteAddress.getAddress();
+        final String cached = ADDRESSES.get(address);
+        if (cached != null)
+            return cached;
+        if (ADDRESSES.size() >= MAX_CACHED)
+            ADDRESSES.clear();
+        return ADDRESSES.computeIfAbsent(address, a -> IP + a.getHostAddress());
+    }
+
+    private static String orClientAddress(String kind, String value, ServerWebExchange exchange) {
+        return value == null || value.isEmpty() ? clientAddress(exchange.getRequest()) : kind + value;
+    }
+
+    private static String forwardedFor(ServerHttpRequest request, int hop) {
+        final List<String> values = request.getHeaders().get(X_FORWARDED_FOR);
+        if (values == null || values.isEmpty())
+            return clientAddress(request);
+        // the header may be repeated; the last value holds the closest hops
+        int remaining = hop;
+        for (int v = values.size() - 1; v >= 0; v--) {
+            final String value = values.get(v);
+            int end = value.length();
+            for (int i = value.length() - 1; i >= -1; i--) {
+                if (i == -1 || value.charAt(i) == ',') {
+                    if (remaining-- == 0) {
+                        final String address = value.substring(i + 1, end).trim();
+                        return address.isEmpty() ? clientAddress(request) : IP + address;
+                    }
+                    end = i;
+                }
+            }
+        }
+        return clientAddress(request);
+    }
+
+    private static String claim(ServerHttpRequest request, String claim, Map<String, String> claims) {
+        final String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length()))
+            return null;
+        final String cached = claims.get(authorization);
+        if (cached != null)
+            return cached;
+        final String value = decodeClaim(authorization.substring(BEARER.length()).trim(), claim);
+        if (value == null || value.isEmpty())
+            return null;
+        if (claims.size() >= MAX_CACHED)
+            claims.clear();
+        final String key = "jwt:" + value;
+        claims.put(authorization, key);
+        return key;
+    }
+
+    private static String decodeClaim(String token, String claim) {
+        final int start = token.indexOf('.');
+        final int end = token.indexOf('.', start + 1);
+        if (start < 0 || end < 0)
+            return null;
+        try {
+            final byte[] payload = Base64.getUrlDecoder().decode(token.substring(start + 1, end));
+            final JsonNode value = OBJECT_MAPPER.readTree(payload).get(claim);
+            return value == null || value.isNull() ? null : value.asText();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int parseHop(String argument) {
+        try {
+            final int hop = Integer.parseInt(argument);
+            if (hop >= 0)
+                return hop;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("xff hop must be a non-negative number, got '" + argument + "'");
+    }
+
+    private static void requireArgument(String expression, String argument) {
+        if (argument == null || argument.isEmpty())
+            throw new IllegalArgumentException("Key resolver '" + expression + "' needs a name after ':'");
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.senocak.apigw.ratelimit;
+
+import reactor.core.publisher.Mono;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free token bucket for one rate limiting key. In local mode it is a GCRA bucket driven by a single
+ * theoretical arrival time; in lease mode it holds tokens leased from Redis until they expire.
+ */
+final class TokenBucket {
+    /** local mode: theoretical arrival time of the next request, in nanos */
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+    /** lease mode: tokens left from the current lease, swapped as a whole so tokens and expiry always agree */
+    private final AtomicReference<Lease> lease = new AtomicReference<>(Lease.NONE);
+    private final AtomicReference<Mono<Long>> pendingLease = new AtomicReference<>();
+
+    private record Lease(long tokens, long expiresAt) {
+        static final Lease NONE = new Lease(0, 0);
+
+        long tokensAt(long now) {
+            return now - expiresAt < 0 ? tokens : 0;
+        }
+    }
+
+    /**
+     * @return tokens left after taking {@code tokens}, or a negative value when the request is denied
+     */
+    long tryAcquireLocal(long tokens, long intervalNanos, long burstNanos, long now) {
+        for (;;) {
+            final long current = arrival.get();
+            final long next = Math.max(current, now) + tokens * intervalNanos;
+            final long ahead = next - now;
+            if (ahead > burstNanos)
+                return -1;
+            if (arrival.compareAndSet(current, next))
+                return (burstNanos - ahead) / intervalNanos;
+        }
+    }
+
+    /**
+     * @return tokens left after taking {@code tokens} from the lease, or a negative value when the lease is
+     * expired or does not hold enough tokens
+     */
+    long tryAcquireLeased(long tokens, long now) {
+        for (;;) {
+            final Lease current = lease.get();
+            final long available = current.tokensAt(now);
+            if (available < tokens)
+                return -1;
+            if (lease.compareAndSet(current, new Lease(available - tokens, current.expiresAt())))
+                return available - tokens;
+        }
+    }
+
+    /**
+     * Lease more tokens, sharing one lease call between concurrent callers
+     */
+    Mono<Long> lease(Supplier<Mono<Long>> leaseCall, long ttlNanos) {
+        for (;;) {
+            final Mono<Long> pending = pendingLease.get();
+            if (pending != null)
+                return pending;
+            final Mono<Long> call = Mono.defer(leaseCall)
+                    .doOnNext(granted -> {
+                        if (granted > 0)
+                            grant(granted, ttlNanos);
+                    })
+                    .doFinally(signal -> pendingLease.set(null))
+                    .cache();
+            if (pendingLease.compareAndSet(null, call))
+                return call;
+        }
+    }
+
+    /**
+     * Add granted tokens to what is left of the current lease and let them all live for another {@code ttlNanos}
+     */
+    private void grant(long granted, long ttlNanos) {
+        final long now = System.nanoTime();
+        for (;;) {
+            final Lease current = lease.get();
+            if (lease.compareAndSet(current, new Lease(current.tokensAt(now) + granted, now + ttlNanos)))
+                return;
+        }
+    }
+}
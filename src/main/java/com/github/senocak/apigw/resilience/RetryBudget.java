@@ -0,0 +1,39 @@
+package com.github.senocak.apigw.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps retries to a share of a route's traffic: every request eligible for a retry earns {@code percent / 100} of a
+ * retry and every retry spends a whole one. Unspent retries are kept up to {@code reserve}, so a quiet route can still
+ * retry while a route whose upstream is failing cannot multiply its load.
+ */
+final class RetryBudget {
+    /** balance unit, a thousandth of a retry */
+    private static final long SCALE = 1_000;
+
+    private final long earned;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    RetryBudget(double percent, int reserve) {
+        this.earned = Math.round(percent * SCALE / 100);
+        this.capacity = Math.max(reserve, 1) * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    void deposit() {
+        // a full budget stays read-only, so healthy traffic does not contend on the counter
+        if (balance.get() < capacity)
+            balance.addAndGet(earned);
+    }
+
+    boolean tryWithdraw() {
+        for (;;) {
+            final long current = balance.get();
+            if (current < SCALE)
+                return false;
+            if (balance.compareAndSet(current, Math.min(current, capacity) - SCALE))
+                return true;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.senocak.apigw.resilience;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+
+/**
+ * Retries idempotent requests that failed with an I/O error, a timeout or one of the configured statuses, waiting an
+ * exponential, jittered backoff between attempts and only while the route's {@link RetryBudget} allows it.
+ * Methods and statuses are resolved into lookup tables when the route is compiled, and requests with any other
+ * method go straight down the chain.
+ */
+public class RetryGatewayFilter implements GatewayFilter {
+    public static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD,
+            HttpMethod.OPTIONS, HttpMethod.TRACE, HttpMethod.PUT, HttpMethod.DELETE);
+    private static final int MAX_STATUS = 600;
+    /** causes inspected when classifying an error, the gateway wraps I/O errors and timeouts at most a few times */
+    private static final int MAX_CAUSE_DEPTH = 4;
+
+    private final int retries;
+    private final Set<HttpMethod> methods;
+    private final boolean[] statuses;
+    private final long firstBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double factor;
+    private final double jitter;
+    private final RetryBudget budget;
+
+    RetryGatewayFilter(int retries, Set<HttpMethod> methods, boolean[] statuses, Duration firstBackoff,
+                       Duration maxBackoff, double factor, double jitter, RetryBudget budget) {
+        this.retries = retries;
+        this.methods = methods;
+        this.statuses = statuses;
+        this.firstBackoffNanos = firstBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.factor = factor;
+        this.jitter = jitter;
+        this.budget = budget;
+    }
+
+    /**
+     * @throws IllegalArgumentException when a name is not an HTTP method or names a method that is not idempotent
+     */
+    public static Set<HttpMethod> methods(Collection<String> names) {
+        final Set<HttpMethod> methods = new HashSet<>();
+        for (String name: names) {
+            final HttpMethod method = HttpMethod.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            if (!IDEMPOTENT_METHODS.contains(method))
+                throw new IllegalArgumentException("'" + name + "' is not an idempotent method, expected one of "
+                        + IDEMPOTENT_METHODS);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    /**
+     * @param statuses codes such as {@code 503}, names such as {@code BAD_GATEWAY} or classes such as {@code 5xx}
+     * @return whether each status code, by index, is retried
+     * @throws IllegalArgumentException when an entry is none of these
+     */
+    public static boolean[] statuses(Collection<String> statuses) {
+        final boolean[] table = new boolean[MAX_STATUS];
+        for (String status: statuses) {
+            final String value = status.trim();
+            if (value.length() == 3 && value.substring(1).equalsIgnoreCase("xx")
+                    && value.charAt(0) >= '1' && value.charAt(0) <= '5') {
+                final int from = (value.charAt(0) - '0') * 100;
+                Arrays.fill(table, from, from + 100, true);
+                continue;
+            }
+            table[statusCode(value)] = true;
+        }
+        return table;
+    }
+
+    private static int statusCode(String value) {
+        try {
+            final int code = Integer.parseInt(value);
+            if (code >= 100 && code < MAX_STATUS)
+                return code;
+        } catch (NumberFormatException e) {
+            try {
+                return HttpStatus.valueOf(value.toUpperCase(Locale.ROOT)).value();
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        throw new IllegalArgumentException("Unknown status '" + value
+                + "', expected a code such as 503, a name such as BAD_GATEWAY or a class such as 5xx");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!methods.contains(exchange.getRequest().getMethod()))
+            return chain.filter(exchange);
+        budget.deposit();
+        return attempt(exchange, chain, 0);
+    }
+
+    private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, int iteration) {
+        return chain.filter(exchange)
+                .materialize()
+                .flatMap(signal -> {
+                    final Throwable error = signal.getThrowable();
+                    final ServerHttpResponse response = exchange.getResponse();
+                    final boolean retryable = error != null ? isRetryable(error) : isRetryable(response.getStatusCode());
+                    if (!retryable || iteration >= retries || response.isCommitted() || !budget.tryWithdraw())
+                        return error != null ? Mono.error(error) : Mono.empty();
+                    reset(exchange);
+                    final long backoffNanos = backoffNanos(iteration);
+                    final Mono<Void> next = Mono.defer(() -> attempt(exchange, chain, iteration + 1));
+                    return backoffNanos > 0 ? Mono.delay(Duration.ofNanos(backoffNanos)).then(next) : next;
+                });
+    }
+
+    private boolean isRetryable(HttpStatusCode status) {
+        return status != null && status.value() < MAX_STATUS && statuses[status.value()];
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++, cause = cause.getCause())
+            if (cause instanceof IOException || cause instanceof TimeoutException)
+                return true;
+        return false;
+    }
+
+    private long backoffNanos(int iteration) {
+        final double backoff = Math.min(firstBackoffNanos * Math.pow(factor, iteration), maxBackoffNanos);
+        return (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * Release the failed attempt's upstream connection and let the routing filter run again
+     */
+    private static void reset(ServerWebExchange exchange) {
+        final Connection connection = exchange.getAttribute(CLIENT_RESPONSE_CONN_ATTR);
+        if (connection != null) {
+            connection.dispose();
+            exchange.getAttributes().remove(CLIENT_RESPONSE_CONN_ATTR);
+        }
+        ServerWebExchangeUtils.reset(exchange);
+    }
+}
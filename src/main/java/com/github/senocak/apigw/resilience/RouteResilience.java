@@ -0,0 +1,281 @@
+package com.github.senocak.apigw.resilience;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.CircuitBreaker;
+import com.github.senocak.apigw.entity.RetryPolicy;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.gateway.event.EnableBodyCachingEvent;
+import org.springframework.cloud.gateway.support.HttpStatusHolder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Applies the retry and circuit breaker settings of a route when it is compiled, with defaults from
+ * {@code gateway.retry.*} for what the route does not set. Circuit breaker settings are registered as a named
+ * Resilience4j configuration, which the gateway's circuit breaker factory picks up for the breaker of that name.
+ * Routes may share a breaker only with the same settings.
+ */
+@Component
+public class RouteResilience {
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final int defaultRetries;
+    private final List<String> defaultMethods;
+    private final List<String> defaultStatuses;
+    private final Duration defaultFirstBackoff;
+    private final Duration defaultMaxBackoff;
+    private final double defaultFactor;
+    private final double defaultJitter;
+    private final double defaultBudgetPercent;
+    private final int budgetReserve;
+    /** circuit breaker settings registered so far by breaker name, guarded by {@code this} */
+    private final Map<String, Claim> claims = new HashMap<>();
+
+    public RouteResilience(CircuitBreakerRegistry circuitBreakerRegistry, TimeLimiterRegistry timeLimiterRegistry,
+                           ApplicationEventPublisher applicationEventPublisher,
+                           @Value("${gateway.retry.retries:2}") int defaultRetries,
+                           @Value("${gateway.retry.methods:GET,HEAD,OPTIONS}") List<String> defaultMethods,
+                           @Value("${gateway.retry.statuses:502,503,504}") List<String> defaultStatuses,
+                           @Value("${gateway.retry.first-backoff:50ms}") Duration defaultFirstBackoff,
+                           @Value("${gateway.retry.max-backoff:500ms}") Duration defaultMaxBackoff,
+                           @Value("${gateway.retry.factor:2}") double defaultFactor,
+                           @Value("${gateway.retry.jitter:0.5}") double defaultJitter,
+                           @Value("${gateway.retry.budget-percent:20}") double defaultBudgetPercent,
+                           @Value("${gateway.retry.budget-reserve:10}") int budgetReserve) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.defaultRetries = defaultRetries;
+        this.defaultMethods = defaultMethods;
+        this.defaultStatuses = defaultStatuses;
+        this.defaultFirstBackoff = defaultFirstBackoff;
+        this.defaultMaxBackoff = defaultMaxBackoff;
+        this.defaultFactor = defaultFactor;
+        this.defaultJitter = defaultJitter;
+        this.defaultBudgetPercent = defaultBudgetPercent;
+        this.budgetReserve = budgetReserve;
+    }
+
+    /**
+     * @return the retry filter of the route, or {@code null} when it sets neither {@code retry} nor
+     * {@code retryPolicy}, or sets {@code retry} to 0
+     */
+    public RetryGatewayFilter retryFilter(ApiRoute apiRoute) {
+        final RetryPolicy policy = apiRoute.getRetryPolicy() != null ? apiRoute.getRetryPolicy() : new RetryPolicy();
+        final int retries = apiRoute.getRetry() != null ? apiRoute.getRetry() : defaultRetries;
+        if (apiRoute.getRetry() == null && apiRoute.getRetryPolicy() == null || retries <= 0)
+            return null;
+        final Set<HttpMethod> methods = RetryGatewayFilter.methods(policy.getMethods() != null ? policy.getMethods()
+                : defaultMethods);
+        if (methods.contains(HttpMethod.PUT) || methods.contains(HttpMethod.DELETE))
+            // a retried request sends its body again, so the gateway has to keep a copy of it
+            applicationEventPublisher.publishEvent(new EnableBodyCachingEvent(this,
+                    String.valueOf(apiRoute.getRouteIdentifier())));
+        return new RetryGatewayFilter(retries, methods,
+                RetryGatewayFilter.statuses(policy.getStatuses() != null ? policy.getStatuses() : defaultStatuses),
+                policy.getFirstBackoff() != null ? DurationStyle.detectAndParse(policy.getFirstBackoff()) : defaultFirstBackoff,
+                policy.getMaxBackoff() != null ? DurationStyle.detectAndParse(policy.getMaxBackoff()) : defaultMaxBackoff,
+                policy.getFactor() != null ? policy.getFactor() : defaultFactor,
+                policy.getJitter() != null ? policy.getJitter() : defaultJitter,
+                new RetryBudget(policy.getBudgetPercent() != null ? policy.getBudgetPercent() : defaultBudgetPercent,
+                        budgetReserve));
+    }
+
+    /**
+     * Register the sliding window, slow call and timeout settings of a circuit breaker before the route creates it.
+     * The breaker and time limiter are recreated when the settings change, dropping the state recorded so far.
+     *
+     * @param routeId id of the route document
+     * @throws IllegalArgumentException when another route uses the breaker with other settings
+     */
+    public synchronized void configure(String routeId, CircuitBreaker circuitBreaker) {
+        final String name = circuitBreaker.getName();
+        if (name == null)
+            return;
+        final Settings settings = Settings.of(circuitBreaker);
+        final Claim claim = claims.get(name);
+        if (claim != null && claim.settings().equals(settings)) {
+            claim.routeIds().add(routeId);
+            return;
+        }
+        if (claim != null) {
+            final Set<String> others = new TreeSet<>(claim.routeIds());
+            others.remove(routeId);
+            if (!others.isEmpty())
+                throw new IllegalArgumentException("breaker '" + name + "' is used with other settings by routes "
+                        + others);
+        }
+        claims.put(name, new Claim(settings, new HashSet<>(Set.of(routeId))));
+        if (settings.isEmpty()) {
+            if (claim == null)
+                return;
+            circuitBreakerRegistry.removeConfiguration(name);
+            timeLimiterRegistry.removeConfiguration(name);
+        } else {
+            circuitBreakerRegistry.addConfiguration(name,
+                    circuitBreakerConfig(circuitBreakerRegistry.getDefaultConfig(), circuitBreaker));
+            timeLimiterRegistry.addConfiguration(name,
+                    timeLimiterConfig(timeLimiterRegistry.getDefaultConfig(), circuitBreaker));
+        }
+        // instances keep the configuration they were created with
+        circuitBreakerRegistry.remove(name);
+        timeLimiterRegistry.remove(name);
+    }
+
+    /**
+     * Forget the breakers no route uses any more, with their settings and state
+     */
+    public synchronized void retain(Collection<ApiRoute> apiRoutes) {
+        final Map<String, Set<String>> used = new HashMap<>();
+        for (ApiRoute apiRoute: apiRoutes)
+            if (apiRoute.getCircuitBreaker() != null && apiRoute.getCircuitBreaker().getName() != null)
+                used.computeIfAbsent(apiRoute.getCircuitBreaker().getName(), name -> new HashSet<>())
+                        .add(apiRoute.getId());
+        claims.entrySet().removeIf(entry -> {
+            entry.getValue().routeIds().retainAll(used.getOrDefault(entry.getKey(), Set.of()));
+            if (!entry.getValue().routeIds().isEmpty())
+                return false;
+            circuitBreakerRegistry.removeConfiguration(entry.getKey());
+            timeLimiterRegistry.removeConfiguration(entry.getKey());
+            circuitBreakerRegistry.remove(entry.getKey());
+            timeLimiterRegistry.remove(entry.getKey());
+            return true;
+        });
+    }
+
+    /**
+     * @throws IllegalArgumentException when a setting is malformed or out of range
+     */
+    public static CircuitBreakerConfig circuitBreakerConfig(CircuitBreakerConfig defaults, CircuitBreaker circuitBreaker) {
+        final CircuitBreakerConfig.Builder builder = CircuitBreakerConfig.from(defaults);
+        if (circuitBreaker.getSlidingWindowType() != null)
+            builder.slidingWindowType(CircuitBreakerConfig.SlidingWindowType.valueOf(
+                    circuitBreaker.getSlidingWindowType().toUpperCase(Locale.ROOT)));
+        if (circuitBreaker.getSlidingWindowSize() != null)
+            builder.slidingWindowSize(circuitBreaker.getSlidingWindowSize());
+        if (circuitBreaker.getMinimumNumberOfCalls() != null)
+            builder.minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls());
+        if (circuitBreaker.getFailureRateThreshold() != null)
+            builder.failureRateThreshold(circuitBreaker.getFailureRateThreshold());
+        if (circuitBreaker.getSlowCallRateThreshold() != null)
+            builder.slowCallRateThreshold(circuitBreaker.getSlowCallRateThreshold());
+        if (circuitBreaker.getSlowCallDurationThreshold() != null)
+            builder.slowCallDurationThreshold(DurationStyle.detectAndParse(circuitBreaker.getSlowCallDurationThreshold()));
+        if (circuitBreaker.getWaitDurationInOpenState() != null)
+            builder.waitDurationInOpenState(DurationStyle.detectAndParse(circuitBreaker.getWaitDurationInOpenState()));
+        if (circuitBreaker.getPermittedNumberOfCallsInHalfOpenState() != null)
+            builder.permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState());
+        return builder.build();
+    }
+
+    /**
+     * @throws IllegalArgumentException when the timeout is malformed or not positive
+     */
+    public static TimeLimiterConfig timeLimiterConfig(TimeLimiterConfig defaults, CircuitBreaker circuitBreaker) {
+        final TimeLimiterConfig.Builder builder = TimeLimiterConfig.from(defaults);
+        if (circuitBreaker.getTimeout() != null) {
+            final Duration timeout = DurationStyle.detectAndParse(circuitBreaker.getTimeout());
+            if (!timeout.isPositive())
+                throw new IllegalArgumentException("timeout must be positive");
+            builder.timeoutDuration(timeout);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param statusCodes codes such as {@code 503}, names such as {@code BAD_GATEWAY} or series such as
+     * {@code SERVER_ERROR}
+     * @return the statuses with each series expanded into its named statuses, as the gateway's circuit breaker filter
+     * only matches single statuses
+     * @throws IllegalArgumentException when an entry is none of these
+     */
+    public static Set<String> statusCodes(Collection<String> statusCodes) {
+        final Set<String> expanded = new LinkedHashSet<>();
+        for (String statusCode: statusCodes) {
+            final HttpStatus.Series series = series(statusCode);
+            if (series == null) {
+                HttpStatusHolder.parse(statusCode.trim());
+                expanded.add(statusCode.trim());
+            } else
+                for (HttpStatus status: HttpStatus.values())
+                    if (status.series() == series)
+                        expanded.add(status.name());
+        }
+        return expanded;
+    }
+
+    /**
+     * @param statusCodes entries as accepted by {@link #statusCodes(Collection)}
+     * @return whether a response status is one of the exact statuses or falls in one of the series
+     */
+    public static Predicate<HttpStatusCode> failureStatus(Collection<String> statusCodes) {
+        final Set<Integer> codes = new HashSet<>();
+        final Set<HttpStatus.Series> series = EnumSet.noneOf(HttpStatus.Series.class);
+        for (String statusCode: statusCodes) {
+            final HttpStatus.Series named = series(statusCode);
+            if (named != null)
+                series.add(named);
+            else {
+                final HttpStatusHolder holder = HttpStatusHolder.parse(statusCode.trim());
+                codes.add(holder.getHttpStatus() != null ? holder.getHttpStatus().value() : holder.getStatus());
+            }
+        }
+        return status -> codes.contains(status.value()) || series.contains(HttpStatus.Series.resolve(status.value()));
+    }
+
+    private static HttpStatus.Series series(String statusCode) {
+        for (HttpStatus.Series series: HttpStatus.Series.values())
+            if (series.name().equalsIgnoreCase(statusCode.trim()))
+                return series;
+        return null;
+    }
+
+    /**
+     * @param routeIds documents of the routes using the breaker
+     */
+    private record Claim(Settings settings, Set<String> routeIds) {
+    }
+
+    /**
+     * The Resilience4j settings of a {@link CircuitBreaker}, without the fields the gateway filter uses
+     */
+    private record Settings(String slidingWindowType, Integer slidingWindowSize, Integer minimumNumberOfCalls,
+                            Float failureRateThreshold, Float slowCallRateThreshold, String slowCallDurationThreshold,
+                            String waitDurationInOpenState, Integer permittedNumberOfCallsInHalfOpenState,
+                            String timeout) {
+        private static final Settings EMPTY = new Settings(null, null, null, null, null, null, null, null, null);
+
+        private static Settings of(CircuitBreaker circuitBreaker) {
+            return new Settings(circuitBreaker.getSlidingWindowType(), circuitBreaker.getSlidingWindowSize(),
+                    circuitBreaker.getMinimumNumberOfCalls(), circuitBreaker.getFailureRateThreshold(),
+                    circuitBreaker.getSlowCallRateThreshold(), circuitBreaker.getSlowCallDurationThreshold(),
+                    circuitBreaker.getWaitDurationInOpenState(), circuitBreaker.getPermittedNumberOfCallsInHalfOpenState(),
+                    circuitBreaker.getTimeout());
+        }
+
+        private boolean isEmpty() {
+            return equals(EMPTY);
+        }
+    }
+}
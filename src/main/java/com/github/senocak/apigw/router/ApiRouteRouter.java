@@ -1,6 +1,8 @@
 package com.github.senocak.apigw.router;
 
 import com.github.senocak.apigw.handler.ApiRouteHandler;
+import com.github.senocak.apigw.handler.RouteMetricsHandler;
+import com.github.senocak.apigw.handler.RouteSnapshotHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
@@ -12,19 +14,34 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
 import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 
 @Configuration
 public class ApiRouteRouter {
     @Bean
-    public RouterFunction<ServerResponse> route(ApiRouteHandler apiRouteHandler) {
+    public RouterFunction<ServerResponse> route(ApiRouteHandler apiRouteHandler, RouteMetricsHandler routeMetricsHandler,
+                                                RouteSnapshotHandler routeSnapshotHandler) {
         return RouterFunctions.route(POST("/routes")
                         .and(accept(MediaType.APPLICATION_JSON)), apiRouteHandler::create)
                 .andRoute(GET("/routes")
                         .and(accept(MediaType.APPLICATION_JSON)), apiRouteHandler::getAll)
-                .andRoute(GET("/routes/:routeId")
-                        .and(accept(MediaType.APPLICATION_JSON)), apiRouteHandler::getById)
+                .andRoute(POST("/routes/bulk")
+                        .and(accept(MediaType.APPLICATION_JSON)), apiRouteHandler::bulk)
+                .andRoute(POST("/routes/import")
+                        .and(contentType(MediaType.APPLICATION_NDJSON)), apiRouteHandler::importRoutes)
+                .andRoute(GET("/routes/export"), apiRouteHandler::export)
+                .andRoute(GET("/routes/snapshots")
+                        .and(accept(MediaType.APPLICATION_JSON)), routeSnapshotHandler::list)
+                .andRoute(POST("/routes/snapshots/{version}/rollback")
+                        .and(accept(MediaType.APPLICATION_JSON)), routeSnapshotHandler::rollback)
                 .andRoute(GET("/routes/refresh-routes")
                         .and(accept(MediaType.APPLICATION_JSON)), apiRouteHandler::refreshRoutes)
+                // after the literal paths above, which it would otherwise capture
+                .andRoute(GET("/routes/{routeId}")
+                        .and(accept(MediaType.APPLICATION_JSON)), apiRouteHandler::getById)
+                .andRoute(GET("/routes/{routeId}/stats")
+                        .and(accept(MediaType.APPLICATION_JSON)), routeMetricsHandler::getStats)
+                .andRoute(GET("/metrics"), routeMetricsHandler::scrape)
                 .andRoute(GET("/fallback")
                         .and(accept(MediaType.APPLICATION_JSON)),
                         request -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON)
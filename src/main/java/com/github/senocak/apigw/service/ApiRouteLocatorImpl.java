@@ -1,11 +1,26 @@
 package com.github.senocak.apigw.service;
 
+import com.github.senocak.apigw.cache.ResponseCacheGatewayFilter;
+import com.github.senocak.apigw.cache.ResponseCaches;
+import com.github.senocak.apigw.client.UpstreamClients;
 import com.github.senocak.apigw.entity.ApiRoute;
 import com.github.senocak.apigw.entity.CircuitBreaker;
+import com.github.senocak.apigw.entity.ConnectionPool;
+import com.github.senocak.apigw.filters.AccessLog;
+import com.github.senocak.apigw.filters.HeaderTransformGatewayFilter;
+import com.github.senocak.apigw.loadbalancer.LoadBalancerGatewayFilter;
+import com.github.senocak.apigw.loadbalancer.UpstreamBalancer;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import com.github.senocak.apigw.offload.OffloadLane;
+import com.github.senocak.apigw.offload.RouteOffload;
+import com.github.senocak.apigw.ratelimit.HybridRateLimiter;
+import com.github.senocak.apigw.ratelimit.KeyResolvers;
+import com.github.senocak.apigw.resilience.RetryGatewayFilter;
+import com.github.senocak.apigw.resilience.RouteResilience;
+import com.github.senocak.apigw.snapshot.RouteSnapshots;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
-import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.SpringCloudCircuitBreakerFilterFactory;
-import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.BooleanSpec;
@@ -13,156 +28,262 @@ import org.springframework.cloud.gateway.route.builder.Buildable;
 import org.springframework.cloud.gateway.route.builder.GatewayFilterSpec;
 import org.springframework.cloud.gateway.route.builder.PredicateSpec;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.cloud.gateway.route.builder.UriSpec;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import java.time.Duration;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
 @Service
 public class ApiRouteLocatorImpl implements RouteLocator {
     private final RouteLocatorBuilder routeLocatorBuilder;
     private final RouteService routeService;
-    private final RedisRateLimiter redisRateLimiter;
+    private final HybridRateLimiter hybridRateLimiter;
+    private final RequestRateLimiterGatewayFilterFactory requestRateLimiterFactory;
+    private final RouteCache routeCache;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final ResponseCaches responseCaches;
+    private final RouteResilience routeResilience;
+    private final UpstreamClients upstreamClients;
+    private final RouteSnapshots routeSnapshots;
+    private final RouteOffload routeOffload;
+    private final RouteMetrics routeMetrics;
+
+    @Value("${gateway.routes.body.max-bytes:262144}")
+    private long defaultBodyLimit;
 
     public ApiRouteLocatorImpl(final RouteLocatorBuilder routeLocatorBuilder, final RouteService routeService,
-                               final RedisRateLimiter redisRateLimiter) {
+                               final HybridRateLimiter hybridRateLimiter,
+                               final RequestRateLimiterGatewayFilterFactory requestRateLimiterFactory,
+                               final RouteCache routeCache,
+                               final CircuitBreakerRegistry circuitBreakerRegistry,
+                               final ResponseCaches responseCaches, final RouteResilience routeResilience,
+                               final UpstreamClients upstreamClients, final RouteSnapshots routeSnapshots,
+                               final RouteOffload routeOffload, final RouteMetrics routeMetrics) {
         this.routeLocatorBuilder = routeLocatorBuilder;
         this.routeService = routeService;
-        this.redisRateLimiter = redisRateLimiter;
+        this.hybridRateLimiter = hybridRateLimiter;
+        this.requestRateLimiterFactory = requestRateLimiterFactory;
+        this.routeCache = routeCache;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.responseCaches = responseCaches;
+        this.routeResilience = routeResilience;
+        this.upstreamClients = upstreamClients;
+        this.routeSnapshots = routeSnapshots;
+        this.routeOffload = routeOffload;
+        this.routeMetrics = routeMetrics;
     }
 
     @Bean
-    public ReactiveRedisTemplate<String, String> reactiveRedisTemplate(ReactiveRedisConnectionFactory factory) {
+    public static ReactiveRedisTemplate<String, String> reactiveRedisTemplate(ReactiveRedisConnectionFactory factory) {
         return new ReactiveRedisTemplate<>(factory, RedisSerializationContext.string());
     }
 
     @Bean
-    CircuitBreakerRegistry customCircuitBreakerRegistry() {
+    static CircuitBreakerRegistry customCircuitBreakerRegistry() {
         return CircuitBreakerRegistry.ofDefaults();
     }
 
+    /**
+     * Serve the compiled routes from the in-memory cache. The first call loads them from the latest local snapshot
+     * when there is one, leaving {@link com.github.senocak.apigw.snapshot.RouteReconciler} to catch up with the data
+     * store, and from the data store otherwise.
+     */
     @Override
     public Flux<Route> getRoutes() {
-        RouteLocatorBuilder.Builder routesBuilder = routeLocatorBuilder.routes();
-        return routeService.getAll()
-                .map(apiRoute -> routesBuilder.route(String.valueOf(apiRoute.getRouteIdentifier()),
-                        predicateSpec -> setPredicateSpec(apiRoute, predicateSpec)))
+        if (routeCache.isLoaded())
+            return Flux.fromIterable(routeCache.current().routes());
+        return Mono.fromCallable(routeSnapshots::restoreLatest)
+                .flatMap(this::load)
+                .switchIfEmpty(Mono.defer(this::refresh))
+                .flatMapIterable(RouteCache.Snapshot::routes);
+    }
+
+    /**
+     * Reload the routes from the data store, recompiling only the added or changed ones
+     */
+    public Mono<RouteCache.Snapshot> refresh() {
+        return routeCache.replaceAll(routeService.getAll(), this::compile)
+                .doOnNext(snapshot -> {
+                    retain(snapshot);
+                    routeSnapshots.reconciled();
+                    routeSnapshots.save(snapshot);
+                });
+    }
+
+    /**
+     * Reload only the given route documents; ids that no longer exist in the data store are removed
+     */
+    public Mono<RouteCache.Snapshot> refresh(Collection<String> ids) {
+        return routeService.getAllById(ids)
                 .collectList()
-                .flatMapMany(builders -> routesBuilder.build()
-                        .getRoutes());
+                .flatMap(apiRoutes -> {
+                    final Set<String> deletedIds = new HashSet<>(ids);
+                    apiRoutes.forEach(apiRoute -> deletedIds.remove(apiRoute.getId()));
+                    return routeCache.apply(apiRoutes, deletedIds, this::compile);
+                })
+                .doOnNext(snapshot -> {
+                    retain(snapshot);
+                    routeSnapshots.save(snapshot);
+                });
     }
 
-    private Buildable<Route> setPredicateSpec(ApiRoute apiRoute, PredicateSpec predicateSpec) {
+    /**
+     * Replace the cached set with routes that do not come from the data store, such as a snapshot
+     */
+    public Mono<RouteCache.Snapshot> load(Collection<ApiRoute> apiRoutes) {
+        return routeCache.replaceAll(Flux.fromIterable(apiRoutes), this::compile)
+                .doOnNext(this::retain);
+    }
+
+    /**
+     * Drop the per-route state of routes that are no longer in the snapshot
+     */
+    private void retain(RouteCache.Snapshot snapshot) {
+        upstreamClients.retain(snapshot.routes());
+        hybridRateLimiter.retain(snapshot.entries().keySet());
+        routeMetrics.retain(snapshot.routes().stream().map(Route::getId).toList());
+        UpstreamBalancer.retain(circuitBreakerRegistry, snapshot.routes());
+        responseCaches.retain(snapshot.routes());
+        routeResilience.retain(snapshot.entries().values().stream().map(RouteCache.CompiledRoute::source).toList());
+    }
+
+    private Mono<Route> compile(ApiRoute apiRoute) {
+        return Mono.fromCallable(() -> RouteExpressions.compile(apiRoute))
+                .flatMap(expressions -> routeLocatorBuilder.routes()
+                        .route(String.valueOf(apiRoute.getRouteIdentifier()),
+                                predicateSpec -> setPredicateSpec(apiRoute, expressions, predicateSpec))
+                        .build()
+                        .getRoutes()
+                        .next());
+    }
+
+    private Buildable<Route> setPredicateSpec(ApiRoute apiRoute, RouteExpressions expressions,
+                                              PredicateSpec predicateSpec) {
+        final String routeId = String.valueOf(apiRoute.getRouteIdentifier());
+        final RouteOffload.Mode offload = routeOffload.mode(apiRoute);
+        final OffloadLane predicateLane = routeOffload.lane(routeId, offload.predicates());
         BooleanSpec booleanSpec = predicateSpec.path(apiRoute.getPath());
         final String method = apiRoute.getMethod();
         if (method != null)
             booleanSpec.and().method(method);
-        final List<String> headers = apiRoute.getHeaders();
-        if (headers != null && !headers.isEmpty())
-            for (String header: headers) {
-                String[] headerParts = header.split(":", 2);
-                if (headerParts.length == 2) {
-                    String key = headerParts[0];
-                    String value = headerParts[1];
-                    if (value == null) {
-                        booleanSpec.and().header(key);
-                    } else if (value.startsWith("regex=")) {
-                        booleanSpec.and().header(key, value);
-                    }
-                    booleanSpec.and().header(key, value);
-                }
-            }
+        for (RouteExpressions.HeaderMatcher headerMatcher: expressions.headers())
+            booleanSpec.and().asyncPredicate(exchange ->
+                    predicateLane.run(exchange, () -> headerMatcher.test(exchange.getRequest().getHeaders())));
         final String host = apiRoute.getHost();
         if (host != null)
             booleanSpec.and().host(host);
-        final String body = apiRoute.getBody();
-        if (body != null) {
-            String[] strings = body.split(":", 2);
-            booleanSpec.and().readBody(String.class, s -> {
-                if (strings.length == 2) {
-                    String key = strings[0];
-                    String value = strings[1];
-                    return switch (key) {
-                        case "contains" -> s.contains(value);
-                        case "equals" -> s.equals(value);
-                        case "startsWith" -> s.startsWith(value);
-                        case "endsWith" -> s.endsWith(value);
-                        case "matches" -> s.matches(value);
-                        default -> throw new IllegalStateException("Unexpected value: " + value);
-                    };
-                }
-                return s.contains(body);
-            });
+        final RouteExpressions.BodyMatcher bodyMatcher = expressions.body();
+        if (bodyMatcher != null) {
+            final Integer bodyLimit = apiRoute.getBodyLimit();
+            booleanSpec.and().asyncPredicate(new StreamingBodyPredicate(bodyMatcher,
+                    bodyLimit != null ? bodyLimit : defaultBodyLimit, predicateLane));
         }
-        return booleanSpec.filters(gatewayFilterSpec -> {
+        UriSpec uriSpec = booleanSpec.filters(gatewayFilterSpec -> {
             GatewayFilterSpec gwfs = gatewayFilterSpec;
-            final List<String> requestHeaders = apiRoute.getRequestHeaders();
-            if (requestHeaders != null && !requestHeaders.isEmpty())
-                for (String requestHeader: requestHeaders) {
-                    String[] strings = requestHeader.split(":", 2);
-                    gwfs = gwfs.addRequestHeader(strings[0], strings[1]);
-                }
-            final List<String> responseHeaders = apiRoute.getResponseHeader();
-            if (responseHeaders != null && !responseHeaders.isEmpty())
-                for (String responseHeader: responseHeaders) {
-                    String[] strings = responseHeader.split(":", 2);
-                    gwfs = gwfs.addResponseHeader(strings[0], strings[1]);
-                }
-            final Integer retry = apiRoute.getRetry();
-            if (retry != null)
-                gwfs = gwfs.retry(retryConfig -> {
-                    final RetryGatewayFilterFactory.BackoffConfig backoffConfig = new RetryGatewayFilterFactory.BackoffConfig();
-                    backoffConfig.setFirstBackoff(Duration.ofMillis(10));
-                    backoffConfig.setMaxBackoff(Duration.ofMillis(50));
-                    backoffConfig.setFactor(2);
-                    backoffConfig.setBasedOnPreviousValue(false);
-                    retryConfig
-                            .setRetries(retry)
-                            .allMethods()
-                            .setSeries(HttpStatus.Series.CLIENT_ERROR, HttpStatus.Series.SERVER_ERROR,
-                                    HttpStatus.Series.INFORMATIONAL, HttpStatus.Series.REDIRECTION,
-                                    HttpStatus.Series.SUCCESSFUL)
-                            .setStatuses(HttpStatus.NOT_FOUND)
-                            .setExceptions(Exception.class)
-                            .setBackoff(backoffConfig);
-                });
-            final String rewritePath = apiRoute.getRewritePath();
-            if (rewritePath != null) {
-                String[] strings = rewritePath.split(":", 2);
-                gwfs = gwfs.rewritePath(strings[0], strings[1]);
+            if (offload.filters())
+                gwfs = gwfs.filter(routeOffload.filter(routeId));
+            if (!expressions.requestHeaders().isEmpty() || !expressions.responseHeaders().isEmpty())
+                gwfs = gwfs.filter(new HeaderTransformGatewayFilter(expressions.requestHeaders(),
+                        expressions.responseHeaders()));
+            final RouteExpressions.RewritePath rewritePath = expressions.rewritePath();
+            if (rewritePath != null)
+                gwfs = gwfs.rewritePath(rewritePath.regexp(), rewritePath.replacement());
+            if (apiRoute.isRequestRateLimiter() || apiRoute.getRateLimit() != null) {
+                hybridRateLimiter.configure(apiRoute.getId(), apiRoute.getRateLimit());
+                final RequestRateLimiterGatewayFilterFactory.Config config = new RequestRateLimiterGatewayFilterFactory.Config()
+                        .setRateLimiter(hybridRateLimiter)
+                        .setKeyResolver(KeyResolvers.of(apiRoute.getRateLimit() == null ? null
+                                : apiRoute.getRateLimit().getKeyResolver()));
+                // limits are kept per document: route identifiers are optional and may move between documents
+                config.setRouteId(apiRoute.getId());
+                gwfs = gwfs.filter(requestRateLimiterFactory.apply(config));
             }
-            final boolean requestRateLimiter = apiRoute.isRequestRateLimiter();
-            if (requestRateLimiter)
-                gwfs = gwfs.requestRateLimiter(config -> config
-                        .setRateLimiter(redisRateLimiter)
-                        .setKeyResolver(exchange -> {
-                            //exchange.request.queryParams.getFirst("user")
-                            String hostAddress = exchange.getRequest().getRemoteAddress().getAddress().getHostAddress();
-                            if (hostAddress == null)
-                                hostAddress = "unknown";
-                            return Mono.just(hostAddress);
-                        }));
+            // retries run behind the rate limiter, a retried request takes a single token
+            final RetryGatewayFilter retryFilter = routeResilience.retryFilter(apiRoute);
+            if (retryFilter != null)
+                gwfs = gwfs.filter(retryFilter);
             final Integer setStatus = apiRoute.getSetStatus();
             if (setStatus != null)
                 gwfs = gwfs.setStatus(setStatus);
             final CircuitBreaker circuitBreaker =  apiRoute.getCircuitBreaker();
-            if (circuitBreaker != null)
+            if (circuitBreaker != null) {
+                try {
+                    routeResilience.configure(apiRoute.getId(), circuitBreaker);
+                } catch (IllegalArgumentException e) {
+                    throw new RouteValidationException(routeId, List.of("circuitBreaker: " + e.getMessage()));
+                }
                 gwfs = gwfs.circuitBreaker(c -> {
                         SpringCloudCircuitBreakerFilterFactory.Config config = c.setName(circuitBreaker.getName());
                         config = config.setFallbackUri(circuitBreaker.getFallbackUri());
-                        config = config.setStatusCodes(circuitBreaker.getStatusCodes());
+                        config = config.setStatusCodes(circuitBreaker.getStatusCodes() != null
+                                ? RouteResilience.statusCodes(circuitBreaker.getStatusCodes()) : null);
                         config.setResumeWithoutError(circuitBreaker.isResumeWithoutError());
                         config.setRouteId(circuitBreaker.getRouteId());
                     });
+            }
+            if (apiRoute.getCache() != null) {
+                final ResponseCacheGatewayFilter cacheFilter = responseCaches.filter(
+                        String.valueOf(apiRoute.getRouteIdentifier()), apiRoute.getCache());
+                gwfs = gwfs.filter(cacheFilter).filter(cacheFilter.capture());
+            }
+            if (apiRoute.getUpstreams() != null && !apiRoute.getUpstreams().isEmpty())
+                gwfs = gwfs.filter(new LoadBalancerGatewayFilter(UpstreamBalancer.of(
+                        String.valueOf(apiRoute.getRouteIdentifier()), apiRoute.getLoadBalancer(),
+                        apiRoute.getUpstreams(), circuitBreakerRegistry), failureStatus(circuitBreaker)));
             return gwfs;
-        }).uri(apiRoute.getUri());
+        });
+        if (apiRoute.getAccessLogSampleRate() != null)
+            uriSpec = uriSpec.metadata(AccessLog.SAMPLE_RATE_METADATA, apiRoute.getAccessLogSampleRate());
+        final ConnectionPool connectionPool = apiRoute.getConnectionPool();
+        if (connectionPool != null) {
+            final String pool;
+            try {
+                pool = upstreamClients.register(String.valueOf(apiRoute.getRouteIdentifier()), connectionPool,
+                        upstreamUris(apiRoute));
+            } catch (IllegalArgumentException e) {
+                throw new RouteValidationException(String.valueOf(apiRoute.getRouteIdentifier()),
+                        List.of("connectionPool: " + e.getMessage()));
+            }
+            uriSpec = uriSpec.metadata(UpstreamClients.POOL_METADATA, pool);
+            if (connectionPool.getResponseTimeout() != null)
+                uriSpec = uriSpec.metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR,
+                        DurationStyle.detectAndParse(connectionPool.getResponseTimeout()).toMillis());
+        }
+        return uriSpec.uri(apiRoute.getUri() != null ? apiRoute.getUri() : apiRoute.getUpstreams().getFirst().getUri());
+    }
+
+    private static List<URI> upstreamUris(ApiRoute apiRoute) {
+        final List<URI> uris = new ArrayList<>();
+        if (apiRoute.getUri() != null)
+            uris.add(URI.create(apiRoute.getUri()));
+        if (apiRoute.getUpstreams() != null)
+            apiRoute.getUpstreams().forEach(upstream -> uris.add(URI.create(upstream.getUri())));
+        return uris;
+    }
+
+    /**
+     * Statuses an upstream is blamed for: those the route's circuit breaker counts, or any 5xx without one
+     */
+    private static Predicate<HttpStatusCode> failureStatus(CircuitBreaker circuitBreaker) {
+        if (circuitBreaker == null || circuitBreaker.getStatusCodes() == null || circuitBreaker.getStatusCodes().isEmpty())
+            return HttpStatusCode::is5xxServerError;
+        return RouteResilience.failureStatus(circuitBreaker.getStatusCodes());
     }
 
     @Override
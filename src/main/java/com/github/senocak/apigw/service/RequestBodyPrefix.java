@@ -0,0 +1,243 @@
+package com.github.senocak.apigw.service;
+
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CACHED_SERVER_HTTP_REQUEST_DECORATOR_ATTR;
+
+/**
+ * The part of a request body that route predicates have looked at so far. The body is pulled one
+ * {@link DataBuffer} at a time and only as far as a predicate asks for, and the buffers read are kept as they
+ * arrived. Once a route is chosen, the request forwarded downstream replays those buffers and then streams the
+ * rest of the body, so the body is never copied into one big buffer.
+ * <p>
+ * The decorated request is published through {@code CACHED_SERVER_HTTP_REQUEST_DECORATOR_ATTR}, which the
+ * gateway's {@code AdaptCachedBodyGlobalFilter} swaps into the exchange of the matched route. Buffers that were
+ * never forwarded are released when the response is committed, and by {@link RequestBodyPrefixWebFilter} when the
+ * exchange ends, fails or is cancelled by a disconnecting client.
+ */
+public class RequestBodyPrefix implements CoreSubscriber<DataBuffer> {
+    private static final String ATTRIBUTE = RequestBodyPrefix.class.getName();
+
+    private final Flux<DataBuffer> body;
+    private final List<DataBuffer> buffers = new ArrayList<>();
+    private Subscription upstream;
+    private Sinks.Empty<Void> pendingRead;
+    private CoreSubscriber<? super DataBuffer> downstream;
+    private long size;
+    private boolean complete;
+    private boolean forwarded;
+    private boolean released;
+    private Throwable error;
+
+    private RequestBodyPrefix(Flux<DataBuffer> body) {
+        this.body = body;
+    }
+
+    /**
+     * The prefix of the exchange's request body, shared by every predicate evaluated for the exchange
+     */
+    public static RequestBodyPrefix of(ServerWebExchange exchange) {
+        RequestBodyPrefix prefix = exchange.getAttribute(ATTRIBUTE);
+        if (prefix == null) {
+            final ServerHttpRequest request = exchange.getRequest();
+            final RequestBodyPrefix created = new RequestBodyPrefix(request.getBody());
+            exchange.getAttributes().put(ATTRIBUTE, created);
+            exchange.getAttributes().put(CACHED_SERVER_HTTP_REQUEST_DECORATOR_ATTR, new ServerHttpRequestDecorator(request) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return created.replay();
+                }
+            });
+            // nothing was forwarded (no route matched, or the request was answered by a filter): free the buffers
+            exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(created::releaseIfNotForwarded));
+            prefix = created;
+        }
+        return prefix;
+    }
+
+    /**
+     * Release the buffers read for the exchange, unless they were handed on to the request sent downstream
+     */
+    public static void release(ServerWebExchange exchange) {
+        final RequestBodyPrefix prefix = exchange.getAttribute(ATTRIBUTE);
+        if (prefix != null)
+            prefix.releaseIfNotForwarded();
+    }
+
+    public synchronized List<DataBuffer> buffers() {
+        return buffers;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Pull the next buffer of the body. Completes once it has arrived or the body has ended.
+     */
+    public Mono<Void> readNext() {
+        final Sinks.Empty<Void> read;
+        final boolean subscribe;
+        synchronized (this) {
+            if (complete)
+                return error == null ? Mono.empty() : Mono.error(error);
+            if (pendingRead == null)
+                pendingRead = Sinks.empty();
+            read = pendingRead;
+            subscribe = upstream == null;
+        }
+        if (subscribe)
+            body.subscribe(this);
+        else
+            upstream.request(1);
+        return read.asMono();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        synchronized (this) {
+            upstream = subscription;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(DataBuffer dataBuffer) {
+        final CoreSubscriber<? super DataBuffer> target;
+        final Sinks.Empty<Void> read;
+        synchronized (this) {
+            target = downstream;
+            if (target == null) {
+                if (released) {
+                    DataBufferUtils.release(dataBuffer);
+                    return;
+                }
+                buffers.add(dataBuffer);
+                size += dataBuffer.readableByteCount();
+            }
+            read = pendingRead;
+            pendingRead = null;
+        }
+        if (target != null)
+            target.onNext(dataBuffer);
+        else if (read != null)
+            read.tryEmitEmpty();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        final CoreSubscriber<? super DataBuffer> target;
+        final Sinks.Empty<Void> read;
+        synchronized (this) {
+            complete = true;
+            error = throwable;
+            target = downstream;
+            read = pendingRead;
+            pendingRead = null;
+        }
+        if (target != null)
+            target.onError(throwable);
+        else if (read != null)
+            read.tryEmitError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        final CoreSubscriber<? super DataBuffer> target;
+        final Sinks.Empty<Void> read;
+        synchronized (this) {
+            complete = true;
+            target = downstream;
+            read = pendingRead;
+            pendingRead = null;
+        }
+        if (target != null)
+            target.onComplete();
+        else if (read != null)
+            read.tryEmitEmpty();
+    }
+
+    /**
+     * The full body: the buffers read so far followed by the rest of the stream. Can be subscribed once.
+     */
+    private Flux<DataBuffer> replay() {
+        return Flux.defer(() -> {
+            final List<DataBuffer> prefix;
+            synchronized (this) {
+                if (forwarded || released)
+                    return Flux.error(new IllegalStateException("Request body has already been consumed"));
+                forwarded = true;
+                prefix = new ArrayList<>(buffers);
+                buffers.clear();
+                if (upstream == null)
+                    // no predicate pulled anything, forward the original body untouched
+                    return body;
+                if (complete)
+                    return error == null ? Flux.fromIterable(prefix) : Flux.fromIterable(prefix).concatWith(Flux.error(error));
+            }
+            return Flux.fromIterable(prefix).concatWith(remainder());
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private Flux<DataBuffer> remainder() {
+        return new Flux<>() {
+            @Override
+            public void subscribe(CoreSubscriber<? super DataBuffer> subscriber) {
+                final boolean ended;
+                synchronized (RequestBodyPrefix.this) {
+                    ended = complete;
+                    if (!ended)
+                        downstream = subscriber;
+                }
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        upstream.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        upstream.cancel();
+                    }
+                });
+                if (ended) {
+                    if (error != null)
+                        subscriber.onError(error);
+                    else
+                        subscriber.onComplete();
+                }
+            }
+        };
+    }
+
+    private void releaseIfNotForwarded() {
+        final List<DataBuffer> prefix;
+        final Subscription subscription;
+        synchronized (this) {
+            if (forwarded || released)
+                return;
+            released = true;
+            prefix = new ArrayList<>(buffers);
+            buffers.clear();
+            subscription = complete ? null : upstream;
+        }
+        prefix.forEach(DataBufferUtils::release);
+        if (subscription != null)
+            subscription.cancel();
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.senocak.apigw.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Frees the {@link RequestBodyPrefix} of an exchange once it is over, including when the client disconnects before a
+ * response is committed
+ */
+@Component
+public class RequestBodyPrefixWebFilter implements WebFilter, Ordered {
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange).doFinally(signal -> RequestBodyPrefix.release(exchange));
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,349 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.configuration.GatewayRoutesRefresher;
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.RouteBatch;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Route administration in bulk: filtered pages, streaming export, and batches of upserts and deletes written with
+ * one {@code bulkWrite} each, followed by a single refresh of the gateway. Writes are unordered, so one the data store
+ * refuses does not stop the others; the gateway is refreshed all the same and the refused writes are reported.
+ */
+@Service
+public class RouteAdminService {
+    private static final Logger logger = LogManager.getLogger(RouteAdminService.class);
+    private static final Pattern REGEX_META = Pattern.compile("[\\\\\\[\\](){}.*+?^$|]");
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final GatewayRoutesRefresher gatewayRoutesRefresher;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int maxBatchSize;
+
+    public RouteAdminService(final ReactiveMongoTemplate reactiveMongoTemplate,
+                             final GatewayRoutesRefresher gatewayRoutesRefresher,
+                             @Value("${gateway.routes.admin.page-size:100}") int defaultPageSize,
+                             @Value("${gateway.routes.admin.max-page-size:1000}") int maxPageSize,
+                             @Value("${gateway.routes.admin.max-batch-size:1000}") int maxBatchSize) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.gatewayRoutesRefresher = gatewayRoutesRefresher;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Filters of a route listing; {@code null} values do not filter
+     * @param path prefix of the route path
+     * @param after id of the last route of the previous page
+     */
+    public record RouteFilter(String routeIdentifier, String path, String host, String after) {
+    }
+
+    /**
+     * Outcome of a batch; nothing is written when {@code rejected} is not empty, except for imports where only the
+     * rejected routes are skipped
+     * @param failed writes the data store refused while the rest of the batch was written
+     */
+    public record BatchResult(long upserted, long modified, long deleted, List<Map<String, Object>> rejected,
+                              List<Map<String, Object>> failed) {
+    }
+
+    /**
+     * What a {@code bulkWrite} did, with the operations it refused by their position in the batch
+     */
+    private record Written(BulkWriteResult result, List<BulkWriteError> errors) {
+    }
+
+    /**
+     * Create the indexes declared on {@link ApiRoute}, which back the route filters. Index creation is not automatic
+     * in Spring Data MongoDB, and a failure (duplicate route identifiers already stored) is logged, not fatal.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        final ReactiveIndexOperations indexOperations = reactiveMongoTemplate.indexOps(ApiRoute.class);
+        final MongoPersistentEntity<?> entity = reactiveMongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(ApiRoute.class);
+        new MongoPersistentEntityIndexResolver(reactiveMongoTemplate.getConverter().getMappingContext())
+                .resolveIndexForEntity(entity)
+                .forEach(index -> indexOperations.ensureIndex(index).subscribe(
+                        name -> logger.debug("Ensured route index {}", name),
+                        e -> logger.warn("Could not create route index {}: {}", index.getIndexKeys(), e.getMessage())));
+    }
+
+    /**
+     * @return the page size to use for the requested one, {@code null} meaning the default
+     */
+    public int pageSize(Integer requested) {
+        if (requested == null || requested <= 0)
+            return defaultPageSize;
+        return Math.min(requested, maxPageSize);
+    }
+
+    /**
+     * One page of routes in id order, reading only the given fields when {@code fields} is not empty
+     * @throws IllegalArgumentException when a field is not a property of {@link ApiRoute}
+     */
+    public Flux<ApiRoute> find(RouteFilter filter, int limit, Collection<String> fields) {
+        final Query query = query(criteria(filter)).with(Sort.by(Sort.Direction.ASC, "id")).limit(limit);
+        if (fields != null && !fields.isEmpty()) {
+            final MongoPersistentEntity<?> entity = reactiveMongoTemplate.getConverter().getMappingContext()
+                    .getRequiredPersistentEntity(ApiRoute.class);
+            for (String field: fields) {
+                if (entity.getPersistentProperty(field) == null)
+                    throw new IllegalArgumentException("Unknown route field '" + field + "'");
+                query.fields().include(field);
+            }
+        }
+        return reactiveMongoTemplate.find(query, ApiRoute.class);
+    }
+
+    /**
+     * Every matching route in id order, fetched from the server in cursor batches while the caller consumes them
+     */
+    public Flux<ApiRoute> export(RouteFilter filter) {
+        return reactiveMongoTemplate.find(query(criteria(filter)).with(Sort.by(Sort.Direction.ASC, "id"))
+                .cursorBatchSize(maxPageSize), ApiRoute.class);
+    }
+
+    /**
+     * Validate every route of the batch, then write all upserts and deletes with one {@code bulkWrite} and refresh
+     * the gateway once. Nothing is written when a route is invalid.
+     */
+    public Mono<BatchResult> apply(RouteBatch batch) {
+        final List<ApiRoute> upserts = batch.getUpserts() == null ? List.of() : batch.getUpserts();
+        final List<String> deletes = batch.getDeletes() == null ? List.of() : batch.getDeletes();
+        if (upserts.size() + deletes.size() > maxBatchSize)
+            return Mono.just(new BatchResult(0, 0, 0, List.of(rejection(null, null,
+                    List.of("a batch can hold at most " + maxBatchSize + " upserts and deletes"))), List.of()));
+        final List<Map<String, Object>> rejected = validate(upserts, 0, new HashSet<>());
+        if (!rejected.isEmpty())
+            return Mono.just(new BatchResult(0, 0, 0, rejected, List.of()));
+        if (upserts.isEmpty() && deletes.isEmpty())
+            return Mono.just(new BatchResult(0, 0, 0, List.of(), List.of()));
+        return refreshed(write(upserts, deletes), index -> index < upserts.size()
+                ? upserts.get(index).getRouteIdentifier() : String.join(",", deletes));
+    }
+
+    /**
+     * Upsert a stream of routes in batches of {@code max-batch-size} and refresh the gateway once at the end.
+     * Invalid routes are skipped and reported with their position in the stream.
+     */
+    public Mono<BatchResult> importRoutes(Flux<ApiRoute> routes) {
+        return Mono.defer(() -> {
+            final Set<String> seen = new HashSet<>();
+            final List<Map<String, Object>> rejected = new ArrayList<>();
+            final List<Map<String, Object>> failed = new ArrayList<>();
+            final long[] counts = new long[3];
+            return routes.buffer(maxBatchSize)
+                    .concatMap(chunk -> {
+                        final long offset = counts[2];
+                        counts[2] += chunk.size();
+                        final List<Map<String, Object>> invalid = validate(chunk, offset, seen);
+                        rejected.addAll(invalid);
+                        final Set<Object> skipped = new HashSet<>();
+                        invalid.forEach(rejection -> skipped.add(rejection.get("index")));
+                        final List<ApiRoute> valid = new ArrayList<>(chunk.size());
+                        final List<Long> positions = new ArrayList<>(chunk.size());
+                        for (int i = 0; i < chunk.size(); i++)
+                            if (!skipped.contains(offset + i)) {
+                                valid.add(chunk.get(i));
+                                positions.add(offset + i);
+                            }
+                        return valid.isEmpty() ? Mono.empty() : write(valid, List.of())
+                                .doOnNext(written -> written.errors().forEach(error -> failed.add(
+                                        rejection(positions.get(error.getIndex()),
+                                                valid.get(error.getIndex()).getRouteIdentifier(),
+                                                List.of(error.getMessage())))));
+                    })
+                    .doOnNext(written -> {
+                        counts[0] += written.result().getUpserts().size();
+                        counts[1] += written.result().getModifiedCount();
+                    })
+                    .then()
+                    // earlier chunks may have been written
+                    .onErrorResume(e -> gatewayRoutesRefresher.refreshRoutes().then(Mono.error(e)))
+                    .then(Mono.defer(() -> counts[0] + counts[1] > 0 ? gatewayRoutesRefresher.refreshRoutes() : Mono.<Void>empty()))
+                    .then(Mono.fromSupplier(() -> new BatchResult(counts[0], counts[1], 0, rejected, failed)));
+        });
+    }
+
+    /**
+     * Make the stored routes exactly the given ones, such as the routes of a snapshot being rolled back to, with one
+     * {@code bulkWrite} and one refresh. Like upserts of a batch, a route replaces the document with its route
+     * identifier, which keeps its id, so a route deleted and created again since is restored over the new document;
+     * routes without an identifier replace the document with their id. Every other document is deleted.
+     */
+    public Mono<BatchResult> restore(List<ApiRoute> apiRoutes) {
+        final ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ApiRoute.class);
+        final FindAndReplaceOptions upsert = FindAndReplaceOptions.options().upsert();
+        final List<String> routeIdentifiers = new ArrayList<>(apiRoutes.size());
+        final List<String> ids = new ArrayList<>();
+        for (ApiRoute route: apiRoutes) {
+            if (route.getRouteIdentifier() == null) {
+                bulk.replaceOne(query(where("id").is(route.getId())), route, upsert);
+                ids.add(route.getId());
+                continue;
+            }
+            routeIdentifiers.add(route.getRouteIdentifier());
+            route.setId(null);
+            bulk.replaceOne(query(where("routeIdentifier").is(route.getRouteIdentifier())), route, upsert);
+        }
+        // matches none of the documents replaced above, whichever order the server runs the writes in
+        bulk.remove(query(new Criteria().andOperator(where("routeIdentifier").nin(routeIdentifiers),
+                where("id").nin(ids))));
+        return refreshed(execute(bulk), index -> index < apiRoutes.size()
+                ? apiRoutes.get(index).getRouteIdentifier() : null);
+    }
+
+    /**
+     * Refresh the gateway after a write, also when it failed, and report the operations the data store refused
+     * @param routeIdentifier route identifier of an operation by its position in the write
+     */
+    private Mono<BatchResult> refreshed(Mono<Written> write, IntFunction<String> routeIdentifier) {
+        return write
+                // what was written before the error is unknown
+                .onErrorResume(e -> gatewayRoutesRefresher.refreshRoutes().then(Mono.error(e)))
+                .flatMap(written -> {
+                    final List<Map<String, Object>> failed = new ArrayList<>();
+                    for (BulkWriteError error: written.errors())
+                        failed.add(rejection((long) error.getIndex(), routeIdentifier.apply(error.getIndex()),
+                                List.of(error.getMessage())));
+                    return gatewayRoutesRefresher.refreshRoutes()
+                            .thenReturn(new BatchResult(written.result().getUpserts().size(),
+                                    written.result().getModifiedCount(), written.result().getDeletedCount(),
+                                    List.of(), failed));
+                });
+    }
+
+    /**
+     * Upserts replace the document with the same route identifier, which is also what deletes match; the id of an
+     * upserted route is ignored, the stored document keeps its own. Operations are numbered upserts first, then the
+     * deletes as one.
+     */
+    private Mono<Written> write(List<ApiRoute> upserts, List<String> deletes) {
+        final ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ApiRoute.class);
+        final FindAndReplaceOptions upsert = FindAndReplaceOptions.options().upsert();
+        for (ApiRoute route: upserts) {
+            route.setId(null);
+            bulk.replaceOne(query(where("routeIdentifier").is(route.getRouteIdentifier())), route, upsert);
+        }
+        if (!deletes.isEmpty())
+            bulk.remove(query(where("routeIdentifier").in(deletes)));
+        return execute(bulk);
+    }
+
+    /**
+     * @return what the bulk write did, with the operations it refused; other errors are passed on
+     */
+    private static Mono<Written> execute(ReactiveBulkOperations bulk) {
+        return bulk.execute()
+                .map(result -> new Written(result, List.of()))
+                .onErrorResume(e -> written(e) != null, e -> Mono.just(written(e)))
+                .doOnNext(written -> {
+                    logger.info("Route batch applied: {} upserted, {} modified, {} deleted",
+                            written.result().getUpserts().size(), written.result().getModifiedCount(),
+                            written.result().getDeletedCount());
+                    if (!written.errors().isEmpty())
+                        logger.warn("Route batch refused {} writes, first: {}", written.errors().size(),
+                                written.errors().getFirst().getMessage());
+                });
+    }
+
+    /**
+     * @return the partial outcome of a {@code bulkWrite} that refused some operations, or {@code null} for any other
+     * error
+     */
+    private static Written written(Throwable error) {
+        if (error instanceof BulkOperationException bulk)
+            return new Written(bulk.getResult(), bulk.getErrors());
+        for (Throwable cause = error; cause != null; cause = cause.getCause())
+            if (cause instanceof MongoBulkWriteException bulk)
+                return new Written(bulk.getWriteResult(), bulk.getWriteErrors());
+        return null;
+    }
+
+    private static List<Map<String, Object>> validate(List<ApiRoute> routes, long offset, Set<String> seen) {
+        final List<Map<String, Object>> rejected = new ArrayList<>();
+        for (int i = 0; i < routes.size(); i++) {
+            final ApiRoute route = routes.get(i);
+            final String routeIdentifier = route.getRouteIdentifier();
+            if (routeIdentifier == null || routeIdentifier.isBlank()) {
+                rejected.add(rejection(offset + i, routeIdentifier, List.of("routeIdentifier is required")));
+                continue;
+            }
+            if (!seen.add(routeIdentifier)) {
+                rejected.add(rejection(offset + i, routeIdentifier, List.of("routeIdentifier appears more than once")));
+                continue;
+            }
+            try {
+                RouteExpressions.compile(route);
+            } catch (RouteValidationException e) {
+                rejected.add(rejection(offset + i, routeIdentifier, e.getErrors()));
+            }
+        }
+        return rejected;
+    }
+
+    private static Map<String, Object> rejection(Long index, String routeIdentifier, List<String> errors) {
+        final Map<String, Object> rejection = new LinkedHashMap<>();
+        if (index != null)
+            rejection.put("index", index);
+        rejection.put("routeIdentifier", String.valueOf(routeIdentifier));
+        rejection.put("errors", errors);
+        return rejection;
+    }
+
+    private static Criteria criteria(RouteFilter filter) {
+        final List<Criteria> criteria = new ArrayList<>();
+        if (filter.routeIdentifier() != null)
+            criteria.add(where("routeIdentifier").is(filter.routeIdentifier()));
+        if (filter.path() != null)
+            // an anchored regex without metacharacters is answered from the path index
+            criteria.add(where("path").regex("^" + escape(filter.path())));
+        if (filter.host() != null)
+            criteria.add(where("host").is(filter.host()));
+        if (filter.after() != null)
+            criteria.add(where("id").gt(filter.after()));
+        return criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria);
+    }
+
+    private static String escape(String literal) {
+        return REGEX_META.matcher(literal).replaceAll(match -> Matcher.quoteReplacement("\\" + match.group()));
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * In-memory set of compiled routes keyed by {@link ApiRoute#getId()}.
+ * Refreshes only recompile documents that were added or changed and swap the whole set atomically,
+ * so requests in flight always see one consistent snapshot.
+ */
+@Component
+public class RouteCache {
+    private static final Logger logger = LogManager.getLogger(RouteCache.class);
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    public Snapshot current() {
+        return snapshot.get();
+    }
+
+    public boolean isLoaded() {
+        return snapshot.get() != Snapshot.EMPTY;
+    }
+
+    /**
+     * Replace the cached set with the given documents, reusing compiled routes of unchanged documents
+     * and dropping the ones that are no longer present.
+     */
+    public Mono<Snapshot> replaceAll(Flux<ApiRoute> source, Function<ApiRoute, Mono<Route>> compiler) {
+        return source.collectList()
+                .flatMap(apiRoutes -> update(apiRoutes, null, compiler));
+    }
+
+    /**
+     * Apply an incremental change: upsert the given documents and remove the given ids, leaving every
+     * other compiled route untouched.
+     */
+    public Mono<Snapshot> apply(Collection<ApiRoute> upserts, Collection<String> deletedIds,
+                                Function<ApiRoute, Mono<Route>> compiler) {
+        return update(upserts, deletedIds, compiler);
+    }
+
+    /**
+     * @param deletedIds ids to remove; {@code null} means {@code upserts} is the complete new set
+     */
+    private Mono<Snapshot> update(Collection<ApiRoute> upserts, Collection<String> deletedIds,
+                                  Function<ApiRoute, Mono<Route>> compiler) {
+        final Snapshot base = snapshot.get();
+        final List<ApiRoute> changed = new ArrayList<>();
+        for (ApiRoute apiRoute: upserts) {
+            final CompiledRoute existing = base.entries().get(apiRoute.getId());
+            if (existing == null || !existing.source().equals(apiRoute))
+                changed.add(apiRoute);
+        }
+        return Flux.fromIterable(changed)
+                .flatMap(apiRoute -> compiler.apply(apiRoute)
+                        .map(route -> new CompiledRoute(apiRoute, route))
+                        .onErrorResume(e -> {
+                            logger.error("Route {} could not be compiled, keeping previous version: {}",
+                                    apiRoute.getId(), e.getMessage());
+                            return Mono.empty();
+                        }))
+                .collectMap(compiledRoute -> compiledRoute.source().getId())
+                .flatMap(compiled -> {
+                    final Map<String, CompiledRoute> entries = new LinkedHashMap<>();
+                    if (deletedIds == null) {
+                        for (ApiRoute apiRoute: upserts) {
+                            final CompiledRoute entry = compiled.getOrDefault(apiRoute.getId(),
+                                    base.entries().get(apiRoute.getId()));
+                            if (entry != null)
+                                entries.put(apiRoute.getId(), entry);
+                        }
+                    } else {
+                        entries.putAll(base.entries());
+                        entries.keySet().removeAll(Set.copyOf(deletedIds));
+                        entries.putAll(compiled);
+                    }
+                    final Snapshot next = new Snapshot(entries);
+                    if (snapshot.compareAndSet(base, next)) {
+                        logger.info("Route cache refreshed: {} routes, {} recompiled", entries.size(), compiled.size());
+                        return Mono.just(next);
+                    }
+                    // another refresh won the race, diff again against its result
+                    return update(upserts, deletedIds, compiler);
+                });
+    }
+
+    public record CompiledRoute(ApiRoute source, Route route) {
+        public CompiledRoute {
+            Objects.requireNonNull(source);
+            Objects.requireNonNull(route);
+        }
+    }
+
+    public record Snapshot(Map<String, CompiledRoute> entries, List<Route> routes) {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyList());
+
+        Snapshot(Map<String, CompiledRoute> entries) {
+            this(Collections.unmodifiableMap(entries),
+                    entries.values().stream().map(CompiledRoute::route).toList());
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.client.UpstreamClients;
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.CircuitBreaker;
+import com.github.senocak.apigw.entity.ConnectionPool;
+import com.github.senocak.apigw.entity.RateLimit;
+import com.github.senocak.apigw.entity.ResponseCache;
+import com.github.senocak.apigw.entity.RetryPolicy;
+import com.github.senocak.apigw.entity.Upstream;
+import com.github.senocak.apigw.loadbalancer.UpstreamBalancer;
+import com.github.senocak.apigw.offload.RouteOffload;
+import com.github.senocak.apigw.ratelimit.KeyResolvers;
+import com.github.senocak.apigw.resilience.RetryGatewayFilter;
+import com.github.senocak.apigw.resilience.RouteResilience;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.netty.util.AsciiString;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The string expressions of an {@link ApiRoute} (headers, body, header transforms, rewrite path) parsed once
+ * into ready-to-use matchers, so nothing is split or compiled per request and a malformed route is rejected
+ * before it reaches the gateway.
+ */
+public record RouteExpressions(List<HeaderMatcher> headers, BodyMatcher body, List<HeaderRule> requestHeaders,
+                               List<HeaderRule> responseHeaders, RewritePath rewritePath) {
+    private static final String REGEX_PREFIX = "regex=";
+    private static final Pattern REGEX_META = Pattern.compile("[\\\\\\[\\](){}.*+?^$|]");
+
+    /**
+     * @throws RouteValidationException listing every invalid field of the route
+     */
+    public static RouteExpressions compile(ApiRoute apiRoute) {
+        final List<String> errors = new ArrayList<>();
+        if (apiRoute.getPath() == null || !apiRoute.getPath().startsWith("/"))
+            errors.add("path must start with '/'");
+        final List<Upstream> upstreams = apiRoute.getUpstreams();
+        if (apiRoute.getUri() == null && (upstreams == null || upstreams.isEmpty()))
+            errors.add("uri or upstreams is required");
+        else if (apiRoute.getUri() != null)
+            try {
+                URI.create(apiRoute.getUri());
+            } catch (IllegalArgumentException e) {
+                errors.add("uri is invalid: " + e.getMessage());
+            }
+        if (upstreams != null) {
+            if (upstreams.size() > UpstreamBalancer.MAX_TARGETS)
+                errors.add("upstreams can list at most " + UpstreamBalancer.MAX_TARGETS + " targets");
+            for (Upstream upstream: upstreams) {
+                try {
+                    final URI uri = upstream.getUri() != null ? URI.create(upstream.getUri()) : null;
+                    if (uri == null || uri.getHost() == null)
+                        errors.add("upstreams uri must be an absolute uri with a host, got '" + upstream.getUri() + "'");
+                    else if (uri.getRawPath() != null && !uri.getRawPath().isEmpty() && !"/".equals(uri.getRawPath())
+                            || uri.getRawQuery() != null || uri.getRawFragment() != null)
+                        // only the scheme, host and port replace those of the request URL
+                        errors.add("upstreams uri must not have a path, query or fragment, got '" + upstream.getUri()
+                                + "'; use rewritePath to change the path");
+                } catch (IllegalArgumentException e) {
+                    errors.add("upstreams uri is invalid: " + e.getMessage());
+                }
+                if (upstream.getWeight() != null && upstream.getWeight() <= 0)
+                    errors.add("upstreams weight must be positive");
+            }
+        }
+        try {
+            UpstreamBalancer.Mode.of(apiRoute.getLoadBalancer());
+        } catch (IllegalArgumentException e) {
+            errors.add("loadBalancer: " + e.getMessage());
+        }
+        final ConnectionPool connectionPool = apiRoute.getConnectionPool();
+        if (connectionPool != null) {
+            if (connectionPool.getMaxConnections() != null && connectionPool.getMaxConnections() <= 0)
+                errors.add("connectionPool.maxConnections must be positive");
+            if (connectionPool.getPendingAcquireMaxCount() != null && connectionPool.getPendingAcquireMaxCount() <= 0
+                    && connectionPool.getPendingAcquireMaxCount() != -1)
+                errors.add("connectionPool.pendingAcquireMaxCount must be positive, or -1 for no limit");
+            validateDuration("connectionPool.pendingAcquireTimeout", connectionPool.getPendingAcquireTimeout(), errors);
+            validateDuration("connectionPool.maxIdleTime", connectionPool.getMaxIdleTime(), errors);
+            validateDuration("connectionPool.maxLifeTime", connectionPool.getMaxLifeTime(), errors);
+            validateDuration("connectionPool.connectTimeout", connectionPool.getConnectTimeout(), errors);
+            validateDuration("connectionPool.responseTimeout", connectionPool.getResponseTimeout(), errors);
+            try {
+                if (UpstreamClients.Protocol.of(connectionPool.getProtocol()) == UpstreamClients.Protocol.HTTP1
+                        && connectionPool.getMaxConcurrentStreams() != null)
+                    errors.add("connectionPool.maxConcurrentStreams needs protocol h2 or h2c");
+            } catch (IllegalArgumentException e) {
+                errors.add("connectionPool.protocol: " + e.getMessage());
+            }
+            if (connectionPool.getMaxConcurrentStreams() != null && connectionPool.getMaxConcurrentStreams() <= 0)
+                errors.add("connectionPool.maxConcurrentStreams must be positive");
+            if (connectionPool.getWarmup() != null && (connectionPool.getWarmup() < 0
+                    || connectionPool.getMaxConnections() != null && connectionPool.getWarmup() > connectionPool.getMaxConnections()))
+                errors.add("connectionPool.warmup must not be negative or above maxConnections");
+        }
+        final List<HeaderMatcher> headers = new ArrayList<>();
+        if (apiRoute.getHeaders() != null)
+            for (String header: apiRoute.getHeaders()) {
+                final HeaderValue pair = HeaderValue.parse("headers", header, errors);
+                if (pair != null)
+                    headers.add(HeaderMatcher.of(pair, errors));
+            }
+        final BodyMatcher body = apiRoute.getBody() == null ? null : BodyMatcher.parse(apiRoute.getBody(), errors);
+        if (apiRoute.getBodyLimit() != null && apiRoute.getBodyLimit() <= 0)
+            errors.add("bodyLimit must be positive");
+        final List<HeaderRule> requestHeaders = HeaderRule.parseAll("requestHeaders", apiRoute.getRequestHeaders(), errors);
+        final List<HeaderRule> responseHeaders = HeaderRule.parseAll("responseHeader", apiRoute.getResponseHeader(), errors);
+        final RateLimit rateLimit = apiRoute.getRateLimit();
+        if (rateLimit != null) {
+            if (rateLimit.getReplenishRate() != null && rateLimit.getReplenishRate() <= 0)
+                errors.add("rateLimit.replenishRate must be positive");
+            if (rateLimit.getBurstCapacity() != null && rateLimit.getBurstCapacity() <= 0)
+                errors.add("rateLimit.burstCapacity must be positive");
+            if (rateLimit.getRequestedTokens() != null && (rateLimit.getRequestedTokens() <= 0
+                    || rateLimit.getBurstCapacity() != null && rateLimit.getRequestedTokens() > rateLimit.getBurstCapacity()))
+                errors.add("rateLimit.requestedTokens must be positive and not above burstCapacity");
+            try {
+                KeyResolvers.of(rateLimit.getKeyResolver());
+            } catch (IllegalArgumentException e) {
+                errors.add("rateLimit.keyResolver: " + e.getMessage());
+            }
+        }
+        final ResponseCache cache = apiRoute.getCache();
+        if (cache != null) {
+            validateDuration("cache.ttl", cache.getTtl(), errors);
+            if (cache.getMaxEntrySize() != null && cache.getMaxEntrySize() <= 0)
+                errors.add("cache.maxEntrySize must be positive");
+            if (cache.getMaxMemory() != null && (cache.getMaxMemory() <= 0
+                    || cache.getMaxEntrySize() != null && cache.getMaxEntrySize() > cache.getMaxMemory()))
+                errors.add("cache.maxMemory must be positive and not below maxEntrySize");
+        }
+        if (apiRoute.getRetry() != null && apiRoute.getRetry() < 0)
+            errors.add("retry must not be negative");
+        final RetryPolicy retryPolicy = apiRoute.getRetryPolicy();
+        if (retryPolicy != null) {
+            try {
+                if (retryPolicy.getMethods() != null)
+                    RetryGatewayFilter.methods(retryPolicy.getMethods());
+            } catch (IllegalArgumentException e) {
+                errors.add("retryPolicy.methods: " + e.getMessage());
+            }
+            try {
+                if (retryPolicy.getStatuses() != null)
+                    RetryGatewayFilter.statuses(retryPolicy.getStatuses());
+            } catch (IllegalArgumentException e) {
+                errors.add("retryPolicy.statuses: " + e.getMessage());
+            }
+            validateDuration("retryPolicy.firstBackoff", retryPolicy.getFirstBackoff(), errors);
+            validateDuration("retryPolicy.maxBackoff", retryPolicy.getMaxBackoff(), errors);
+            if (retryPolicy.getFactor() != null && !(retryPolicy.getFactor() >= 1))
+                errors.add("retryPolicy.factor must be at least 1");
+            if (retryPolicy.getJitter() != null && !(retryPolicy.getJitter() >= 0 && retryPolicy.getJitter() <= 1))
+                errors.add("retryPolicy.jitter must be between 0 and 1");
+            if (retryPolicy.getBudgetPercent() != null
+                    && !(retryPolicy.getBudgetPercent() >= 0 && retryPolicy.getBudgetPercent() <= 100))
+                errors.add("retryPolicy.budgetPercent must be between 0 and 100");
+        }
+        final CircuitBreaker circuitBreaker = apiRoute.getCircuitBreaker();
+        if (circuitBreaker != null)
+            try {
+                RouteResilience.circuitBreakerConfig(CircuitBreakerConfig.ofDefaults(), circuitBreaker);
+                RouteResilience.timeLimiterConfig(TimeLimiterConfig.ofDefaults(), circuitBreaker);
+                if (circuitBreaker.getStatusCodes() != null)
+                    RouteResilience.statusCodes(circuitBreaker.getStatusCodes());
+            } catch (IllegalArgumentException e) {
+                errors.add("circuitBreaker: " + e.getMessage());
+            }
+        if (apiRoute.getAccessLogSampleRate() != null
+                && !(apiRoute.getAccessLogSampleRate() >= 0 && apiRoute.getAccessLogSampleRate() <= 1))
+            errors.add("accessLogSampleRate must be between 0 and 1");
+        try {
+            RouteOffload.Mode.of(apiRoute.getOffload());
+        } catch (IllegalArgumentException e) {
+            errors.add("offload: " + e.getMessage());
+        }
+        RewritePath rewritePath = null;
+        if (apiRoute.getRewritePath() != null) {
+            final HeaderValue pair = HeaderValue.parse("rewritePath", apiRoute.getRewritePath(), errors);
+            if (pair != null && compilePattern("rewritePath", pair.name(), errors) != null)
+                rewritePath = new RewritePath(pair.name(), pair.value());
+        }
+        if (!errors.isEmpty())
+            throw new RouteValidationException(apiRoute.getRouteIdentifier(), errors);
+        return new RouteExpressions(List.copyOf(headers), body, requestHeaders, responseHeaders, rewritePath);
+    }
+
+    private static void validateDuration(String field, String value, List<String> errors) {
+        if (value == null)
+            return;
+        try {
+            if (!DurationStyle.detectAndParse(value).isPositive())
+                errors.add(field + " must be positive");
+        } catch (IllegalArgumentException e) {
+            errors.add(field + " is invalid: " + e.getMessage());
+        }
+    }
+
+    private static Pattern compilePattern(String field, String regex, List<String> errors) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            errors.add(field + " has an invalid regular expression '" + regex + "': " + e.getDescription());
+            return null;
+        }
+    }
+
+    /**
+     * A {@code name:value} pair
+     */
+    public record HeaderValue(String name, String value) {
+        private static HeaderValue parse(String field, String expression, List<String> errors) {
+            final int separator = expression.indexOf(':');
+            if (separator <= 0) {
+                errors.add(field + " entry '" + expression + "' must have the form name:value");
+                return null;
+            }
+            return new HeaderValue(expression.substring(0, separator), expression.substring(separator + 1));
+        }
+    }
+
+    public enum HeaderOperation {
+        ADD("add"), SET("set"), REMOVE("remove");
+
+        private final String key;
+
+        HeaderOperation(String key) {
+            this.key = key;
+        }
+
+        static HeaderOperation of(String key) {
+            for (HeaderOperation operation: values())
+                if (operation.key.equals(key))
+                    return operation;
+            return null;
+        }
+    }
+
+    /**
+     * Header transform: {@code name:value} or {@code add name:value} adds a value, {@code set name:value} replaces all
+     * values and {@code remove name} drops the header. Name and value are encoded here into the bytes Netty writes; a
+     * value with {@code {variable}} templates is expanded per request instead.
+     */
+    public record HeaderRule(HeaderOperation operation, AsciiString name, AsciiString value, boolean template) {
+        private static HeaderRule parse(String field, String expression, List<String> errors) {
+            HeaderOperation operation = HeaderOperation.ADD;
+            String rule = expression;
+            final int space = expression.indexOf(' ');
+            final int separator = expression.indexOf(':');
+            if (space > 0 && (separator < 0 || space < separator)) {
+                operation = HeaderOperation.of(expression.substring(0, space));
+                if (operation == null) {
+                    errors.add(field + " entry '" + expression + "' must start with add, set or remove");
+                    return null;
+                }
+                rule = expression.substring(space + 1).trim();
+            }
+            if (operation == HeaderOperation.REMOVE) {
+                if (!isToken(rule)) {
+                    errors.add(field + " entry '" + expression + "' must have the form remove name");
+                    return null;
+                }
+                return new HeaderRule(operation, new AsciiString(rule), null, false);
+            }
+            final HeaderValue pair = HeaderValue.parse(field, rule, errors);
+            if (pair == null)
+                return null;
+            if (!isToken(pair.name())) {
+                errors.add(field + " entry '" + expression + "' has an invalid header name");
+                return null;
+            }
+            for (int i = 0; i < pair.value().length(); i++) {
+                final char c = pair.value().charAt(i);
+                if (c < ' ' && c != '\t' || c == 0x7f || c > 0xff) {
+                    errors.add(field + " entry '" + expression + "' has a value with a control or non-latin-1 character");
+                    return null;
+                }
+            }
+            return new HeaderRule(operation, new AsciiString(pair.name()), new AsciiString(pair.value()),
+                    pair.value().indexOf('{') >= 0);
+        }
+
+        private static List<HeaderRule> parseAll(String field, List<String> expressions, List<String> errors) {
+            if (expressions == null || expressions.isEmpty())
+                return List.of();
+            final List<HeaderRule> rules = new ArrayList<>(expressions.size());
+            for (String expression: expressions) {
+                final HeaderRule rule = parse(field, expression, errors);
+                if (rule != null)
+                    rules.add(rule);
+            }
+            return List.copyOf(rules);
+        }
+
+        /**
+         * @return whether the name is an RFC 9110 token, which Netty accepts as a header name
+         */
+        private static boolean isToken(String name) {
+            if (name.isEmpty())
+                return false;
+            for (int i = 0; i < name.length(); i++) {
+                final char c = name.charAt(i);
+                if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                        || "!#$%&'*+-.^_`|~".indexOf(c) >= 0))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Path rewrite given as {@code regexp:replacement}, with a regexp known to compile
+     */
+    public record RewritePath(String regexp, String replacement) {
+    }
+
+    /**
+     * Header predicate: presence when the value is empty, plain comparison when the value has no regex
+     * syntax, otherwise a precompiled pattern. A {@code regex=} prefix always forces a pattern.
+     */
+    public record HeaderMatcher(String name, String literal, Pattern pattern) {
+        private static HeaderMatcher of(HeaderValue pair, List<String> errors) {
+            String value = pair.value();
+            final boolean forceRegex = value.startsWith(REGEX_PREFIX);
+            if (forceRegex)
+                value = value.substring(REGEX_PREFIX.length());
+            if (value.isEmpty())
+                return new HeaderMatcher(pair.name(), null, null);
+            if (!forceRegex && !REGEX_META.matcher(value).find())
+                return new HeaderMatcher(pair.name(), value, null);
+            return new HeaderMatcher(pair.name(), null, compilePattern("headers", value, errors));
+        }
+
+        public boolean test(HttpHeaders httpHeaders) {
+            final List<String> values = httpHeaders.get(name);
+            if (values == null || values.isEmpty())
+                return false;
+            if (literal == null && pattern == null)
+                return true;
+            for (String value: values) {
+                if (matches(value))
+                    return true;
+                // same as HttpHeaders#getValuesAsList, which splits comma separated values
+                if (value.indexOf(',') >= 0)
+                    for (String token: value.split(","))
+                        if (matches(token.trim()))
+                            return true;
+            }
+            return false;
+        }
+
+        private boolean matches(String value) {
+            return literal != null ? literal.equals(value) : pattern.matcher(value).matches();
+        }
+    }
+
+    public enum BodyOperation {
+        CONTAINS("contains"), EQUALS("equals"), STARTS_WITH("startsWith"), ENDS_WITH("endsWith"), MATCHES("matches");
+
+        private final String key;
+
+        BodyOperation(String key) {
+            this.key = key;
+        }
+
+        static BodyOperation of(String key) {
+            for (BodyOperation operation: values())
+                if (operation.key.equals(key))
+                    return operation;
+            return null;
+        }
+    }
+
+    /**
+     * Body predicate in the form {@code operation:value}; a body without an operation means {@code contains}.
+     */
+    public record BodyMatcher(BodyOperation operation, String value, Pattern pattern) {
+        private static BodyMatcher parse(String expression, List<String> errors) {
+            final int separator = expression.indexOf(':');
+            if (separator < 0)
+                return new BodyMatcher(BodyOperation.CONTAINS, expression, null);
+            final String key = expression.substring(0, separator);
+            final String value = expression.substring(separator + 1);
+            final BodyOperation operation = BodyOperation.of(key);
+            if (operation == null) {
+                errors.add("body operation '" + key + "' must be one of contains, equals, startsWith, endsWith, matches");
+                return null;
+            }
+            final Pattern pattern = operation == BodyOperation.MATCHES ? compilePattern("body", value, errors) : null;
+            return new BodyMatcher(operation, value, pattern);
+        }
+
+        public boolean test(String body) {
+            return switch (operation) {
+                case CONTAINS -> body.contains(value);
+                case EQUALS -> body.equals(value);
+                case STARTS_WITH -> body.startsWith(value);
+                case ENDS_WITH -> body.endsWith(value);
+                case MATCHES -> pattern.matcher(body).matches();
+            };
+        }
+    }
+}
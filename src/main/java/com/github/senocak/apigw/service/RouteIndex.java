@@ -0,0 +1,153 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dispatch index over the gateway routes in lookup order: a trie on the literal leading segments of each cached
+ * route path, with the route method and literal host checked before any gateway predicate runs.
+ * The index only narrows the candidates, every candidate still goes through its full predicate, so routes
+ * whose path starts with a wildcard or regex segment, and routes that do not come from the {@link RouteCache},
+ * simply live at the root and are always candidates.
+ */
+public class RouteIndex {
+    private final RouteCache.Snapshot snapshot;
+    private final Route[] routes;
+    private final HttpMethod[] methods;
+    private final String[] hosts;
+    private final Node root = new Node();
+    private final boolean hostIncludesPort;
+
+    /**
+     * @param routes           every route of the gateway, in the order its lookup tests them
+     * @param hostIncludesPort whether host predicates match the raw {@code Host} header including the port,
+     *                         see {@code spring.cloud.gateway.predicate.host.include-port}
+     */
+    public RouteIndex(RouteCache.Snapshot snapshot, List<Route> routes, boolean hostIncludesPort) {
+        this.snapshot = snapshot;
+        this.hostIncludesPort = hostIncludesPort;
+        // only the exact route compiled from a document is described by it
+        final Map<Route, ApiRoute> sources = new IdentityHashMap<>();
+        for (RouteCache.CompiledRoute entry: snapshot.entries().values())
+            sources.put(entry.route(), entry.source());
+        this.routes = routes.toArray(new Route[0]);
+        this.methods = new HttpMethod[this.routes.length];
+        this.hosts = new String[this.routes.length];
+        for (int i = 0; i < this.routes.length; i++) {
+            final ApiRoute apiRoute = sources.get(this.routes[i]);
+            Node node = root;
+            if (apiRoute != null) {
+                methods[i] = literalMethod(apiRoute.getMethod());
+                hosts[i] = literalHost(apiRoute.getHost());
+                for (String segment: literalPrefix(apiRoute.getPath()))
+                    node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            node.add(i);
+        }
+    }
+
+    public RouteCache.Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Candidate routes for the request, in route order.
+     */
+    public List<Route> candidates(ServerHttpRequest request) {
+        final HttpMethod method = request.getMethod();
+        final String host = host(request);
+        int[] found = new int[8];
+        int size = 0;
+        Node node = root;
+        final List<PathContainer.Element> elements = request.getPath().pathWithinApplication().elements();
+        int i = 0;
+        while (node != null) {
+            for (int n = 0; n < node.size; n++) {
+                final int position = node.positions[n];
+                if ((methods[position] == null || methods[position].equals(method))
+                        && (hosts[position] == null || hosts[position].equals(host))) {
+                    if (size == found.length)
+                        found = Arrays.copyOf(found, size * 2);
+                    found[size++] = position;
+                }
+            }
+            node = nextNode(node, elements, i);
+            i += 2;
+        }
+        if (size > 1)
+            Arrays.sort(found, 0, size);
+        final List<Route> candidates = new ArrayList<>(size);
+        for (int n = 0; n < size; n++)
+            candidates.add(routes[found[n]]);
+        return candidates;
+    }
+
+    private String host(ServerHttpRequest request) {
+        if (hostIncludesPort)
+            return request.getHeaders().getFirst(HttpHeaders.HOST);
+        final InetSocketAddress address = request.getHeaders().getHost();
+        return address == null ? null : address.getHostString();
+    }
+
+    private static Node nextNode(Node node, List<PathContainer.Element> elements, int i) {
+        if (node.children.isEmpty())
+            return null;
+        // elements alternate separator, segment, separator, ...
+        final int segment = i + 1;
+        if (segment >= elements.size() || !(elements.get(segment) instanceof PathContainer.PathSegment pathSegment))
+            return null;
+        return node.children.get(pathSegment.valueToMatch());
+    }
+
+    /**
+     * Leading segments of a path pattern that contain no wildcard, capture or regex.
+     */
+    static List<String> literalPrefix(String path) {
+        final List<String> segments = new ArrayList<>();
+        if (path == null || !path.startsWith("/"))
+            return segments;
+        for (String segment: path.substring(1).split("/", -1)) {
+            if (segment.isEmpty() || segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0
+                    || segment.indexOf('{') >= 0 || segment.indexOf('%') >= 0)
+                break;
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private static HttpMethod literalMethod(String method) {
+        if (method == null || method.indexOf(',') >= 0)
+            return null;
+        return HttpMethod.valueOf(method);
+    }
+
+    private static String literalHost(String host) {
+        if (host == null || host.indexOf('*') >= 0 || host.indexOf('?') >= 0 || host.indexOf('{') >= 0
+                || host.indexOf(',') >= 0)
+            return null;
+        return host;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private int[] positions = new int[0];
+        private int size;
+
+        private void add(int position) {
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, Math.max(2, size * 2));
+            positions[size++] = position;
+        }
+    }
+}
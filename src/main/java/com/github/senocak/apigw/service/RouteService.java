@@ -18,6 +18,10 @@ public class RouteService {
         return this.routeRepository.findAll();
     }
 
+    public Flux<ApiRoute> getAllById(Iterable<String> ids) {
+        return this.routeRepository.findAllById(ids);
+    }
+
     public Mono<ApiRoute> create(ApiRoute apiRoute) {
         return this.routeRepository.save(apiRoute);
     }
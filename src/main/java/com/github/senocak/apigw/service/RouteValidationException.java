@@ -0,0 +1,19 @@
+package com.github.senocak.apigw.service;
+
+import lombok.Getter;
+import java.util.List;
+
+/**
+ * Thrown when an {@link com.github.senocak.apigw.entity.ApiRoute} contains expressions that cannot be compiled
+ */
+@Getter
+public class RouteValidationException extends IllegalArgumentException {
+    private final String routeIdentifier;
+    private final List<String> errors;
+
+    public RouteValidationException(String routeIdentifier, List<String> errors) {
+        super("Route " + routeIdentifier + " is invalid: " + String.join("; ", errors));
+        this.routeIdentifier = routeIdentifier;
+        this.errors = List.copyOf(errors);
+    }
+}
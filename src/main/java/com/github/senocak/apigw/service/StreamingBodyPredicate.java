@@ -0,0 +1,157 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.offload.OffloadLane;
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Body predicate that matches the request body while it streams in, reading no further than needed to know
+ * the result and never more than {@code limit} bytes. {@code contains}, {@code startsWith}, {@code equals} and
+ * {@code endsWith} run on the raw bytes; only {@code matches} needs the body as a string. A body that is larger
+ * than the limit before the result is known does not match. Scanning runs in the route's {@link OffloadLane}.
+ */
+public class StreamingBodyPredicate implements AsyncPredicate<ServerWebExchange> {
+    private final RouteExpressions.BodyMatcher matcher;
+    private final byte[] value;
+    /** KMP failure function of {@link #value}, used by {@code contains} */
+    private final int[] failure;
+    private final long limit;
+    private final OffloadLane lane;
+
+    public StreamingBodyPredicate(RouteExpressions.BodyMatcher matcher, long limit) {
+        this(matcher, limit, OffloadLane.INLINE);
+    }
+
+    public StreamingBodyPredicate(RouteExpressions.BodyMatcher matcher, long limit, OffloadLane lane) {
+        this.matcher = matcher;
+        this.value = matcher.value().getBytes(StandardCharsets.UTF_8);
+        this.failure = failure(value);
+        this.limit = limit;
+        this.lane = lane;
+    }
+
+    @Override
+    public Mono<Boolean> apply(ServerWebExchange exchange) {
+        final RequestBodyPrefix prefix = RequestBodyPrefix.of(exchange);
+        return evaluate(exchange, prefix, new Scan());
+    }
+
+    private Mono<Boolean> evaluate(ServerWebExchange exchange, RequestBodyPrefix prefix, Scan scan) {
+        return Mono.defer(() -> lane.run(exchange, () -> {
+                    final Boolean decision = scan.advance(prefix.buffers());
+                    if (decision != null)
+                        return decision;
+                    if (prefix.isComplete())
+                        return scan.finish();
+                    return prefix.size() >= limit ? false : null;
+                }))
+                // no result yet, pull more of the body
+                .switchIfEmpty(Mono.defer(() -> prefix.readNext().then(evaluate(exchange, prefix, scan))));
+    }
+
+    private static int[] failure(byte[] pattern) {
+        final int[] table = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k])
+                k = table[k - 1];
+            if (pattern[i] == pattern[k])
+                k++;
+            table[i] = k;
+        }
+        return table;
+    }
+
+    /**
+     * Progress of one predicate evaluation over the shared body prefix
+     */
+    private final class Scan {
+        private int bufferIndex;
+        private long position;
+        private int matched;
+        private byte[] tail;
+        private ByteArrayOutputStream text;
+
+        /**
+         * Feed the buffers that arrived since the last call.
+         * @return the result once it is known, otherwise {@code null}
+         */
+        private Boolean advance(List<DataBuffer> buffers) {
+            if (value.length == 0 && matcher.operation() != RouteExpressions.BodyOperation.EQUALS
+                    && matcher.operation() != RouteExpressions.BodyOperation.MATCHES)
+                return true;
+            for (; bufferIndex < buffers.size(); bufferIndex++) {
+                final DataBuffer buffer = buffers.get(bufferIndex);
+                final int start = buffer.readPosition();
+                final int end = start + buffer.readableByteCount();
+                if (matcher.operation() == RouteExpressions.BodyOperation.MATCHES) {
+                    if (text == null)
+                        text = new ByteArrayOutputStream();
+                    final byte[] chunk = new byte[end - start];
+                    buffer.toByteBuffer(start, ByteBuffer.wrap(chunk), 0, chunk.length);
+                    text.writeBytes(chunk);
+                    position += chunk.length;
+                    continue;
+                }
+                for (int i = start; i < end; i++, position++) {
+                    final Boolean decision = feed(buffer.getByte(i));
+                    if (decision != null)
+                        return decision;
+                }
+            }
+            return null;
+        }
+
+        private Boolean feed(byte b) {
+            switch (matcher.operation()) {
+                case CONTAINS -> {
+                    while (matched > 0 && b != value[matched])
+                        matched = failure[matched - 1];
+                    if (b == value[matched] && ++matched == value.length)
+                        return true;
+                }
+                case STARTS_WITH -> {
+                    if (b != value[(int) position])
+                        return false;
+                    if (position + 1 == value.length)
+                        return true;
+                }
+                case EQUALS -> {
+                    if (position >= value.length || b != value[(int) position])
+                        return false;
+                }
+                case ENDS_WITH -> {
+                    if (tail == null)
+                        tail = new byte[value.length];
+                    tail[(int) (position % value.length)] = b;
+                }
+                default -> throw new IllegalStateException("Unexpected operation: " + matcher.operation());
+            }
+            return null;
+        }
+
+        /**
+         * @return the result once the whole body has been fed
+         */
+        private boolean finish() {
+            return switch (matcher.operation()) {
+                case CONTAINS, STARTS_WITH -> false;
+                case EQUALS -> position == value.length;
+                case ENDS_WITH -> {
+                    if (position < value.length)
+                        yield false;
+                    for (int i = 0; i < value.length; i++)
+                        if (tail[(int) ((position + i) % value.length)] != value[i])
+                            yield false;
+                    yield true;
+                }
+                case MATCHES -> matcher.test(text == null ? "" : text.toString(StandardCharsets.UTF_8));
+            };
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.senocak.apigw.snapshot;
+
+import com.github.senocak.apigw.configuration.GatewayRoutesRefresher;
+import com.github.senocak.apigw.service.RouteCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+import java.time.Duration;
+
+/**
+ * Once the application is up, reloads the routes from MongoDB when the gateway started from a local snapshot or
+ * could not load any routes, retrying with backoff while MongoDB is unavailable. Until then the gateway keeps
+ * serving what it has.
+ */
+@Component
+public class RouteReconciler implements DisposableBean {
+    private static final Logger logger = LogManager.getLogger(RouteReconciler.class);
+
+    private final GatewayRoutesRefresher gatewayRoutesRefresher;
+    private final RouteSnapshots routeSnapshots;
+    private final RouteCache routeCache;
+    private Disposable subscription;
+
+    public RouteReconciler(final GatewayRoutesRefresher gatewayRoutesRefresher, final RouteSnapshots routeSnapshots,
+                           final RouteCache routeCache) {
+        this.gatewayRoutesRefresher = gatewayRoutesRefresher;
+        this.routeSnapshots = routeSnapshots;
+        this.routeCache = routeCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        final Long restoredVersion = routeSnapshots.getRestoredVersion();
+        if (restoredVersion == null && routeCache.isLoaded())
+            return;
+        subscription = gatewayRoutesRefresher.refreshRoutes()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> logger.warn("Could not load routes from MongoDB, retrying: {}",
+                                signal.failure().getMessage())))
+                .subscribe(null, null, () -> logger.info(restoredVersion != null
+                        ? "Routes restored from snapshot version " + restoredVersion + " reconciled with MongoDB"
+                        : "Routes loaded from MongoDB"));
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null)
+            subscription.dispose();
+    }
+}
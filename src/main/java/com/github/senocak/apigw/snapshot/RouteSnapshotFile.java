@@ -0,0 +1,133 @@
+package com.github.senocak.apigw.snapshot;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout of a route snapshot: a fixed little-endian header followed by the route documents as
+ * back-to-back BSON, the same bytes MongoDB stores.
+ * <pre>
+ * magic:int format:int version:long createdAt:long count:int crc32:int payloadLength:long | document...
+ * </pre>
+ */
+final class RouteSnapshotFile {
+    static final int HEADER_BYTES = 40;
+    private static final int MAGIC = 0x50534752;
+    private static final int FORMAT = 1;
+    private static final DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+    record Header(long version, Instant createdAt, int count, int crc, long payloadLength) {
+    }
+
+    private RouteSnapshotFile() {
+    }
+
+    /**
+     * @return the CRC32 of the encoded documents, which identifies the route set
+     */
+    static int crc(List<RawBsonDocument> documents) {
+        final CRC32 crc = new CRC32();
+        for (RawBsonDocument document: documents)
+            crc.update(document.getByteBuffer().asNIO());
+        return (int) crc.getValue();
+    }
+
+    static RawBsonDocument encode(Document document) {
+        return new RawBsonDocument(document, CODEC);
+    }
+
+    /**
+     * Write to a temporary file next to {@code target} and move it into place, so readers never see half a file
+     */
+    static void write(Path target, long version, List<RawBsonDocument> documents, int crc) throws IOException {
+        long payloadLength = 0;
+        for (RawBsonDocument document: documents)
+            payloadLength += document.getByteBuffer().remaining();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC).putInt(FORMAT).putLong(version).putLong(System.currentTimeMillis())
+                .putInt(documents.size()).putInt(crc).putLong(payloadLength)
+                .flip();
+        final Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (RawBsonDocument document: documents)
+                writeFully(channel, document.getByteBuffer().asNIO());
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static Header readHeader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining())
+                if (channel.read(header) < 0)
+                    throw new IOException("Snapshot " + path + " is truncated");
+            return header(header.flip(), path);
+        }
+    }
+
+    /**
+     * Map the file and decode its documents straight from the page cache, checking the payload CRC first
+     */
+    static List<Document> read(Path path) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES)
+            throw new IOException("Snapshot " + path + " is truncated");
+        final Header header = header(buffer.slice(0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN), path);
+        if (header.payloadLength() != buffer.remaining() - HEADER_BYTES)
+            throw new IOException("Snapshot " + path + " is truncated");
+        final ByteBuffer payload = buffer.slice(HEADER_BYTES, (int) header.payloadLength()).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != header.crc())
+            throw new IOException("Snapshot " + path + " is corrupt, checksum mismatch");
+        final List<Document> documents = new ArrayList<>(header.count());
+        int position = 0;
+        for (int i = 0; i < header.count(); i++) {
+            final int length = payload.getInt(position);
+            try (BsonBinaryReader reader = new BsonBinaryReader(payload.slice(position, length))) {
+                documents.add(CODEC.decode(reader, DecoderContext.builder().build()));
+            }
+            position += length;
+        }
+        return documents;
+    }
+
+    private static Header header(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.getInt() != MAGIC)
+            throw new IOException(path + " is not a route snapshot");
+        final int format = buffer.getInt();
+        if (format != FORMAT)
+            throw new IOException("Snapshot " + path + " has unsupported format " + format);
+        return new Header(buffer.getLong(), Instant.ofEpochMilli(buffer.getLong()), buffer.getInt(), buffer.getInt(),
+                buffer.getLong());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.senocak.apigw.snapshot;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.service.RouteCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Versioned copies of the route set on local disk. After a refresh the routes are written as a new version when they
+ * differ from the latest one, keeping the last {@code retain} versions. On boot the latest readable version is mapped
+ * and served before MongoDB has answered, and older versions can be rolled back to.
+ */
+@Component
+public class RouteSnapshots implements DisposableBean {
+    private static final Logger logger = LogManager.getLogger(RouteSnapshots.class);
+    private static final Pattern FILE_NAME = Pattern.compile("routes-(\\d+)\\.snap");
+
+    private final MongoConverter mongoConverter;
+    private final boolean enabled;
+    private final Path directory;
+    private final int retain;
+    private final AtomicReference<RouteCache.Snapshot> pending = new AtomicReference<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("route-snapshot-writer").daemon().factory());
+    private volatile int latestCrc;
+    private volatile Long restoredVersion;
+
+    public record SnapshotInfo(long version, Instant createdAt, int routes, long bytes) {
+    }
+
+    public RouteSnapshots(final MongoConverter mongoConverter,
+                          @Value("${gateway.routes.snapshot.enabled:true}") boolean enabled,
+                          @Value("${gateway.routes.snapshot.dir:route-snapshots}") Path directory,
+                          @Value("${gateway.routes.snapshot.retain:10}") int retain) {
+        this.mongoConverter = mongoConverter;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.retain = Math.max(retain, 1);
+    }
+
+    /**
+     * The routes of the newest snapshot that can be read, skipping damaged ones
+     * @return {@code null} when snapshots are disabled or none is readable
+     */
+    public List<ApiRoute> restoreLatest() {
+        if (!enabled)
+            return null;
+        for (SnapshotInfo info: list()) {
+            try {
+                final List<ApiRoute> routes = load(info.version());
+                latestCrc = RouteSnapshotFile.readHeader(path(info.version())).crc();
+                restoredVersion = info.version();
+                logger.info("Restored {} routes from snapshot version {} of {}", routes.size(), info.version(),
+                        info.createdAt());
+                return routes;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Skipping route snapshot version {}: {}", info.version(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the version served since boot, until routes have been loaded from MongoDB
+     */
+    public Long getRestoredVersion() {
+        return restoredVersion;
+    }
+
+    /**
+     * Record that the routes in memory now come from MongoDB
+     */
+    public void reconciled() {
+        restoredVersion = null;
+    }
+
+    /**
+     * Write the routes of the snapshot in the background; when refreshes come faster than writes, only the latest
+     * snapshot is written. Nothing is written until the restored routes have been reconciled with MongoDB.
+     */
+    public void save(RouteCache.Snapshot snapshot) {
+        if (enabled && restoredVersion == null && pending.getAndSet(snapshot) == null)
+            writer.execute(() -> write(pending.getAndSet(null)));
+    }
+
+    /**
+     * Stored versions, newest first
+     */
+    public List<SnapshotInfo> list() {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        final List<SnapshotInfo> infos = new ArrayList<>();
+        for (long version: versions()) {
+            final Path path = path(version);
+            try {
+                final RouteSnapshotFile.Header header = RouteSnapshotFile.readHeader(path);
+                infos.add(new SnapshotInfo(header.version(), header.createdAt(), header.count(), Files.size(path)));
+            } catch (IOException e) {
+                logger.warn("Unreadable route snapshot {}: {}", path, e.getMessage());
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * @throws IOException when the version does not exist or cannot be read
+     */
+    public List<ApiRoute> load(long version) throws IOException {
+        final List<Document> documents = RouteSnapshotFile.read(path(version));
+        final List<ApiRoute> routes = new ArrayList<>(documents.size());
+        for (Document document: documents)
+            routes.add(mongoConverter.read(ApiRoute.class, document));
+        return routes;
+    }
+
+    @Override
+    public void destroy() {
+        writer.shutdown();
+    }
+
+    private void write(RouteCache.Snapshot snapshot) {
+        if (snapshot == null)
+            return;
+        try {
+            final List<RawBsonDocument> documents = new ArrayList<>(snapshot.entries().size());
+            // in id order, so the same routes give the same checksum whichever refresh built the snapshot
+            final List<RouteCache.CompiledRoute> compiledRoutes = snapshot.entries().values().stream()
+                    .sorted(Comparator.comparing(compiledRoute -> compiledRoute.source().getId(),
+                            Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .toList();
+            for (RouteCache.CompiledRoute compiledRoute: compiledRoutes) {
+                final Document document = new Document();
+                mongoConverter.write(compiledRoute.source(), document);
+                documents.add(RouteSnapshotFile.encode(document));
+            }
+            final int crc = RouteSnapshotFile.crc(documents);
+            final List<Long> versions = versions();
+            if (crc == latestCrc && !versions.isEmpty())
+                return;
+            Files.createDirectories(directory);
+            final long version = versions.isEmpty() ? 1 : versions.getFirst() + 1;
+            RouteSnapshotFile.write(path(version), version, documents, crc);
+            latestCrc = crc;
+            logger.info("Wrote route snapshot version {} with {} routes", version, documents.size());
+            for (long old: versions.subList(Math.min(versions.size(), retain - 1), versions.size()))
+                Files.deleteIfExists(path(old));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not write route snapshot to {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the stored version numbers, newest first
+     */
+    private List<Long> versions() {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> FILE_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        } catch (IOException e) {
+            logger.warn("Could not list route snapshots in {}: {}", directory, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Path path(long version) {
+        return directory.resolve(String.format("routes-%012d.snap", version));
+    }
+}
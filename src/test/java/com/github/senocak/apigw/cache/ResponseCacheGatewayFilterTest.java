@@ -0,0 +1,168 @@
+package com.github.senocak.apigw.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.Connection;
+import reactor.netty.NettyInbound;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Runs the filter on a route with the gateway's own {@link NettyWriteResponseFilter}, which writes the upstream body
+ * as the routing filter left it on the exchange
+ */
+class ResponseCacheGatewayFilterTest {
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private HttpStatus firstStatus = HttpStatus.OK;
+    private MediaType contentType = MediaType.TEXT_PLAIN;
+    private Mono<Void> firstCall = Mono.empty();
+
+    @Test
+    void servesRepeatedRequestsFromTheCache() {
+        final FilteringWebHandler handler = handler(filter(new CacheMemory(1 << 20)));
+
+        final MockServerWebExchange miss = get();
+        handler.handle(miss).block();
+        final MockServerWebExchange hit = get();
+        handler.handle(hit).block();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(miss.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilter.CACHE_HEADER)).isEqualTo("MISS");
+        assertThat(miss.getResponse().getBodyAsString().block()).isEqualTo("payload");
+        assertThat(hit.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilter.CACHE_HEADER)).isEqualTo("HIT");
+        assertThat(hit.getResponse().getBodyAsString().block()).isEqualTo("payload");
+    }
+
+    @Test
+    void waitersElectANewFetchWhenTheFirstBroughtNothing() {
+        final FilteringWebHandler handler = handler(filter(new CacheMemory(1 << 20)));
+        final Sinks.Empty<Void> gate = Sinks.empty();
+        firstCall = gate.asMono();
+        firstStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        final MockServerWebExchange first = get();
+        final List<MockServerWebExchange> waiters = List.of(get(), get(), get());
+
+        handler.handle(first).subscribe();
+        waiters.forEach(waiter -> handler.handle(waiter).subscribe());
+        gate.tryEmitEmpty();
+
+        // the failed call and a single one for all waiters
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(first.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(waiters).allSatisfy(waiter -> assertThat(waiter.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK));
+    }
+
+    @Test
+    void passesStreamedResponses() {
+        final CacheMemory memory = new CacheMemory(1 << 20);
+        final FilteringWebHandler handler = handler(filter(memory));
+        contentType = MediaType.TEXT_EVENT_STREAM;
+
+        handler.handle(get()).block();
+        handler.handle(get()).block();
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(memory.usedBytes()).isZero();
+    }
+
+    @Test
+    void doesNotStoreBeyondTheSharedBudget() {
+        final CacheMemory memory = new CacheMemory(16);
+        final FilteringWebHandler handler = handler(filter(memory));
+
+        handler.handle(get()).block();
+        handler.handle(get()).block();
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(memory.usedBytes()).isZero();
+    }
+
+    @Test
+    void givesMemoryBackWhenCleared() {
+        final CacheMemory memory = new CacheMemory(1 << 20);
+        final ResponseCacheGatewayFilter filter = filter(memory);
+        final FilteringWebHandler handler = handler(filter);
+        handler.handle(get()).block();
+        assertThat(memory.usedBytes()).isPositive();
+
+        filter.clear();
+        handler.handle(get()).block();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> memory.usedBytes() == 0);
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    private static ResponseCacheGatewayFilter filter(CacheMemory memory) {
+        return new ResponseCacheGatewayFilter(Duration.ofMinutes(1), null, 1 << 10, 1 << 20, memory, null);
+    }
+
+    private FilteringWebHandler handler(ResponseCacheGatewayFilter filter) {
+        final Route route = Route.async()
+                .id("items")
+                .uri("http://localhost:8081")
+                .predicate(exchange -> true)
+                .filter(filter)
+                .filter(filter.capture())
+                .build();
+        return new FilteringWebHandler(List.of(new NettyWriteResponseFilter(List.of(MediaType.TEXT_EVENT_STREAM)),
+                new Upstream()), false) {
+            @Override
+            public Mono<Void> handle(ServerWebExchange exchange) {
+                exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+                return super.handle(exchange);
+            }
+        };
+    }
+
+    private static MockServerWebExchange get() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/items/1"));
+    }
+
+    /**
+     * Stands in for the routing filter: sets the upstream status and headers, and leaves the connection whose body
+     * {@link NettyWriteResponseFilter} writes
+     */
+    private final class Upstream implements GlobalFilter, Ordered {
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            final int call = upstreamCalls.incrementAndGet();
+            return (call == 1 ? firstCall : Mono.<Void>empty()).then(Mono.fromRunnable(() -> {
+                final ServerHttpResponse response = exchange.getResponse();
+                response.setStatusCode(call == 1 ? firstStatus : HttpStatus.OK);
+                response.getHeaders().setContentType(contentType);
+                final NettyInbound inbound = mock(NettyInbound.class);
+                when(inbound.receive()).thenReturn(ByteBufFlux.fromString(Mono.just("payload")));
+                final Connection connection = mock(Connection.class);
+                when(connection.inbound()).thenReturn(inbound);
+                exchange.getAttributes().put(CLIENT_RESPONSE_CONN_ATTR, connection);
+            }));
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.senocak.apigw.client;
+
+import com.github.senocak.apigw.entity.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.netty.http.client.HttpClient;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class UpstreamClientsTest {
+    private final HttpClientProperties properties = new HttpClientProperties();
+    private final UpstreamClients upstreamClients = new UpstreamClients(properties,
+            new HttpClientSslConfigurer(properties.getSsl(), new ServerProperties(), null), 10, 100,
+            Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofSeconds(10));
+
+    @AfterEach
+    void dispose() {
+        upstreamClients.destroy();
+    }
+
+    @Test
+    void sharesANamedPoolBetweenRoutesWithTheSameSettings() {
+        final String name = upstreamClients.register("a", pool("shared", 10), List.of());
+        final HttpClient client = upstreamClients.client(name);
+
+        assertThat(upstreamClients.register("b", pool("shared", 10), List.of())).isEqualTo(name);
+        assertThat(upstreamClients.client(name)).isSameAs(client);
+    }
+
+    @Test
+    void rejectsOtherSettingsUnderAUsedName() {
+        upstreamClients.register("a", pool("shared", 10), List.of());
+        final HttpClient client = upstreamClients.client("shared");
+
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> upstreamClients.register("b", pool("shared", 20), List.of()))
+                .withMessageContaining("[a]");
+        assertThat(upstreamClients.client("shared")).isSameAs(client);
+    }
+
+    @Test
+    void letsTheOnlyRouteChangeItsPool() {
+        upstreamClients.register("a", pool("shared", 10), List.of());
+        final HttpClient client = upstreamClients.client("shared");
+
+        upstreamClients.register("a", pool("shared", 20), List.of());
+
+        assertThat(upstreamClients.client("shared")).isNotSameAs(client);
+    }
+
+    @Test
+    void freesTheNameOfRemovedRoutes() {
+        upstreamClients.register("a", pool("shared", 10), List.of());
+        upstreamClients.register("b", pool("shared", 10), List.of());
+
+        upstreamClients.retain(List.of(route("b", "shared")));
+        upstreamClients.register("b", pool("shared", 20), List.of());
+
+        upstreamClients.retain(List.of());
+        assertThat(upstreamClients.client("shared")).isNull();
+    }
+
+    private static ConnectionPool pool(String name, int maxConnections) {
+        final ConnectionPool connectionPool = new ConnectionPool();
+        connectionPool.setName(name);
+        connectionPool.setMaxConnections(maxConnections);
+        return connectionPool;
+    }
+
+    private static Route route(String id, String pool) {
+        return Route.async()
+                .id(id)
+                .uri("http://localhost:8080")
+                .predicate(exchange -> true)
+                .metadata(UpstreamClients.POOL_METADATA, pool)
+                .build();
+    }
+}
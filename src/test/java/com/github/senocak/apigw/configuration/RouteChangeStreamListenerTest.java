@@ -0,0 +1,187 @@
+package com.github.senocak.apigw.configuration;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Drives {@link RouteChangeStreamListener} with a stand-in for a replica set: a template whose change streams are fed
+ * by the test and whose cluster time advances with every command
+ */
+class RouteChangeStreamListenerTest {
+    private static final Duration DEBOUNCE = Duration.ofMillis(100);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final List<ChangeStreamOptions> streams = new CopyOnWriteArrayList<>();
+    private final List<Sinks.Many<ChangeStreamEvent<Document>>> sinks = new CopyOnWriteArrayList<>();
+    private final List<Collection<String>> partialRefreshes = new CopyOnWriteArrayList<>();
+    private MongoClient mongoClient;
+    private ReplicaSetTemplate template;
+    private RouteChangeStreamListener listener;
+
+    @BeforeEach
+    void setUp() {
+        mongoClient = MongoClients.create("mongodb://127.0.0.1:1");
+        template = new ReplicaSetTemplate(mongoClient);
+        listener = new RouteChangeStreamListener(template, new RecordingRefresher(), 500, DEBOUNCE, Duration.ofSeconds(5));
+        listener.start();
+        await().atMost(TIMEOUT).until(() -> streams.size() == 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.destroy();
+        mongoClient.close();
+    }
+
+    @Test
+    void opensTheStreamAtTheTimeTakenBeforeTheFullLoad() {
+        assertThat(calls).containsExactly("operationTime 1", "refreshRoutes", "changeStream");
+        assertThat(streams.getFirst().getResumeBsonTimestamp()).contains(new BsonTimestamp(1, 0));
+        assertThat(streams.getFirst().getResumeToken()).isEmpty();
+    }
+
+    @Test
+    void appliesABurstOfChangesAsOneRefresh() {
+        emit(0, "update", "route-a", 1);
+        emit(0, "insert", "route-b", 2);
+        emit(0, "delete", "route-a", 3);
+
+        await().atMost(TIMEOUT).until(() -> partialRefreshes.size() == 1);
+        sleep(DEBOUNCE.multipliedBy(3));
+        assertThat(partialRefreshes).hasSize(1);
+        assertThat(partialRefreshes.getFirst()).containsExactly("route-a", "route-b");
+    }
+
+    @Test
+    void resumesAfterTheLastAppliedChangeWithoutReloading() {
+        emit(0, "update", "route-a", 7);
+        await().atMost(TIMEOUT).until(() -> partialRefreshes.size() == 1);
+
+        sinks.getFirst().tryEmitError(new IllegalStateException("connection reset"));
+
+        await().atMost(TIMEOUT).until(() -> streams.size() == 2);
+        assertThat(streams.get(1).getResumeToken()).contains(token(7));
+        assertThat(streams.get(1).isStartAfter()).isTrue();
+        assertThat(calls).containsOnlyOnce("refreshRoutes");
+    }
+
+    @Test
+    void reloadsAndStartsOverWhenTheHistoryIsLost() {
+        emit(0, "update", "route-a", 7);
+        await().atMost(TIMEOUT).until(() -> partialRefreshes.size() == 1);
+        sinks.getFirst().tryEmitError(new IllegalStateException("connection reset"));
+        await().atMost(TIMEOUT).until(() -> streams.size() == 2);
+
+        sinks.get(1).tryEmitError(new MongoCommandException(new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(286))
+                .append("errmsg", new BsonString("resume point may no longer be in the oplog")), new ServerAddress()));
+
+        await().atMost(TIMEOUT).until(() -> streams.size() == 3);
+        assertThat(calls).containsSubsequence("changeStream", "changeStream", "operationTime 2", "refreshRoutes",
+                "changeStream");
+        assertThat(streams.get(2).getResumeBsonTimestamp()).contains(new BsonTimestamp(2, 0));
+        assertThat(streams.get(2).getResumeToken()).isEmpty();
+    }
+
+    @Test
+    void reloadsAllRoutesOnInvalidateAndReopensAfterIt() {
+        emit(0, "drop", null, 5);
+        emit(0, "invalidate", null, 6);
+        sinks.getFirst().tryEmitComplete();
+
+        await().atMost(TIMEOUT).until(() -> streams.size() == 2);
+        assertThat(calls).containsSubsequence("refreshRoutes", "changeStream", "refreshRoutes", "changeStream");
+        assertThat(partialRefreshes).isEmpty();
+        assertThat(streams.get(1).getResumeToken()).contains(token(6));
+    }
+
+    private void emit(int stream, String operationType, String id, int tokenValue) {
+        final ChangeStreamDocument<Document> raw = new ChangeStreamDocument<>(operationType, token(tokenValue),
+                null, null, null, null, id == null ? null : new BsonDocument("_id", new BsonString(id)),
+                new BsonTimestamp(tokenValue, 0), null, null, null, null, null, null);
+        sinks.get(stream).tryEmitNext(new ChangeStreamEvent<>(raw, Document.class, template.getConverter()));
+    }
+
+    private static BsonDocument token(int value) {
+        return new BsonDocument("_data", new BsonString("token-" + value));
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class ReplicaSetTemplate extends ReactiveMongoTemplate {
+        private int clusterTime;
+
+        ReplicaSetTemplate(MongoClient mongoClient) {
+            super(mongoClient, "gateway");
+        }
+
+        @Override
+        public Mono<Document> executeCommand(Document command) {
+            return Mono.fromSupplier(() -> {
+                clusterTime++;
+                calls.add("operationTime " + clusterTime);
+                return new Document("ok", 1).append("operationTime", new BsonTimestamp(clusterTime, 0));
+            });
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Flux<ChangeStreamEvent<T>> changeStream(String database, String collectionName,
+                                                            ChangeStreamOptions options, Class<T> targetType) {
+            return Flux.defer(() -> {
+                final Sinks.Many<ChangeStreamEvent<Document>> sink = Sinks.many().unicast().onBackpressureBuffer();
+                calls.add("changeStream");
+                sinks.add(sink);
+                streams.add(options);
+                return sink.asFlux().map(event -> (ChangeStreamEvent<T>) event);
+            });
+        }
+    }
+
+    private class RecordingRefresher extends GatewayRoutesRefresher {
+        RecordingRefresher() {
+            super(null);
+        }
+
+        @Override
+        public Mono<Void> refreshRoutes() {
+            return Mono.fromRunnable(() -> calls.add("refreshRoutes"));
+        }
+
+        @Override
+        public Mono<Void> refreshRoutes(Collection<String> routeIds) {
+            return Mono.fromRunnable(() -> partialRefreshes.add(List.copyOf(routeIds)));
+        }
+    }
+}
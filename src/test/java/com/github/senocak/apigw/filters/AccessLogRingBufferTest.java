@@ -0,0 +1,67 @@
+package com.github.senocak.apigw.filters;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogRingBufferTest {
+    @Test
+    void roundsTheCapacityUpToAPowerOfTwo() {
+        final AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(5);
+
+        for (int i = 0; i < 8; i++)
+            assertThat(ringBuffer.claim()).isEqualTo(i);
+
+        assertThat(ringBuffer.claim()).isEqualTo(-1);
+    }
+
+    @Test
+    void reusesTheSameRecordsWhenItWrapsAround() {
+        final AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(4);
+
+        for (int i = 0; i < 20; i++) {
+            final long position = ringBuffer.claim();
+            assertThat(position).isEqualTo(i);
+            ringBuffer.record(position).path = "/" + i;
+            ringBuffer.publish(position);
+            if (i >= 2) {
+                final long polled = ringBuffer.poll();
+                assertThat(polled).isEqualTo(i - 2);
+                assertThat(ringBuffer.record(polled).path).isEqualTo("/" + (i - 2));
+                ringBuffer.release(polled);
+            }
+        }
+
+        assertThat(ringBuffer.record(16)).isSameAs(ringBuffer.record(0));
+        assertThat(ringBuffer.record(16).path).isNull();
+    }
+
+    @Test
+    void claimsNothingWhileFullUntilASlotIsReleased() {
+        final AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(4);
+        for (int i = 0; i < 4; i++)
+            ringBuffer.publish(ringBuffer.claim());
+        assertThat(ringBuffer.claim()).isEqualTo(-1);
+
+        final long polled = ringBuffer.poll();
+        assertThat(ringBuffer.claim()).isEqualTo(-1);
+        ringBuffer.release(polled);
+
+        assertThat(ringBuffer.claim()).isEqualTo(4);
+    }
+
+    @Test
+    void pollsRecordsInClaimOrderOnceTheyArePublished() {
+        final AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(4);
+        final long first = ringBuffer.claim();
+        final long second = ringBuffer.claim();
+
+        ringBuffer.publish(second);
+        assertThat(ringBuffer.poll()).isEqualTo(-1);
+        ringBuffer.publish(first);
+
+        assertThat(ringBuffer.poll()).isEqualTo(first);
+        assertThat(ringBuffer.poll()).isEqualTo(second);
+        assertThat(ringBuffer.poll()).isEqualTo(-1);
+    }
+}
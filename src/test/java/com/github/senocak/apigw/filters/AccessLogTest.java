@@ -0,0 +1,107 @@
+package com.github.senocak.apigw.filters;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class AccessLogTest {
+    private final Logger logger = (Logger) LoggerFactory.getLogger("access-log");
+    private final ListAppender<ILoggingEvent> lines = new ListAppender<>();
+    private AccessLog accessLog;
+
+    @BeforeEach
+    void capture() {
+        lines.start();
+        logger.addAppender(lines);
+    }
+
+    @AfterEach
+    void dispose() {
+        accessLog.stop();
+        logger.detachAppender(lines);
+    }
+
+    @Test
+    void dropsTheNewestRecordsWhenFull() {
+        accessLog = new AccessLog(4, 1.0, AccessLog.OverflowPolicy.DROP_NEWEST);
+        for (int i = 1; i <= 6; i++)
+            record("/" + i);
+
+        accessLog.start();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> paths().size() == 4);
+        assertThat(paths()).containsExactly("/1", "/2", "/3", "/4");
+        assertThat(accessLog.getDropped()).isEqualTo(2);
+    }
+
+    @Test
+    void dropsTheOldestRecordsWhenFull() {
+        accessLog = new AccessLog(4, 1.0, AccessLog.OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 6; i++)
+            record("/" + i);
+
+        accessLog.start();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> paths().size() == 4);
+        assertThat(paths()).containsExactly("/3", "/4", "/5", "/6");
+        assertThat(accessLog.getDropped()).isEqualTo(2);
+    }
+
+    @Test
+    void wakesTheParkedWriterForEachRecord() {
+        accessLog = new AccessLog(4, 1.0, AccessLog.OverflowPolicy.DROP_NEWEST);
+        accessLog.start();
+
+        for (int i = 1; i <= 3; i++) {
+            await().atMost(Duration.ofSeconds(5)).until(AccessLogTest::writerParked);
+            record("/" + i);
+            final int written = i;
+            await().atMost(Duration.ofSeconds(5)).until(() -> paths().size() == written);
+        }
+
+        assertThat(paths()).containsExactly("/1", "/2", "/3");
+    }
+
+    @Test
+    void writesEveryRecordOfConcurrentProducers() throws InterruptedException {
+        accessLog = new AccessLog(64, 1.0, AccessLog.OverflowPolicy.DROP_NEWEST);
+        accessLog.start();
+        final List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++)
+            producers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1_000; i++)
+                    record("/orders");
+            }));
+        for (Thread producer: producers)
+            producer.join();
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> paths().size() + accessLog.getDropped() == 4_000);
+        accessLog.stop();
+        assertThat(paths().size() + accessLog.getDropped()).isEqualTo(4_000);
+    }
+
+    private void record(String path) {
+        accessLog.record(MockServerWebExchange.from(MockServerHttpRequest.get(path)), null, System.nanoTime(), null);
+    }
+
+    private List<String> paths() {
+        return List.copyOf(lines.list).stream().map(line -> line.getFormattedMessage().split(" ")[1]).toList();
+    }
+
+    private static boolean writerParked() {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(thread ->
+                thread.getName().equals("access-log-writer") && thread.getState() == Thread.State.WAITING);
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.senocak.apigw.filters;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.service.RouteExpressions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.netty.http.server.HttpServer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the filter on requests served by Reactor Netty, where request rules write into the Netty headers, and on mock
+ * requests, which go through {@code mutate()}
+ */
+class HeaderTransformGatewayFilterTest {
+    private static final List<String> REQUEST_RULES =
+            List.of("X-Add:gateway", "set X-Set:new", "remove X-Remove", "X-Id:{segment}");
+    private static final List<String> RESPONSE_RULES =
+            List.of("set X-Upstream:2", "remove X-Trace", "X-Gateway:apigw");
+
+    private final AtomicReference<ServerWebExchange> received = new AtomicReference<>();
+    private final AtomicReference<HttpHeaders> receivedHeaders = new AtomicReference<>();
+    private final AtomicReference<HttpHeaders> headersBeforeCommit = new AtomicReference<>();
+    private DisposableServer server;
+
+    @AfterEach
+    void dispose() {
+        if (server != null)
+            server.disposeNow();
+    }
+
+    @Test
+    void writesRequestRulesIntoTheNettyRequest() {
+        final AtomicReference<ServerWebExchange> original = new AtomicReference<>();
+        serve(filter(REQUEST_RULES, List.of()), original);
+
+        call();
+
+        assertThat(received.get()).isSameAs(original.get());
+        assertRequestRulesApplied();
+    }
+
+    @Test
+    void mutatesTheNettyRequestForContentTypeRules() {
+        final AtomicReference<ServerWebExchange> original = new AtomicReference<>();
+        serve(filter(List.of("set Content-Type:application/json", "X-Add:gateway"), List.of()), original);
+
+        call();
+
+        assertThat(received.get()).isNotSameAs(original.get());
+        assertThat(receivedHeaders.get().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(receivedHeaders.get().get("X-Add")).containsExactly("client", "gateway");
+    }
+
+    @Test
+    void mutatesRequestsThatAreNotFromReactorNetty() {
+        final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/42")
+                .header("X-Add", "client")
+                .header("X-Set", "old")
+                .header("X-Remove", "gone"));
+        ServerWebExchangeUtils.putUriTemplateVariables(exchange, Map.of("segment", "42"));
+
+        filter(REQUEST_RULES, List.of()).filter(exchange, upstream()).block();
+
+        assertThat(received.get()).isNotSameAs(exchange);
+        assertRequestRulesApplied();
+    }
+
+    @Test
+    void appliesResponseRulesToTheNettyResponseBeforeItIsCommitted() {
+        serve(filter(List.of(), RESPONSE_RULES), new AtomicReference<>());
+
+        final HttpHeaders headers = new HttpHeaders();
+        call().responseHeaders().forEach(header -> headers.add(header.getKey(), header.getValue()));
+
+        assertThat(headersBeforeCommit.get().getFirst("X-Gateway")).isNull();
+        assertResponseRulesApplied(headers);
+    }
+
+    @Test
+    void appliesResponseRulesToOtherResponsesBeforeTheyAreCommitted() {
+        final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/42"));
+
+        filter(List.of(), RESPONSE_RULES).filter(exchange, upstream()).block();
+
+        assertThat(headersBeforeCommit.get().getFirst("X-Gateway")).isNull();
+        assertResponseRulesApplied(exchange.getResponse().getHeaders());
+    }
+
+    private void assertRequestRulesApplied() {
+        final HttpHeaders headers = receivedHeaders.get();
+        assertThat(headers.get("X-Add")).containsExactly("client", "gateway");
+        assertThat(headers.get("X-Set")).containsExactly("new");
+        assertThat(headers.containsKey("X-Remove")).isFalse();
+        assertThat(headers.get("X-Id")).containsExactly("42");
+    }
+
+    private static void assertResponseRulesApplied(HttpHeaders headers) {
+        assertThat(headers.get("X-Upstream")).containsExactly("2");
+        assertThat(headers.containsKey("X-Trace")).isFalse();
+        assertThat(headers.get("X-Gateway")).containsExactly("apigw");
+    }
+
+    private static HeaderTransformGatewayFilter filter(List<String> requestRules, List<String> responseRules) {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setPath("/orders/{segment}");
+        apiRoute.setUri("http://localhost:8081");
+        apiRoute.setRequestHeaders(requestRules);
+        apiRoute.setResponseHeader(responseRules);
+        final RouteExpressions expressions = RouteExpressions.compile(apiRoute);
+        return new HeaderTransformGatewayFilter(expressions.requestHeaders(), expressions.responseHeaders());
+    }
+
+    /**
+     * Stands in for the rest of the chain: records the request it is given and answers with upstream headers
+     */
+    private GatewayFilterChain upstream() {
+        return exchange -> {
+            received.set(exchange);
+            receivedHeaders.set(copy(exchange.getRequest().getHeaders()));
+            exchange.getResponse().getHeaders().add("X-Upstream", "1");
+            exchange.getResponse().getHeaders().add("X-Trace", "abc");
+            headersBeforeCommit.set(copy(exchange.getResponse().getHeaders()));
+            return exchange.getResponse().setComplete();
+        };
+    }
+
+    private static HttpHeaders copy(HttpHeaders headers) {
+        final HttpHeaders copy = new HttpHeaders();
+        headers.forEach(copy::addAll);
+        return copy;
+    }
+
+    private void serve(HeaderTransformGatewayFilter filter, AtomicReference<ServerWebExchange> original) {
+        server = HttpServer.create()
+                .port(0)
+                .handle(new ReactorHttpHandlerAdapter(WebHttpHandlerBuilder.webHandler(exchange -> {
+                    original.set(exchange);
+                    ServerWebExchangeUtils.putUriTemplateVariables(exchange, Map.of("segment", "42"));
+                    return filter.filter(exchange, upstream());
+                }).build()))
+                .bindNow();
+    }
+
+    private HttpClientResponse call() {
+        return HttpClient.create()
+                .port(server.port())
+                .headers(headers -> headers.add("X-Add", "client").add("X-Set", "old").add("X-Remove", "gone"))
+                .get()
+                .uri("/orders/42")
+                .response()
+                .block();
+    }
+}
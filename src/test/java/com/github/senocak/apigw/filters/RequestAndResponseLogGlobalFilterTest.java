@@ -0,0 +1,63 @@
+package com.github.senocak.apigw.filters;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RequestAndResponseLogGlobalFilterTest {
+    private final AccessLog accessLog = mock(AccessLog.class);
+    private final RequestAndResponseLogGlobalFilter filter = new RequestAndResponseLogGlobalFilter(accessLog);
+    private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders"));
+
+    @Test
+    void recordsCompletedExchanges() {
+        when(accessLog.sample(any())).thenReturn(true);
+
+        filter.filter(exchange, ignored -> Mono.empty()).block();
+
+        verify(accessLog).record(eq(exchange), isNull(), anyLong(), isNull());
+    }
+
+    @Test
+    void recordsFailedExchangesWithTheirError() {
+        when(accessLog.sample(any())).thenReturn(true);
+        final IllegalStateException error = new IllegalStateException("upstream reset");
+
+        assertThatIllegalStateException().isThrownBy(() -> filter.filter(exchange, ignored -> Mono.error(error)).block());
+
+        verify(accessLog).record(eq(exchange), isNull(), anyLong(), eq(error));
+    }
+
+    @Test
+    void recordsExchangesCancelledByTheClient() {
+        when(accessLog.sample(any())).thenReturn(true);
+
+        final Disposable subscription = filter.filter(exchange, ignored -> Mono.never()).subscribe();
+        subscription.dispose();
+
+        verify(accessLog).recordCancelled(eq(exchange), isNull(), anyLong());
+        verify(accessLog, never()).record(any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void skipsExchangesLeftOutOfTheSample() {
+        final GatewayFilterChain chain = ignored -> Mono.empty();
+
+        filter.filter(exchange, chain).block();
+
+        verify(accessLog, never()).record(any(), any(), anyLong(), any());
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.senocak.apigw.filters;
+
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import com.github.senocak.apigw.metrics.RouteStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class RouteMetricsGlobalFilterTest {
+    private final RouteMetrics routeMetrics = new RouteMetrics();
+    private final RouteMetricsGlobalFilter filter = new RouteMetricsGlobalFilter(routeMetrics);
+
+    @Test
+    void timesTheFiltersUpToTheirFirstAsynchronousStep() {
+        final Sinks.Empty<Void> upstream = Sinks.empty();
+        final GatewayFilterChain chain = exchange -> upstream.asMono()
+                .then(Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(HttpStatus.OK)));
+        final MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, chain).subscribeOn(Schedulers.parallel()).subscribe();
+        final RouteStats stats = routeMetrics.stats("orders");
+        await().atMost(Duration.ofSeconds(5)).until(() -> stats.getEventLoop().getCount() == 1);
+        upstream.tryEmitEmpty();
+
+        assertThat(stats.getEventLoop().getCount()).isEqualTo(1);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void timesNothingOffTheEventLoop() {
+        final GatewayFilterChain chain = exchange -> Mono.fromRunnable(() ->
+                exchange.getResponse().setStatusCode(HttpStatus.OK));
+
+        filter.filter(exchange(), chain).block();
+
+        assertThat(routeMetrics.stats("orders").getEventLoop().getCount()).isZero();
+    }
+
+    private static MockServerWebExchange exchange() {
+        final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/1"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id("orders")
+                .uri("http://localhost:8081")
+                .predicate(ignored -> true)
+                .build());
+        return exchange;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.senocak.apigw.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.repository.RouteRepository;
+import com.github.senocak.apigw.service.RouteService;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ApiRouteHandlerTest {
+    private final RouteRepository routeRepository = mock(RouteRepository.class);
+    private final ApiRouteHandler apiRouteHandler = new ApiRouteHandler(new RouteService(routeRepository), null, null,
+            new ObjectMapper());
+
+    @Test
+    void createsARoute() {
+        when(routeRepository.save(any(ApiRoute.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        assertThat(create(route("orders")).statusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void answersConflictForAUsedRouteIdentifier() {
+        when(routeRepository.save(any(ApiRoute.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key")));
+
+        assertThat(create(route("orders")).statusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void answersBadRequestForAnInvalidRoute() {
+        final ApiRoute route = route("orders");
+        route.setOffload("sometimes");
+
+        assertThat(create(route).statusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(routeRepository, never()).save(any(ApiRoute.class));
+    }
+
+    @Test
+    void answersBadRequestForAnInvalidExpression() {
+        final ApiRoute route = route("orders");
+        route.setRewritePath("/orders(:/");
+
+        assertThat(create(route).statusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(routeRepository, never()).save(any(ApiRoute.class));
+    }
+
+    private ServerResponse create(ApiRoute route) {
+        return apiRouteHandler.create(MockServerRequest.builder().body(Mono.just(route))).block();
+    }
+
+    private static ApiRoute route(String routeIdentifier) {
+        final ApiRoute route = new ApiRoute();
+        route.setRouteIdentifier(routeIdentifier);
+        route.setPath("/" + routeIdentifier + "/**");
+        route.setUri("http://localhost:8081");
+        return route;
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.senocak.apigw.handler;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.service.RouteCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.HostRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
+import org.springframework.cloud.gateway.route.CompositeRouteLocator;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Checks that the indexed lookup picks the same route as the gateway's linear {@link RoutePredicateHandlerMapping}
+ * over cached routes mixed with routes from another locator, ordered before and after them
+ */
+class IndexedRoutePredicateHandlerMappingTest {
+    private final RouteCache routeCache = new RouteCache();
+    private final List<Route> otherRoutes = new ArrayList<>(List.of(
+            route("legacy-orders", -1, "/orders/legacy/**"),
+            route("fallback", 1, "/**")));
+    private final CachingRouteLocator routeLocator = new CachingRouteLocator(new CompositeRouteLocator(Flux.just(
+            () -> Flux.fromIterable(List.copyOf(otherRoutes)),
+            () -> Flux.fromIterable(routeCache.current().routes()))));
+    private final FilteringWebHandler webHandler = new FilteringWebHandler(List.of(), false);
+    private final RoutePredicateHandlerMapping linear = new RoutePredicateHandlerMapping(webHandler, routeLocator,
+            new GlobalCorsProperties(), new StandardEnvironment());
+    private final IndexedRoutePredicateHandlerMapping indexed = new IndexedRoutePredicateHandlerMapping(webHandler,
+            routeLocator, new GlobalCorsProperties(), new StandardEnvironment(), routeCache);
+
+    @Test
+    void matchesTheSameRoutesAsTheLinearLookup() {
+        load();
+
+        assertMatch(get("/orders/1"), "orders");
+        assertMatch(get("/orders/1").header(HttpHeaders.HOST, "eu.example.com"), "orders-eu");
+        assertMatch(MockServerHttpRequest.post("/orders/1"), "create-order");
+        assertMatch(MockServerHttpRequest.delete("/orders/1"), "fallback");
+        assertMatch(get("/orders/legacy/1"), "legacy-orders");
+        assertMatch(get("/acme/items/1"), "tenant-items");
+        assertMatch(get("/catalog/items"), "catalog");
+        assertMatch(get("/catalog/other"), "fallback");
+        assertMatch(get("/"), "fallback");
+    }
+
+    @Test
+    void fallsBackToTheLinearLookupUntilTheCacheIsLoaded() {
+        assertMatch(get("/orders/legacy/1"), "legacy-orders");
+        assertMatch(get("/orders/1"), "fallback");
+    }
+
+    @Test
+    void followsTheRoutesRefreshedByTheLocator() {
+        load();
+        assertMatch(get("/catalog/items"), "catalog");
+
+        otherRoutes.add(route("catalog-v2", -1, "/catalog/**"));
+        routeLocator.setApplicationEventPublisher(event ->
+                indexed.onApplicationEvent((RefreshRoutesResultEvent) event));
+        routeLocator.onApplicationEvent(new RefreshRoutesEvent(this));
+
+        assertMatch(get("/catalog/items"), "catalog-v2");
+        assertMatch(get("/orders/1"), "orders");
+    }
+
+    private void load() {
+        routeCache.replaceAll(Flux.just(
+                        apiRoute("orders-eu", "/orders/**", null, "eu.example.com"),
+                        apiRoute("orders", "/orders/**", "GET", null),
+                        apiRoute("create-order", "/orders/**", "POST", null),
+                        apiRoute("catalog", "/catalog/items", "GET", null),
+                        apiRoute("tenant-items", "/{tenant}/items/**", null, null)),
+                IndexedRoutePredicateHandlerMappingTest::compile).block();
+    }
+
+    private void assertMatch(MockServerHttpRequest.BaseBuilder<?> request, String routeId) {
+        assertThat(match(linear, request)).isEqualTo(routeId);
+        assertThat(match(indexed, request)).isEqualTo(routeId);
+    }
+
+    private static String match(RoutePredicateHandlerMapping mapping, MockServerHttpRequest.BaseBuilder<?> request) {
+        final MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        mapping.getHandler(exchange).block();
+        final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        return route == null ? null : route.getId();
+    }
+
+    private static MockServerHttpRequest.BaseBuilder<?> get(String path) {
+        return MockServerHttpRequest.get(path);
+    }
+
+    private static Mono<Route> compile(ApiRoute apiRoute) {
+        Predicate<ServerWebExchange> predicate = new PathRoutePredicateFactory()
+                .apply(config -> config.setPatterns(List.of(apiRoute.getPath())));
+        if (apiRoute.getMethod() != null)
+            predicate = predicate.and(new MethodRoutePredicateFactory()
+                    .apply(config -> config.setMethods(HttpMethod.valueOf(apiRoute.getMethod()))));
+        if (apiRoute.getHost() != null)
+            predicate = predicate.and(new HostRoutePredicateFactory()
+                    .apply(config -> config.setPatterns(List.of(apiRoute.getHost()))));
+        return Mono.just(Route.async()
+                .id(apiRoute.getRouteIdentifier())
+                .uri(apiRoute.getUri())
+                .predicate(predicate)
+                .build());
+    }
+
+    private static Route route(String id, int order, String path) {
+        return Route.async()
+                .id(id)
+                .uri("http://localhost:8082")
+                .order(order)
+                .predicate(new PathRoutePredicateFactory().apply(config -> config.setPatterns(List.of(path))))
+                .build();
+    }
+
+    private static ApiRoute apiRoute(String id, String path, String method, String host) {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setId(id);
+        apiRoute.setRouteIdentifier(id);
+        apiRoute.setPath(path);
+        apiRoute.setMethod(method);
+        apiRoute.setHost(host);
+        apiRoute.setUri("http://localhost:8081");
+        return apiRoute;
+    }
+}
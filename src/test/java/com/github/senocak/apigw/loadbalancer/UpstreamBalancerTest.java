@@ -0,0 +1,90 @@
+package com.github.senocak.apigw.loadbalancer;
+
+import com.github.senocak.apigw.entity.Upstream;
+import com.github.senocak.apigw.resilience.RouteResilience;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamBalancerTest {
+    @Test
+    void keepsTheBreakerOfAnUnchangedTarget() {
+        final CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        final CircuitBreaker first = breaker(UpstreamBalancer.of("orders", null, upstreams("http://a:80"), registry));
+        first.transitionToOpenState();
+
+        final CircuitBreaker second = breaker(UpstreamBalancer.of("orders", null, upstreams("http://a:80"), registry));
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void replacesTheBreakerWhenItsSettingsChanged() {
+        final CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        final CircuitBreaker stale = registry.circuitBreaker("orders@http://a:80", CircuitBreakerConfig.ofDefaults());
+
+        final CircuitBreaker breaker = breaker(UpstreamBalancer.of("orders", null, upstreams("http://a:80"), registry));
+
+        assertThat(breaker).isNotSameAs(stale);
+        assertThat(breaker.getCircuitBreakerConfig().isAutomaticTransitionFromOpenToHalfOpenEnabled()).isTrue();
+        assertThat(registry.find("orders@http://a:80")).containsSame(breaker);
+    }
+
+    @Test
+    void removesTheBreakersOfDroppedTargetsOnly() {
+        final CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        registry.circuitBreaker("orders");
+        UpstreamBalancer.of("orders", null, upstreams("http://a:80", "http://b:80"), registry);
+        final Route route = route(UpstreamBalancer.of("orders", null, upstreams("http://a:80"), registry));
+
+        UpstreamBalancer.retain(registry, List.of(route));
+
+        assertThat(registry.getAllCircuitBreakers()).extracting(CircuitBreaker::getName)
+                .containsExactlyInAnyOrder("orders", "orders@http://a:80");
+    }
+
+    @Test
+    void countsExactStatusesAndSeries() {
+        final Predicate<HttpStatusCode> failureStatus =
+                RouteResilience.failureStatus(Set.of("404", "BAD_GATEWAY", "SERVER_ERROR"));
+
+        assertThat(failureStatus.test(HttpStatus.NOT_FOUND)).isTrue();
+        assertThat(failureStatus.test(HttpStatus.BAD_GATEWAY)).isTrue();
+        assertThat(failureStatus.test(HttpStatusCode.valueOf(599))).isTrue();
+        assertThat(failureStatus.test(HttpStatus.BAD_REQUEST)).isFalse();
+        assertThat(RouteResilience.statusCodes(Set.of("SERVER_ERROR")))
+                .contains("INTERNAL_SERVER_ERROR", "SERVICE_UNAVAILABLE");
+    }
+
+    private static List<Upstream> upstreams(String... uris) {
+        return Arrays.stream(uris).map(uri -> {
+            final Upstream upstream = new Upstream();
+            upstream.setUri(uri);
+            return upstream;
+        }).toList();
+    }
+
+    private static CircuitBreaker breaker(UpstreamBalancer balancer) {
+        return balancer.getTargets().getFirst().getCircuitBreaker();
+    }
+
+    private static Route route(UpstreamBalancer balancer) {
+        return Route.async()
+                .id("orders")
+                .uri("http://a:80")
+                .predicate(exchange -> true)
+                .filter(new LoadBalancerGatewayFilter(balancer, HttpStatusCode::is5xxServerError))
+                .build();
+    }
+}
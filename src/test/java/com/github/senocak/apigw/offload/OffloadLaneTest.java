@@ -0,0 +1,69 @@
+package com.github.senocak.apigw.offload;
+
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffloadLaneTest {
+    private final RouteMetrics routeMetrics = new RouteMetrics();
+    private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders"));
+
+    @Test
+    void runsInlineWorkOnTheCallingThread() {
+        final Thread caller = Thread.currentThread();
+
+        assertThat(OffloadLane.INLINE.run(exchange, Thread::currentThread).block()).isSameAs(caller);
+        assertThat(OffloadLane.INLINE.run(exchange, () -> null).blockOptional()).isEmpty();
+    }
+
+    @Test
+    void measuresInlineWorkOnlyOnNonBlockingThreads() {
+        final OffloadLane lane = new OffloadLane(null, routeMetrics, "orders");
+
+        lane.run(exchange, () -> "blocking").block();
+        Mono.defer(() -> lane.run(exchange, () -> "event loop")).subscribeOn(Schedulers.parallel()).block();
+
+        assertThat(routeMetrics.stats("orders").getEventLoop().getCount()).isEqualTo(1);
+        assertThat(routeMetrics.stats("orders").getOffloaded().sum()).isZero();
+    }
+
+    @Test
+    void runsOffloadedWorkOnTheScheduler() {
+        final RouteOffload routeOffload = new RouteOffload(routeMetrics, "none");
+        try {
+            final AtomicReference<Thread> worker = new AtomicReference<>();
+
+            routeOffload.lane("orders", true).run(exchange, () -> {
+                worker.set(Thread.currentThread());
+                return "done";
+            }).block();
+
+            assertThat(worker.get().isVirtual()).isTrue();
+            assertThat(routeMetrics.stats("orders").getOffloaded().sum()).isEqualTo(1);
+            assertThat(routeMetrics.stats("orders").getEventLoop().getCount()).isZero();
+        } finally {
+            routeOffload.destroy();
+        }
+    }
+
+    @Test
+    void keepsOneSchedulerPerEventLoop() {
+        final EventLoop eventLoop = new DefaultEventLoop();
+        final EventLoop other = new DefaultEventLoop();
+        try {
+            assertThat(OffloadLane.scheduler(eventLoop)).isSameAs(OffloadLane.scheduler(eventLoop));
+            assertThat(OffloadLane.scheduler(other)).isNotSameAs(OffloadLane.scheduler(eventLoop));
+        } finally {
+            eventLoop.shutdownGracefully();
+            other.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.senocak.apigw.offload;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.metrics.RouteMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class RouteOffloadTest {
+    private final RouteMetrics routeMetrics = new RouteMetrics();
+    private final RouteOffload routeOffload = new RouteOffload(routeMetrics, "predicates");
+    private DisposableServer server;
+
+    @AfterEach
+    void dispose() {
+        if (server != null)
+            server.disposeNow();
+        routeOffload.destroy();
+    }
+
+    @Test
+    void takesTheRouteModeOrTheDefault() {
+        final ApiRoute apiRoute = new ApiRoute();
+        assertThat(routeOffload.mode(apiRoute)).isEqualTo(RouteOffload.Mode.PREDICATES);
+
+        apiRoute.setOffload("filters");
+        assertThat(routeOffload.mode(apiRoute)).isEqualTo(RouteOffload.Mode.FILTERS);
+        assertThat(RouteOffload.Mode.ALL.predicates()).isTrue();
+        assertThat(RouteOffload.Mode.ALL.filters()).isTrue();
+        assertThat(RouteOffload.Mode.FILTERS.predicates()).isFalse();
+        assertThatIllegalArgumentException().isThrownBy(() -> RouteOffload.Mode.of("sometimes"));
+    }
+
+    @Test
+    void runsTheChainOnAVirtualThreadAndCompletesOnTheEventLoopOfTheConnection() {
+        final AtomicReference<Thread> chainThread = new AtomicReference<>();
+        final AtomicBoolean completedOnEventLoop = new AtomicBoolean();
+        server = HttpServer.create()
+                .port(0)
+                .handle(new ReactorHttpHandlerAdapter(WebHttpHandlerBuilder.webHandler(exchange -> {
+                    final Connection connection =
+                            (Connection) ServerHttpRequestDecorator.getNativeRequest(exchange.getRequest());
+                    return routeOffload.filter("orders").filter(exchange, offloaded -> {
+                                chainThread.set(Thread.currentThread());
+                                return Mono.empty();
+                            })
+                            .doOnSuccess(ignored ->
+                                    completedOnEventLoop.set(connection.channel().eventLoop().inEventLoop()))
+                            .then(exchange.getResponse().setComplete());
+                }).build()))
+                .bindNow();
+
+        for (int i = 0; i < 2; i++)
+            HttpClient.create().port(server.port()).get().uri("/orders").response().block();
+
+        assertThat(chainThread.get().isVirtual()).isTrue();
+        assertThat(completedOnEventLoop).isTrue();
+        assertThat(routeMetrics.stats("orders").getOffloaded().sum()).isEqualTo(2);
+    }
+}
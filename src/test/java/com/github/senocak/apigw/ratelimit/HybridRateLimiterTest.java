@@ -0,0 +1,66 @@
+package com.github.senocak.apigw.ratelimit;
+
+import com.github.senocak.apigw.entity.RateLimit;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HybridRateLimiterTest {
+    private final RedisRateLimiter redisRateLimiter = mock(RedisRateLimiter.class);
+    private final Map<String, RedisRateLimiter.Config> redisConfig = new HashMap<>();
+
+    @Test
+    void leasesFromABucketOfTheRouteInRedis() {
+        when(redisRateLimiter.getConfig()).thenReturn(redisConfig);
+        when(redisRateLimiter.isAllowed(anyString(), anyString()))
+                .thenReturn(Mono.just(new RateLimiter.Response(true, Map.of())));
+        final HybridRateLimiter rateLimiter = rateLimiter(HybridRateLimiter.Mode.LEASE);
+        rateLimiter.configure("orders", rateLimit(10, 20));
+        rateLimiter.configure("payments", rateLimit(1, 5));
+
+        assertThat(rateLimiter.isAllowed("orders", "10.0.0.5").block().isAllowed()).isTrue();
+        assertThat(rateLimiter.isAllowed("payments", "10.0.0.5").block().isAllowed()).isTrue();
+
+        verify(redisRateLimiter).isAllowed("orders", "orders:10.0.0.5");
+        verify(redisRateLimiter).isAllowed("payments", "payments:10.0.0.5");
+        assertThat(redisConfig.get("payments").getBurstCapacity()).isEqualTo(5);
+    }
+
+    @Test
+    void fallsBackToTheDefaultLimits() {
+        final HybridRateLimiter rateLimiter = rateLimiter(HybridRateLimiter.Mode.LOCAL);
+
+        for (int i = 0; i < 60; i++)
+            assertThat(rateLimiter.isAllowed("orders", "client").block().isAllowed()).isTrue();
+
+        assertThat(rateLimiter.isAllowed("orders", "client").block().isAllowed()).isFalse();
+        assertThat(rateLimiter.isAllowed("orders", "other").block().isAllowed()).isTrue();
+    }
+
+    private HybridRateLimiter rateLimiter(HybridRateLimiter.Mode mode) {
+        final HybridRateLimiter.Config defaultConfig = new HybridRateLimiter.Config();
+        defaultConfig.setReplenishRate(1);
+        defaultConfig.setBurstCapacity(60);
+        defaultConfig.setRequestedTokens(1);
+        return new HybridRateLimiter(redisRateLimiter, defaultConfig, mode, 20, Duration.ofSeconds(2), 1000,
+                mock(ConfigurationService.class));
+    }
+
+    private static RateLimit rateLimit(int replenishRate, int burstCapacity) {
+        final RateLimit rateLimit = new RateLimit();
+        rateLimit.setReplenishRate(replenishRate);
+        rateLimit.setBurstCapacity(burstCapacity);
+        return rateLimit;
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.senocak.apigw.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class KeyResolversTest {
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("10.0.0.5", 4711);
+
+    @Test
+    void keysOnTheClientAddressByDefault() {
+        assertThat(resolve(null, request())).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("ip", request())).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("ip", MockServerHttpRequest.get("/orders"))).isEqualTo("ip:unknown");
+    }
+
+    @Test
+    void countsForwardedForHopsFromTheRight() {
+        final MockServerHttpRequest.BaseBuilder<?> request = request()
+                .header("X-Forwarded-For", "203.0.113.7, 198.51.100.2")
+                .header("X-Forwarded-For", "10.0.0.1");
+
+        assertThat(resolve("xff", request)).isEqualTo("ip:10.0.0.1");
+        assertThat(resolve("xff:0", request)).isEqualTo("ip:10.0.0.1");
+        assertThat(resolve("xff:1", request)).isEqualTo("ip:198.51.100.2");
+        assertThat(resolve("xff:2", request)).isEqualTo("ip:203.0.113.7");
+        assertThat(resolve("xff:3", request)).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("xff:1", request())).isEqualTo("ip:10.0.0.5");
+    }
+
+    @Test
+    void prefixesEachKeyWithItsKind() {
+        assertThat(resolve("header:X-Tenant", request().header("X-Tenant", "10.0.0.5"))).isEqualTo("h:10.0.0.5");
+        assertThat(resolve("query:tenant", MockServerHttpRequest.get("/orders?tenant=acme").remoteAddress(CLIENT)))
+                .isEqualTo("q:acme");
+        assertThat(resolve("jwt:sub", bearer(token("{\"sub\":\"alice\"}")))).isEqualTo("jwt:alice");
+        final MockServerWebExchange exchange = MockServerWebExchange.from(request());
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id("orders")
+                .uri("http://localhost:8081")
+                .predicate(ignored -> true)
+                .build());
+        assertThat(KeyResolvers.of("route").resolve(exchange).block()).isEqualTo("route:orders");
+    }
+
+    @Test
+    void fallsBackToTheClientAddressWhenTheValueIsMissing() {
+        assertThat(resolve("header:X-Tenant", request())).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("header:X-Tenant", request().header("X-Tenant", ""))).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("query:tenant", request())).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("jwt:sub", request())).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("jwt:sub", bearer(token("{\"iss\":\"x\"}")))).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("jwt:sub", bearer("not-a-token"))).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("route", request())).isEqualTo("ip:10.0.0.5");
+    }
+
+    @Test
+    void rejectsUnknownExpressions() {
+        assertThatIllegalArgumentException().isThrownBy(() -> KeyResolvers.of("xff:-1"));
+        assertThatIllegalArgumentException().isThrownBy(() -> KeyResolvers.of("xff:first"));
+        assertThatIllegalArgumentException().isThrownBy(() -> KeyResolvers.of("header:"));
+        assertThatIllegalArgumentException().isThrownBy(() -> KeyResolvers.of("cookie:session"));
+    }
+
+    private static MockServerHttpRequest.BaseBuilder<?> request() {
+        return MockServerHttpRequest.get("/orders").remoteAddress(CLIENT);
+    }
+
+    private static MockServerHttpRequest.BaseBuilder<?> bearer(String token) {
+        return request().header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    }
+
+    private static String resolve(String expression, MockServerHttpRequest.BaseBuilder<?> request) {
+        return KeyResolvers.of(expression).resolve(MockServerWebExchange.from(request)).block();
+    }
+
+    private static String token(String payload) {
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + '.'
+                + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".signature";
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.senocak.apigw.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+    private static final long TTL = TimeUnit.SECONDS.toNanos(60);
+
+    @Test
+    void deniesUntilTokensAreLeased() {
+        final TokenBucket bucket = new TokenBucket();
+        assertThat(bucket.tryAcquireLeased(1, System.nanoTime())).isNegative();
+
+        bucket.lease(() -> Mono.just(3L), TTL).block();
+
+        assertThat(bucket.tryAcquireLeased(1, System.nanoTime())).isEqualTo(2);
+        assertThat(bucket.tryAcquireLeased(2, System.nanoTime())).isZero();
+        assertThat(bucket.tryAcquireLeased(1, System.nanoTime())).isNegative();
+    }
+
+    @Test
+    void dropsTokensOfAnExpiredLease() {
+        final TokenBucket bucket = new TokenBucket();
+        bucket.lease(() -> Mono.just(5L), TimeUnit.MILLISECONDS.toNanos(1)).block();
+
+        assertThat(bucket.tryAcquireLeased(1, System.nanoTime() + TTL)).isNegative();
+        // the next lease is taken at the real time, after the first one ran out
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        bucket.lease(() -> Mono.just(2L), TTL).block();
+        assertThat(bucket.tryAcquireLeased(1, System.nanoTime())).isEqualTo(1);
+    }
+
+    @Test
+    void addsToWhatIsLeftOfALiveLease() {
+        final TokenBucket bucket = new TokenBucket();
+        bucket.lease(() -> Mono.just(2L), TTL).block();
+        bucket.lease(() -> Mono.just(3L), TTL).block();
+
+        assertThat(bucket.tryAcquireLeased(5, System.nanoTime())).isZero();
+    }
+
+    @Test
+    void sharesOneLeaseCallBetweenConcurrentCallers() {
+        final TokenBucket bucket = new TokenBucket();
+        final AtomicInteger calls = new AtomicInteger();
+        final Mono<Long> first = bucket.lease(() -> Mono.delay(Duration.ofMillis(50))
+                .map(tick -> (long) calls.incrementAndGet() * 10), TTL);
+        final Mono<Long> second = bucket.lease(() -> Mono.just(99L), TTL);
+
+        assertThat(Mono.zip(first, second).block().getT2()).isEqualTo(10);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void neverHandsOutMoreTokensThanWereLeased() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket();
+        final int threads = 4;
+        final int leases = 2_000;
+        final AtomicLong granted = new AtomicLong();
+        final AtomicLong acquired = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final boolean leasing = t == 0;
+            executor.execute(() -> {
+                for (int i = 0; i < leases; i++) {
+                    if (leasing) {
+                        granted.addAndGet(bucket.lease(() -> Mono.just(2L), TTL).block());
+                    } else if (bucket.tryAcquireLeased(1, System.nanoTime()) >= 0) {
+                        acquired.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        long left = 0;
+        while (bucket.tryAcquireLeased(1, System.nanoTime()) >= 0)
+            left++;
+
+        assertThat(acquired.get() + left).isEqualTo(granted.get());
+    }
+}
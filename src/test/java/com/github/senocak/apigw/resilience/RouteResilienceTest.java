@@ -0,0 +1,77 @@
+package com.github.senocak.apigw.resilience;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class RouteResilienceTest {
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private final RouteResilience routeResilience = new RouteResilience(circuitBreakerRegistry,
+            TimeLimiterRegistry.ofDefaults(), event -> {}, 2, List.of("GET"), List.of("503"), Duration.ofMillis(50),
+            Duration.ofMillis(500), 2, 0.5, 20, 10);
+
+    @Test
+    void sharesABreakerBetweenRoutesWithTheSameSettings() {
+        routeResilience.configure("a", breaker("orders", 10));
+        routeResilience.configure("b", breaker("orders", 10));
+
+        assertThat(circuitBreakerRegistry.getConfiguration("orders"))
+                .hasValueSatisfying(config -> assertThat(config.getSlidingWindowSize()).isEqualTo(10));
+    }
+
+    @Test
+    void rejectsOtherSettingsUnderAUsedName() {
+        routeResilience.configure("a", breaker("orders", 10));
+
+        assertThatIllegalArgumentException().isThrownBy(() -> routeResilience.configure("b", breaker("orders", 20)))
+                .withMessageContaining("orders").withMessageContaining("[a]");
+        assertThatIllegalArgumentException().isThrownBy(() -> routeResilience.configure("b", breaker("orders", null)));
+        assertThat(circuitBreakerRegistry.getConfiguration("orders"))
+                .hasValueSatisfying(config -> assertThat(config.getSlidingWindowSize()).isEqualTo(10));
+    }
+
+    @Test
+    void letsTheOnlyRouteChangeItsSettings() {
+        routeResilience.configure("a", breaker("orders", 10));
+        routeResilience.configure("a", breaker("orders", 20));
+
+        assertThat(circuitBreakerRegistry.getConfiguration("orders"))
+                .hasValueSatisfying(config -> assertThat(config.getSlidingWindowSize()).isEqualTo(20));
+    }
+
+    @Test
+    void releasesTheNameOfRemovedRoutes() {
+        routeResilience.configure("a", breaker("orders", 10));
+        routeResilience.configure("b", breaker("orders", 10));
+        circuitBreakerRegistry.circuitBreaker("orders", "orders");
+
+        routeResilience.retain(List.of(route("b", breaker("orders", 10))));
+        assertThat(circuitBreakerRegistry.find("orders")).isPresent();
+
+        routeResilience.retain(List.of());
+        assertThat(circuitBreakerRegistry.find("orders")).isEmpty();
+        assertThat(circuitBreakerRegistry.getConfiguration("orders")).isEmpty();
+        routeResilience.configure("c", breaker("orders", 20));
+    }
+
+    private static CircuitBreaker breaker(String name, Integer slidingWindowSize) {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker();
+        circuitBreaker.setName(name);
+        circuitBreaker.setSlidingWindowSize(slidingWindowSize);
+        return circuitBreaker;
+    }
+
+    private static ApiRoute route(String id, CircuitBreaker circuitBreaker) {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setId(id);
+        apiRoute.setCircuitBreaker(circuitBreaker);
+        return apiRoute;
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.senocak.apigw.service;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CACHED_SERVER_HTTP_REQUEST_DECORATOR_ATTR;
+
+class RequestBodyPrefixTest {
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+    private final List<DataBuffer> sent = new ArrayList<>();
+    private final Sinks.Many<DataBuffer> body = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/items")
+            .body(body.asFlux().doOnCancel(() -> cancelled.set(true))));
+
+    @Test
+    void readsOneBufferAtATime() {
+        send("first");
+        send("second");
+        final RequestBodyPrefix prefix = RequestBodyPrefix.of(exchange);
+
+        prefix.readNext().block();
+
+        assertThat(prefix.buffers()).hasSize(1);
+        assertThat(prefix.size()).isEqualTo(5);
+        assertThat(prefix.isComplete()).isFalse();
+        assertThat(RequestBodyPrefix.of(exchange)).isSameAs(prefix);
+    }
+
+    @Test
+    void completesReadsOnceTheBodyEnded() {
+        send("only");
+        body.tryEmitComplete();
+        final RequestBodyPrefix prefix = RequestBodyPrefix.of(exchange);
+
+        prefix.readNext().block();
+        prefix.readNext().block();
+
+        assertThat(prefix.isComplete()).isTrue();
+        StepVerifier.create(prefix.readNext()).verifyComplete();
+    }
+
+    @Test
+    void forwardsTheBuffersReadFollowedByTheRestOfTheBody() {
+        send("first");
+        final RequestBodyPrefix prefix = RequestBodyPrefix.of(exchange);
+        prefix.readNext().block();
+
+        StepVerifier.create(forwarded().getBody().map(this::text))
+                .expectNext("first")
+                .then(() -> send("second"))
+                .expectNext("second")
+                .then(body::tryEmitComplete)
+                .verifyComplete();
+        assertThat(prefix.buffers()).isEmpty();
+    }
+
+    @Test
+    void forwardsTheBodyUntouchedWhenNothingWasRead() {
+        RequestBodyPrefix.of(exchange);
+        send("first");
+        body.tryEmitComplete();
+
+        StepVerifier.create(forwarded().getBody().map(this::text)).expectNext("first").verifyComplete();
+    }
+
+    @Test
+    void forwardsTheBodyOnlyOnce() {
+        RequestBodyPrefix.of(exchange);
+        forwarded().getBody().subscribe();
+
+        StepVerifier.create(forwarded().getBody()).verifyError(IllegalStateException.class);
+    }
+
+    @Test
+    void releasesTheBuffersWhenTheResponseIsCommitted() {
+        send("first");
+        RequestBodyPrefix.of(exchange).readNext().block();
+
+        exchange.getResponse().setComplete().block();
+
+        assertReleased();
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    void releasesTheBuffersWhenTheExchangeEndsWithoutAResponse() {
+        send("first");
+
+        new RequestBodyPrefixWebFilter()
+                .filter(exchange, ignored -> RequestBodyPrefix.of(exchange).readNext())
+                .block();
+
+        assertReleased();
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    void releasesTheBuffersWhenTheClientDisconnects() {
+        send("first");
+        final Disposable exchangeSubscription = new RequestBodyPrefixWebFilter()
+                .filter(exchange, ignored -> RequestBodyPrefix.of(exchange).readNext().then(Mono.never()))
+                .subscribe();
+        assertThat(refCnt(sent.getFirst())).isOne();
+
+        exchangeSubscription.dispose();
+
+        assertReleased();
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    void leavesForwardedBuffersToTheRequestSentDownstream() {
+        send("first");
+        final RequestBodyPrefix prefix = RequestBodyPrefix.of(exchange);
+        prefix.readNext().block();
+        final List<DataBuffer> received = new ArrayList<>();
+        forwarded().getBody().subscribe(received::add);
+
+        RequestBodyPrefix.release(exchange);
+
+        assertThat(received).hasSize(1);
+        assertThat(refCnt(received.getFirst())).isOne();
+        assertThat(cancelled).isFalse();
+    }
+
+    private void send(String text) {
+        final DataBuffer buffer = bufferFactory.wrap(text.getBytes(StandardCharsets.UTF_8));
+        sent.add(buffer);
+        body.tryEmitNext(buffer);
+    }
+
+    private ServerHttpRequest forwarded() {
+        return exchange.getRequiredAttribute(CACHED_SERVER_HTTP_REQUEST_DECORATOR_ATTR);
+    }
+
+    private String text(DataBuffer buffer) {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    private void assertReleased() {
+        assertThat(sent).allSatisfy(buffer -> assertThat(refCnt(buffer)).isZero());
+    }
+
+    private static int refCnt(DataBuffer buffer) {
+        return ((NettyDataBuffer) buffer).getNativeBuffer().refCnt();
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.configuration.GatewayRoutesRefresher;
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.entity.RouteBatch;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RouteAdminServiceTest {
+    private final ReactiveMongoTemplate template = mock(ReactiveMongoTemplate.class);
+    private final ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final GatewayRoutesRefresher refresher = new GatewayRoutesRefresher(null) {
+        @Override
+        public Mono<Void> refreshRoutes() {
+            return Mono.fromRunnable(refreshes::incrementAndGet);
+        }
+    };
+    private final RouteAdminService routeAdminService = new RouteAdminService(template, refresher, 100, 1000, 2);
+
+    @BeforeEach
+    void setUp() {
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, ApiRoute.class)).thenReturn(bulk);
+    }
+
+    @Test
+    void matchesUpsertsAndDeletesByRouteIdentifier() {
+        when(bulk.execute()).thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 0, 1, 0,
+                List.of(new BulkWriteUpsert(0, new BsonString("x"))), List.of())));
+        final ApiRoute route = route("orders");
+        route.setId("stale-id");
+
+        final RouteAdminService.BatchResult result =
+                routeAdminService.apply(batch(List.of(route), List.of("old"))).block();
+
+        final ArgumentCaptor<Query> upsert = ArgumentCaptor.forClass(Query.class);
+        verify(bulk).replaceOne(upsert.capture(), eq(route), any(FindAndReplaceOptions.class));
+        assertThat(upsert.getValue().getQueryObject()).containsOnlyKeys("routeIdentifier");
+        assertThat(route.getId()).isNull();
+        final ArgumentCaptor<Query> delete = ArgumentCaptor.forClass(Query.class);
+        verify(bulk).remove(delete.capture());
+        assertThat(delete.getValue().getQueryObject()).containsOnlyKeys("routeIdentifier");
+        assertThat(result).isEqualTo(new RouteAdminService.BatchResult(1, 0, 1, List.of(), List.of()));
+        assertThat(refreshes).hasValue(1);
+    }
+
+    @Test
+    void refreshesAndReportsAPartialBulkWrite() {
+        final BulkWriteResult written = BulkWriteResult.acknowledged(0, 0, 0, 0,
+                List.of(new BulkWriteUpsert(0, new BsonString("x"))), List.of());
+        final MongoBulkWriteException refused = new MongoBulkWriteException(written,
+                List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1)), null,
+                new ServerAddress(), Set.of());
+        when(bulk.execute()).thenReturn(Mono.error(new DuplicateKeyException(refused.getMessage(), refused)));
+
+        final RouteAdminService.BatchResult result =
+                routeAdminService.apply(batch(List.of(route("a"), route("b")), List.of())).block();
+
+        assertThat(result.upserted()).isEqualTo(1);
+        assertThat(result.failed()).singleElement().satisfies(failure -> {
+            assertThat(failure).containsEntry("index", 1L).containsEntry("routeIdentifier", "b");
+            assertThat(failure.get("errors")).asInstanceOf(InstanceOfAssertFactories.LIST).containsExactly("E11000 duplicate key");
+        });
+        assertThat(refreshes).hasValue(1);
+    }
+
+    @Test
+    void reportsRefusedImportsByStreamPosition() {
+        final BulkWriteResult written = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        final MongoBulkWriteException refused = new MongoBulkWriteException(written,
+                List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0)), null,
+                new ServerAddress(), Set.of());
+        when(bulk.execute())
+                .thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 2, 0, 2, List.of(), List.of())))
+                .thenReturn(Mono.error(new BulkOperationException(refused.getMessage(), refused)));
+
+        final RouteAdminService.BatchResult result =
+                routeAdminService.importRoutes(Flux.just(route("a"), route("b"), route("c"))).block();
+
+        assertThat(result.modified()).isEqualTo(2);
+        assertThat(result.failed()).singleElement().satisfies(failure ->
+                assertThat(failure).containsEntry("index", 2L).containsEntry("routeIdentifier", "c"));
+        assertThat(refreshes).hasValue(1);
+    }
+
+    @Test
+    void refreshesWhenTheOutcomeOfAWriteIsUnknown() {
+        when(bulk.execute()).thenReturn(Mono.error(new IllegalStateException("connection reset")));
+
+        assertThatThrownBy(() -> routeAdminService.apply(batch(List.of(route("a")), List.of())).block())
+                .hasMessageContaining("connection reset");
+        assertThat(refreshes).hasValue(1);
+    }
+
+    @Test
+    void restoresARouteDeletedAndCreatedAgainByItsIdentifier() {
+        when(bulk.execute()).thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 1, 1, 1, List.of(), List.of())));
+        final ApiRoute route = route("orders");
+        route.setId("id-in-snapshot");
+
+        final RouteAdminService.BatchResult result = routeAdminService.restore(List.of(route)).block();
+
+        final ArgumentCaptor<Query> upsert = ArgumentCaptor.forClass(Query.class);
+        verify(bulk).replaceOne(upsert.capture(), eq(route), any(FindAndReplaceOptions.class));
+        assertThat(upsert.getValue().getQueryObject()).containsOnlyKeys("routeIdentifier");
+        assertThat(route.getId()).isNull();
+        final ArgumentCaptor<Query> delete = ArgumentCaptor.forClass(Query.class);
+        verify(bulk).remove(delete.capture());
+        assertThat(delete.getValue().getQueryObject().toJson()).contains("\"routeIdentifier\": {\"$nin\": [\"orders\"]}");
+        assertThat(result).isEqualTo(new RouteAdminService.BatchResult(0, 1, 1, List.of(), List.of()));
+        assertThat(refreshes).hasValue(1);
+    }
+
+    @Test
+    void refreshesAndReportsARefusedRestore() {
+        final BulkWriteResult written = BulkWriteResult.acknowledged(0, 0, 1, 0, List.of(), List.of());
+        final MongoBulkWriteException refused = new MongoBulkWriteException(written,
+                List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0)), null,
+                new ServerAddress(), Set.of());
+        when(bulk.execute()).thenReturn(Mono.error(new BulkOperationException(refused.getMessage(), refused)));
+
+        final RouteAdminService.BatchResult result =
+                routeAdminService.restore(List.of(route("a"), route("b"))).block();
+
+        assertThat(result.deleted()).isEqualTo(1);
+        assertThat(result.failed()).singleElement().satisfies(failure ->
+                assertThat(failure).containsEntry("index", 0L).containsEntry("routeIdentifier", "a"));
+        assertThat(refreshes).hasValue(1);
+    }
+
+    private static RouteBatch batch(List<ApiRoute> upserts, List<String> deletes) {
+        final RouteBatch batch = new RouteBatch();
+        batch.setUpserts(upserts);
+        batch.setDeletes(deletes);
+        return batch;
+    }
+
+    private static ApiRoute route(String routeIdentifier) {
+        final ApiRoute route = new ApiRoute();
+        route.setRouteIdentifier(routeIdentifier);
+        route.setPath("/" + routeIdentifier + "/**");
+        route.setUri("http://localhost:8081");
+        return route;
+    }
+}
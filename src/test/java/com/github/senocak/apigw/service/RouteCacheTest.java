@@ -0,0 +1,102 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteCacheTest {
+    private final RouteCache routeCache = new RouteCache();
+    private final List<String> compiled = new ArrayList<>();
+
+    @Test
+    void recompilesOnlyAddedAndChangedRoutes() {
+        final ApiRoute orders = apiRoute("orders", "/orders/**");
+        final ApiRoute payments = apiRoute("payments", "/payments/**");
+        final RouteCache.Snapshot first = replaceAll(orders, payments);
+        compiled.clear();
+
+        final RouteCache.Snapshot second = replaceAll(orders, apiRoute("payments", "/pay/**"),
+                apiRoute("users", "/users/**"));
+
+        assertThat(compiled).containsExactlyInAnyOrder("payments", "users");
+        assertThat(second.entries()).containsOnlyKeys("orders", "payments", "users");
+        assertThat(second.entries().get("orders")).isSameAs(first.entries().get("orders"));
+        assertThat(second.entries().get("payments").source().getPath()).isEqualTo("/pay/**");
+        assertThat(routeCache.current()).isSameAs(second);
+    }
+
+    @Test
+    void dropsRoutesMissingFromAFullRefreshOrDeleted() {
+        replaceAll(apiRoute("orders", "/orders/**"), apiRoute("payments", "/payments/**"),
+                apiRoute("users", "/users/**"));
+
+        replaceAll(apiRoute("orders", "/orders/**"), apiRoute("users", "/users/**"));
+        assertThat(routeCache.current().entries()).containsOnlyKeys("orders", "users");
+
+        routeCache.apply(List.of(), Set.of("users"), this::compile).block();
+        assertThat(routeCache.current().entries()).containsOnlyKeys("orders");
+        assertThat(routeCache.current().routes()).extracting(Route::getId).containsExactly("orders");
+    }
+
+    @Test
+    void keepsThePreviousVersionOfARouteThatNoLongerCompiles() {
+        final RouteCache.Snapshot first = replaceAll(apiRoute("orders", "/orders/**"));
+        final Function<ApiRoute, Mono<Route>> failing = apiRoute -> Mono.error(new IllegalArgumentException("bad"));
+
+        routeCache.apply(List.of(apiRoute("orders", "/broken/**"), apiRoute("users", "/users/**")), Set.of(), failing)
+                .block();
+
+        assertThat(routeCache.current().entries()).containsOnlyKeys("orders");
+        assertThat(routeCache.current().entries().get("orders")).isSameAs(first.entries().get("orders"));
+    }
+
+    @Test
+    void diffsAgainAgainstTheRefreshThatWonTheRace() {
+        replaceAll(apiRoute("orders", "/orders/**"));
+        final List<String> attempts = new ArrayList<>();
+        final Function<ApiRoute, Mono<Route>> racing = apiRoute -> {
+            attempts.add(apiRoute.getId());
+            // another refresh lands while the first attempt compiles
+            if (attempts.size() == 1)
+                routeCache.apply(List.of(apiRoute("users", "/users/**")), Set.of(), this::compile).block();
+            return compile(apiRoute);
+        };
+
+        final RouteCache.Snapshot result = routeCache.apply(List.of(apiRoute("payments", "/payments/**")), Set.of(),
+                racing).block();
+
+        assertThat(attempts).containsExactly("payments", "payments");
+        assertThat(result).isSameAs(routeCache.current());
+        assertThat(result.entries()).containsOnlyKeys("orders", "users", "payments");
+    }
+
+    private RouteCache.Snapshot replaceAll(ApiRoute... apiRoutes) {
+        return routeCache.replaceAll(Flux.just(apiRoutes), this::compile).block();
+    }
+
+    private Mono<Route> compile(ApiRoute apiRoute) {
+        compiled.add(apiRoute.getId());
+        return Mono.just(Route.async()
+                .id(apiRoute.getRouteIdentifier())
+                .uri(apiRoute.getUri())
+                .predicate(exchange -> true)
+                .build());
+    }
+
+    private static ApiRoute apiRoute(String id, String path) {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setId(id);
+        apiRoute.setRouteIdentifier(id);
+        apiRoute.setPath(path);
+        apiRoute.setUri("http://localhost:8081");
+        return apiRoute;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.handler.predicate.HeaderRoutePredicateFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class RouteExpressionsTest {
+    private static final List<List<String>> HEADER_VALUES = List.of(
+            List.of(), List.of(""), List.of("acme"), List.of("ACME"), List.of("acme-eu"), List.of("eu, acme"),
+            List.of("eu,acme"), List.of("eu", "acme"), List.of("other"));
+
+    @Test
+    void matchesLiteralValuesLikeTheirRegex() {
+        final RouteExpressions.HeaderMatcher literal = headerMatcher("X-Tenant:acme");
+        final RouteExpressions.HeaderMatcher regex = headerMatcher("X-Tenant:regex=acme");
+        assertThat(literal.literal()).isEqualTo("acme");
+        assertThat(literal.pattern()).isNull();
+        assertThat(regex.pattern()).isNotNull();
+
+        for (List<String> values: HEADER_VALUES) {
+            final boolean expected = gatewayMatches("acme", values);
+            assertThat(literal.test(request(values).getHeaders())).as("literal %s", values).isEqualTo(expected);
+            assertThat(regex.test(request(values).getHeaders())).as("regex %s", values).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void compilesValuesWithRegexSyntax() {
+        final RouteExpressions.HeaderMatcher matcher = headerMatcher("X-Tenant:ac.e");
+
+        assertThat(matcher.literal()).isNull();
+        for (List<String> values: HEADER_VALUES)
+            assertThat(matcher.test(request(values).getHeaders())).as("%s", values)
+                    .isEqualTo(gatewayMatches("ac.e", values));
+    }
+
+    @Test
+    void checksOnlyPresenceForAnEmptyValue() {
+        for (String expression: List.of("X-Tenant:", "X-Tenant:regex=")) {
+            final RouteExpressions.HeaderMatcher matcher = headerMatcher(expression);
+            assertThat(matcher.literal()).isNull();
+            assertThat(matcher.pattern()).isNull();
+            for (List<String> values: HEADER_VALUES)
+                assertThat(matcher.test(request(values).getHeaders())).as("%s %s", expression, values)
+                        .isEqualTo(!values.isEmpty());
+        }
+    }
+
+    @Test
+    void compilesTheRewritePath() {
+        final ApiRoute apiRoute = apiRoute();
+        apiRoute.setRewritePath("/custom/(?<segment>.*):/${segment}");
+
+        final RouteExpressions.RewritePath rewritePath = RouteExpressions.compile(apiRoute).rewritePath();
+
+        assertThat(rewritePath.regexp()).isEqualTo("/custom/(?<segment>.*)");
+        assertThat(rewritePath.replacement()).isEqualTo("/${segment}");
+        assertThat("/custom/items".replaceAll(rewritePath.regexp(), rewritePath.replacement())).isEqualTo("/items");
+        assertThat(RouteExpressions.compile(apiRoute()).rewritePath()).isNull();
+    }
+
+    @Test
+    void rejectsARouteListingEveryInvalidExpression() {
+        final ApiRoute apiRoute = apiRoute();
+        apiRoute.setRouteIdentifier("orders");
+        apiRoute.setHeaders(List.of("X-Tenant:regex=(acme", "no-separator"));
+        apiRoute.setRewritePath("/custom(:/x");
+        apiRoute.setRequestHeaders(List.of("replace X-Id:1"));
+        apiRoute.setBody("between:a");
+
+        assertThatExceptionOfType(RouteValidationException.class)
+                .isThrownBy(() -> RouteExpressions.compile(apiRoute))
+                .satisfies(e -> {
+                    assertThat(e.getRouteIdentifier()).isEqualTo("orders");
+                    assertThat(e.getErrors()).hasSize(5).anySatisfy(error -> assertThat(error).startsWith("headers"))
+                            .anySatisfy(error -> assertThat(error).startsWith("rewritePath"))
+                            .anySatisfy(error -> assertThat(error).startsWith("requestHeaders"))
+                            .anySatisfy(error -> assertThat(error).startsWith("body"));
+                });
+    }
+
+    private static RouteExpressions.HeaderMatcher headerMatcher(String expression) {
+        final ApiRoute apiRoute = apiRoute();
+        apiRoute.setHeaders(List.of(expression));
+        return RouteExpressions.compile(apiRoute).headers().getFirst();
+    }
+
+    /**
+     * @return whether the gateway's own header predicate, which always matches a regex, accepts the values
+     */
+    private static boolean gatewayMatches(String regexp, List<String> values) {
+        return new HeaderRoutePredicateFactory()
+                .apply(config -> config.setHeader("X-Tenant").setRegexp(regexp))
+                .test(MockServerWebExchange.from(request(values)));
+    }
+
+    private static MockServerHttpRequest request(List<String> values) {
+        final MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/orders");
+        for (String value: values)
+            request.header("X-Tenant", value);
+        return request.build();
+    }
+
+    private static ApiRoute apiRoute() {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setPath("/orders/**");
+        apiRoute.setUri("http://localhost:8081");
+        return apiRoute;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.senocak.apigw.service;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteIndexTest {
+    private final Map<String, RouteCache.CompiledRoute> entries = new LinkedHashMap<>();
+    private final List<Route> routes = new ArrayList<>();
+
+    @Test
+    void narrowsTheCandidatesByPathMethodAndHost() {
+        add("orders", "/orders/{id}", "GET", null);
+        add("orders-eu", "/orders/**", null, "eu.example.com");
+        add("tenant", "/{tenant}/orders/**", null, null);
+        add("catalog", "/catalog/items", null, null);
+        final Route external = Route.async().id("external").uri("http://localhost:8082").predicate(e -> true).build();
+        routes.add(1, external);
+        final RouteIndex index = new RouteIndex(new RouteCache.Snapshot(entries), routes, true);
+
+        assertThat(candidates(index, MockServerHttpRequest.get("/orders/1").build()))
+                .containsExactly("orders", "external", "tenant");
+        assertThat(candidates(index, MockServerHttpRequest.post("/orders/1")
+                .header(HttpHeaders.HOST, "eu.example.com").build()))
+                .containsExactly("external", "orders-eu", "tenant");
+        assertThat(candidates(index, MockServerHttpRequest.get("/catalog/items").build()))
+                .containsExactly("external", "tenant", "catalog");
+        assertThat(candidates(index, MockServerHttpRequest.get("/").build()))
+                .containsExactly("external", "tenant");
+    }
+
+    @Test
+    void indexesOnlyTheLiteralLeadingSegments() {
+        assertThat(RouteIndex.literalPrefix("/orders/{id}/items")).containsExactly("orders");
+        assertThat(RouteIndex.literalPrefix("/v1/*/items")).containsExactly("v1");
+        assertThat(RouteIndex.literalPrefix("/api/v?/items")).containsExactly("api");
+        assertThat(RouteIndex.literalPrefix("/**")).isEmpty();
+        assertThat(RouteIndex.literalPrefix(null)).isEmpty();
+    }
+
+    private void add(String id, String path, String method, String host) {
+        final ApiRoute apiRoute = new ApiRoute();
+        apiRoute.setId(id);
+        apiRoute.setRouteIdentifier(id);
+        apiRoute.setPath(path);
+        apiRoute.setMethod(method);
+        apiRoute.setHost(host);
+        final Route route = Route.async().id(id).uri("http://localhost:8081").predicate(e -> true).build();
+        entries.put(id, new RouteCache.CompiledRoute(apiRoute, route));
+        routes.add(route);
+    }
+
+    private static List<String> candidates(RouteIndex index, MockServerHttpRequest request) {
+        return index.candidates(request).stream().map(Route::getId).toList();
+    }
+}
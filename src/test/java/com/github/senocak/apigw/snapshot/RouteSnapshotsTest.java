@@ -0,0 +1,68 @@
+package com.github.senocak.apigw.snapshot;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.service.RouteCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class RouteSnapshotsTest {
+    @TempDir
+    Path directory;
+
+    private RouteSnapshots routeSnapshots;
+
+    @AfterEach
+    void dispose() {
+        routeSnapshots.destroy();
+    }
+
+    @Test
+    void skipsTheSameRoutesInAnotherOrder() {
+        final MappingMongoConverter mongoConverter =
+                new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        mongoConverter.afterPropertiesSet();
+        routeSnapshots = new RouteSnapshots(mongoConverter, true, directory, 10);
+
+        routeSnapshots.save(snapshot(route("a"), route("b")));
+        await().atMost(Duration.ofSeconds(5)).until(() -> routeSnapshots.list().size() == 1);
+        routeSnapshots.save(snapshot(route("b"), route("a")));
+        routeSnapshots.save(snapshot(route("a"), route("c")));
+        await().atMost(Duration.ofSeconds(5)).until(() -> routeSnapshots.load(routeSnapshots.list().getFirst().version())
+                .stream().anyMatch(route -> "c".equals(route.getId())));
+
+        assertThat(routeSnapshots.list()).extracting(RouteSnapshots.SnapshotInfo::version).containsExactly(2L, 1L);
+    }
+
+    private static RouteCache.Snapshot snapshot(ApiRoute... routes) {
+        final Map<String, RouteCache.CompiledRoute> entries = new LinkedHashMap<>();
+        for (ApiRoute route: routes)
+            entries.put(route.getId(), new RouteCache.CompiledRoute(route, Route.async()
+                    .id(route.getRouteIdentifier())
+                    .uri(route.getUri())
+                    .predicate(exchange -> true)
+                    .build()));
+        return new RouteCache.Snapshot(entries, List.of());
+    }
+
+    private static ApiRoute route(String id) {
+        final ApiRoute route = new ApiRoute();
+        route.setId(id);
+        route.setRouteIdentifier(id);
+        route.setPath("/" + id + "/**");
+        route.setUri("http://localhost:8081");
+        return route;
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.senocak.apigw.support;
+
+import com.github.senocak.apigw.entity.ApiRoute;
+import com.github.senocak.apigw.repository.RouteRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link RouteRepository} kept in a sorted map, standing in for MongoDB so benchmarks and the load test run offline
+ */
+public class InMemoryRouteRepository implements RouteRepository {
+    private final Map<String, ApiRoute> routes = new ConcurrentSkipListMap<>();
+
+    @Override
+    public <S extends ApiRoute> Mono<S> save(S entity) {
+        return Mono.fromSupplier(() -> {
+            if (entity.getId() == null)
+                entity.setId(UUID.randomUUID().toString());
+            routes.put(entity.getId(), entity);
+            return entity;
+        });
+    }
+
+    @Override
+    public <S extends ApiRoute> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends ApiRoute> Flux<S> saveAll(Publisher<S> entityStream) {
+        return Flux.from(entityStream).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<ApiRoute> findById(String id) {
+        return Mono.justOrEmpty(routes.get(id));
+    }
+
+    @Override
+    public Mono<ApiRoute> findById(Publisher<String> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return Mono.fromSupplier(() -> routes.containsKey(id));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<String> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<ApiRoute> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(routes.values()));
+    }
+
+    @Override
+    public Flux<ApiRoute> findAllById(Iterable<String> ids) {
+        return Flux.fromIterable(ids).concatMap(this::findById);
+    }
+
+    @Override
+    public Flux<ApiRoute> findAllById(Publisher<String> idStream) {
+        return Flux.from(idStream).concatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> (long) routes.size());
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return Mono.fromRunnable(() -> routes.remove(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<String> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(ApiRoute entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends String> ids) {
+        return Flux.fromIterable(ids).concatMap(this::deleteById).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends ApiRoute> entities) {
+        return Flux.fromIterable(entities).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends ApiRoute> entityStream) {
+        return Flux.from(entityStream).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(routes::clear);
+    }
+}